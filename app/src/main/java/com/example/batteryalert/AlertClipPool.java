@@ -0,0 +1,163 @@
+package com.example.batteryalert;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.SoundPool;
+import android.net.Uri;
+
+/**
+ * Fixed set of decoded alert clips kept in a {@link SoundPool} so an alert is a
+ * single {@code play} call. Slots {@code PHRASE_BASE..} hold pre-rendered TTS
+ * phrases and {@code URI_BASE..} the user-picked tier sounds, one per tier.
+ * SoundPool keeps clips as decoded 16-bit PCM, so the total decoded size,
+ * estimated from each clip's duration, sample rate and channel count, is capped
+ * at {@link #MEMORY_CAP_BYTES}; a clip that does not fit, or whose format can't
+ * be read, is left to the streaming player.
+ * Must be created and used on the audio thread.
+ */
+final class AlertClipPool implements SoundPool.OnLoadCompleteListener {
+
+    static final int TIER_COUNT = 3;
+    static final int PHRASE_BASE = 0;
+    static final int URI_BASE = TIER_COUNT;
+    static final int SLOT_COUNT = TIER_COUNT * 2;
+
+    static final long MEMORY_CAP_BYTES = 4L * 1024 * 1024;
+
+    private final SoundPool soundPool;
+    private final int[] sampleIds = new int[SLOT_COUNT];
+    private final long[] sizes = new long[SLOT_COUNT];
+    private final boolean[] ready = new boolean[SLOT_COUNT];
+    private long totalBytes = 0;
+
+    AlertClipPool() {
+        soundPool = new SoundPool.Builder()
+                .setMaxStreams(1)
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_ALARM)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .build();
+        soundPool.setOnLoadCompleteListener(this);
+    }
+
+    boolean load(int slot, String path) {
+        unload(slot);
+        MediaExtractor extractor = new MediaExtractor();
+        long size;
+        try {
+            extractor.setDataSource(path);
+            size = decodedBytes(extractor);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            extractor.release();
+        }
+        if (size <= 0 || totalBytes + size > MEMORY_CAP_BYTES) {
+            return false;
+        }
+        sampleIds[slot] = soundPool.load(path, 1);
+        sizes[slot] = size;
+        totalBytes += size;
+        return true;
+    }
+
+    boolean load(int slot, ContentResolver resolver, Uri uri) {
+        unload(slot);
+        try (AssetFileDescriptor afd = resolver.openAssetFileDescriptor(uri, "r")) {
+            if (afd == null) {
+                return false;
+            }
+            if (afd.getLength() <= 0) {
+                return false;
+            }
+            MediaExtractor extractor = new MediaExtractor();
+            long size;
+            try {
+                extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+                size = decodedBytes(extractor);
+            } finally {
+                extractor.release();
+            }
+            if (size <= 0 || totalBytes + size > MEMORY_CAP_BYTES) {
+                return false;
+            }
+            sampleIds[slot] = soundPool.load(afd, 1);
+            sizes[slot] = size;
+            totalBytes += size;
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /** PCM bytes of the first audio track once decoded, or -1 if its format doesn't say. */
+    private static long decodedBytes(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime == null || !mime.startsWith("audio/")) {
+                continue;
+            }
+            if (!format.containsKey(MediaFormat.KEY_DURATION) || !format.containsKey(MediaFormat.KEY_SAMPLE_RATE)
+                    || !format.containsKey(MediaFormat.KEY_CHANNEL_COUNT)) {
+                return -1;
+            }
+            return format.getLong(MediaFormat.KEY_DURATION) * format.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+                    / 1000000L * format.getInteger(MediaFormat.KEY_CHANNEL_COUNT) * 2;
+        }
+        return -1;
+    }
+
+    boolean isLoaded(int slot) {
+        return sampleIds[slot] != 0;
+    }
+
+    void unload(int slot) {
+        if (sampleIds[slot] != 0) {
+            soundPool.unload(sampleIds[slot]);
+            sampleIds[slot] = 0;
+            totalBytes -= sizes[slot];
+            sizes[slot] = 0;
+        }
+        ready[slot] = false;
+    }
+
+    void unloadAll() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            unload(i);
+        }
+    }
+
+    boolean play(int slot, float volume) {
+        if (!ready[slot]) {
+            return false;
+        }
+        return soundPool.play(sampleIds[slot], volume, volume, 1, 0, 1f) != 0;
+    }
+
+    void stop() {
+        soundPool.autoPause();
+    }
+
+    void release() {
+        soundPool.release();
+    }
+
+    @Override
+    public void onLoadComplete(SoundPool pool, int sampleId, int status) {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (sampleIds[i] == sampleId) {
+                ready[i] = status == 0;
+                return;
+            }
+        }
+        // Slot was reloaded before this sample finished loading.
+        pool.unload(sampleId);
+    }
+}
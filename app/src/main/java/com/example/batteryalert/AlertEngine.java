@@ -0,0 +1,151 @@
+package com.example.batteryalert;
+
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tier decision logic for battery samples, free of Android types so it can be
+ * driven from a plain JVM. {@link #onSample} allocates nothing and only does
+ * integer math: the rules are compiled into an {@link AlertTable} when a
+ * {@link Config} is built, and configs are swapped atomically. Each tier keeps
+ * its own cooldown.
+ */
+public final class AlertEngine {
+
+    public static final int TIER_NONE = 0;
+    public static final int TIER_NORMAL = 1;
+    public static final int TIER_URGENT = 2;
+    public static final int TIER_CRITICAL = 3;
+
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_ALERT = 1;
+    public static final int ACTION_STOP = 2;
+    // Set in a result when the rule asks for the tier's tone instead of its phrase or clip.
+    public static final int FLAG_TONE = 1 << 16;
+
+    // Mirrors android.os.BatteryManager.BATTERY_STATUS_* values.
+    public static final int STATUS_CHARGING = 2;
+    public static final int STATUS_FULL = 5;
+
+    public static final long DEFAULT_COOLDOWN = 60000;
+
+    public static final class Config {
+        public final int threshold;
+        public final int urgentOffset;
+        public final int criticalOffset;
+        public final long cooldownMs;
+        public final AlertRule[] extraRules;
+        public final AlertTable table;
+
+        public Config(int threshold, int urgentOffset, int criticalOffset, long cooldownMs) {
+            this(threshold, urgentOffset, criticalOffset, cooldownMs, new AlertRule[0], TimeZone.getDefault());
+        }
+
+        /** The three threshold tiers plus {@code extraRules}, compiled for {@code zone}'s quiet windows. */
+        public Config(int threshold, int urgentOffset, int criticalOffset, long cooldownMs,
+                      AlertRule[] extraRules, TimeZone zone) {
+            this.threshold = threshold;
+            this.urgentOffset = urgentOffset;
+            this.criticalOffset = criticalOffset;
+            this.cooldownMs = cooldownMs;
+            this.extraRules = extraRules;
+            this.table = AlertTable.compile(AlertTable.thresholdRules(
+                    threshold, urgentOffset, criticalOffset, cooldownMs, extraRules), zone);
+        }
+    }
+
+    private final AtomicReference<Config> config;
+    private long lastAlertTime = 0;
+    private final long[] lastAlertByTier = new long[TIER_CRITICAL + 1];
+    private int lastTier = TIER_NONE;
+
+    public AlertEngine(Config initial) {
+        config = new AtomicReference<>(initial);
+    }
+
+    public Config getConfig() {
+        return config.get();
+    }
+
+    public void setConfig(Config newConfig) {
+        config.set(newConfig);
+    }
+
+    /**
+     * Evaluates one sample. Returns {@code (tier << 8) | action}, plus
+     * {@link #FLAG_TONE} for tone-only rules; use {@link #action(int)},
+     * {@link #tier(int)} and {@link #toneOnly(int)} to unpack it.
+     */
+    public int onSample(int level, int scale, int status, long timeMs) {
+        boolean charging = isCharging(status);
+        if (level < 0 || scale <= 0) {
+            if (charging) {
+                lastTier = TIER_NONE;
+                return ACTION_STOP;
+            }
+            return ACTION_NONE;
+        }
+
+        AlertTable table = config.get().table;
+        int rule = table.lookup(level, scale, charging);
+        if (rule < 0) {
+            lastTier = TIER_NONE;
+            // Plugging in silences any low-battery alert still playing.
+            return charging ? ACTION_STOP : ACTION_NONE;
+        }
+        int tier = table.tier(rule);
+        lastTier = tier;
+        int result = tier << 8 | (table.toneOnly(rule) ? FLAG_TONE : 0);
+        if (timeMs - lastAlertByTier[tier] > table.cooldownMs(rule) && !table.isQuiet(rule, timeMs)) {
+            lastAlertByTier[tier] = timeMs;
+            lastAlertTime = timeMs;
+            return result | ACTION_ALERT;
+        }
+        return result;
+    }
+
+    public static boolean isCharging(int status) {
+        return status == STATUS_CHARGING || status == STATUS_FULL;
+    }
+
+    /** True when the level is at or below {@code threshold + marginPct}. */
+    public boolean isNearThreshold(int level, int scale, int marginPct) {
+        if (level < 0 || scale <= 0) {
+            return false;
+        }
+        return level * 100L <= (long) (config.get().threshold + marginPct) * scale;
+    }
+
+    public static int action(int result) {
+        return result & 0xFF;
+    }
+
+    public static int tier(int result) {
+        return (result >>> 8) & 0xFF;
+    }
+
+    public static boolean toneOnly(int result) {
+        return (result & FLAG_TONE) != 0;
+    }
+
+    /**
+     * Restores cooldown and escalation state saved before a restart.
+     * {@code lastAlertByTier} is indexed by tier, like the engine's own.
+     */
+    public void restore(long[] lastAlertByTier, int lastTier) {
+        this.lastTier = lastTier;
+        lastAlertTime = 0;
+        for (int t = TIER_NORMAL; t <= TIER_CRITICAL; t++) {
+            this.lastAlertByTier[t] = lastAlertByTier[t];
+            lastAlertTime = Math.max(lastAlertTime, lastAlertByTier[t]);
+        }
+    }
+
+    public long getLastAlertTime() {
+        return lastAlertTime;
+    }
+
+    public int getLastTier() {
+        return lastTier;
+    }
+}
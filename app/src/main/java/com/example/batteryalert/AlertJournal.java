@@ -0,0 +1,158 @@
+package com.example.batteryalert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Alert state that has to survive a START_STICKY restart: last alert time per
+ * tier, the last processed sample and the current escalation stage.
+ *
+ * <p>The file is memory-mapped and holds two fixed slots after an 8-byte
+ * header. Each {@link #record} writes the slot not holding the newest state,
+ * with a sequence number and checksum, so a write torn by a crash leaves the
+ * other slot intact. Writes are plain stores into the mapping and never sync,
+ * so they don't block the pipeline thread. {@link #open} picks the newest
+ * valid slot, so replay takes constant time.
+ */
+public final class AlertJournal implements Closeable {
+
+    static final int MAGIC = 0x424A524E; // "BJRN"
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int SLOT_SIZE = 64;
+    private static final int TIERS = 3;
+
+    // Slot layout.
+    private static final int OFF_SEQ = 0;
+    private static final int OFF_ALERT_TIMES = 8;
+    private static final int OFF_SAMPLE_TIME = OFF_ALERT_TIMES + TIERS * 8;
+    private static final int OFF_LEVEL = OFF_SAMPLE_TIME + 8;
+    private static final int OFF_STAGE = OFF_LEVEL + 4;
+    private static final int OFF_CHECKSUM = OFF_STAGE + 4;
+
+    private final MappedByteBuffer buffer;
+    private final long[] lastAlertTimes = new long[TIERS];
+    private long seq;
+    private long lastSampleTime;
+    private int lastLevel = -1;
+    private int stage = AlertEngine.TIER_NONE;
+
+    private AlertJournal(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public static AlertJournal open(File file) throws IOException {
+        long size = HEADER_SIZE + 2L * SLOT_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != size) {
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            AlertJournal journal = new AlertJournal(buf);
+            if (buf.getInt(0) == MAGIC && buf.getInt(4) == VERSION) {
+                journal.replay();
+            } else {
+                for (int i = 0; i < size; i += 8) {
+                    buf.putLong(i, 0);
+                }
+                buf.putInt(0, MAGIC);
+                buf.putInt(4, VERSION);
+            }
+            return journal;
+        }
+    }
+
+    private void replay() {
+        int best = -1;
+        long bestSeq = -1;
+        for (int slot = 0; slot < 2; slot++) {
+            int base = HEADER_SIZE + slot * SLOT_SIZE;
+            long s = buffer.getLong(base + OFF_SEQ);
+            if (s > bestSeq && buffer.getLong(base + OFF_CHECKSUM) == checksum(base)) {
+                best = base;
+                bestSeq = s;
+            }
+        }
+        if (best < 0) {
+            return;
+        }
+        seq = bestSeq;
+        for (int i = 0; i < TIERS; i++) {
+            lastAlertTimes[i] = buffer.getLong(best + OFF_ALERT_TIMES + i * 8);
+        }
+        lastSampleTime = buffer.getLong(best + OFF_SAMPLE_TIME);
+        lastLevel = buffer.getInt(best + OFF_LEVEL);
+        stage = buffer.getInt(best + OFF_STAGE);
+    }
+
+    /**
+     * Records a processed sample. {@code alertedTier} is the tier that just fired,
+     * or {@link AlertEngine#TIER_NONE}.
+     */
+    public void record(long sampleTime, int levelPct, int currentStage, int alertedTier) {
+        if (alertedTier != AlertEngine.TIER_NONE) {
+            lastAlertTimes[alertedTier - 1] = sampleTime;
+        }
+        lastSampleTime = sampleTime;
+        lastLevel = levelPct;
+        stage = currentStage;
+        seq++;
+
+        int base = HEADER_SIZE + (int) (seq & 1) * SLOT_SIZE;
+        buffer.putLong(base + OFF_SEQ, seq);
+        for (int i = 0; i < TIERS; i++) {
+            buffer.putLong(base + OFF_ALERT_TIMES + i * 8, lastAlertTimes[i]);
+        }
+        buffer.putLong(base + OFF_SAMPLE_TIME, lastSampleTime);
+        buffer.putInt(base + OFF_LEVEL, lastLevel);
+        buffer.putInt(base + OFF_STAGE, stage);
+        buffer.putLong(base + OFF_CHECKSUM, checksum(base));
+    }
+
+    private long checksum(int base) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int off = 0; off < OFF_CHECKSUM; off += 8) {
+            h = (h ^ buffer.getLong(base + off)) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        return h;
+    }
+
+    public long getLastAlertTime(int tier) {
+        return lastAlertTimes[tier - 1];
+    }
+
+    /** Most recent alert of any tier, or 0 if none was recorded. */
+    public long getLastAlertTime() {
+        long t = 0;
+        for (long v : lastAlertTimes) {
+            t = Math.max(t, v);
+        }
+        return t;
+    }
+
+    public long getLastSampleTime() {
+        return lastSampleTime;
+    }
+
+    public int getLastLevel() {
+        return lastLevel;
+    }
+
+    public int getStage() {
+        return stage;
+    }
+
+    @Override
+    public void close() {
+        buffer.force();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.batteryalert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One alert rule: a level range in percent, the charging state it applies to,
+ * the tier whose sound it plays, its own cooldown and an optional daily quiet
+ * window. Rules are compiled into an {@link AlertTable}.
+ *
+ * <p>Text form, one rule per line or separated by {@code ;}:
+ * <pre>
+ * &lt;normal|urgent|critical&gt; &lt;from-to | &lt;=n | &gt;=n&gt; [charging] [quiet HH:MM-HH:MM] [cooldown n(s|m|h)] [tone]
+ * </pre>
+ * e.g. {@code normal >=80 charging cooldown 30m tone} or
+ * {@code urgent <=15 quiet 23:00-07:00}. {@code tone} plays the tier's tone
+ * instead of its phrase or clip.
+ */
+public final class AlertRule {
+
+    public static final int NO_QUIET = -1;
+
+    public final int tier;
+    public final int fromPct;
+    public final int toPct;
+    public final boolean charging;
+    public final long cooldownMs;
+    // Minutes after local midnight; the window may wrap past midnight.
+    public final int quietStartMin;
+    public final int quietEndMin;
+    public final boolean toneOnly;
+
+    public AlertRule(int tier, int fromPct, int toPct, boolean charging, long cooldownMs,
+                     int quietStartMin, int quietEndMin, boolean toneOnly) {
+        if (tier < AlertEngine.TIER_NORMAL || tier > AlertEngine.TIER_CRITICAL) {
+            throw new IllegalArgumentException("Bad tier " + tier);
+        }
+        if (fromPct < 0 || toPct > 100 || fromPct > toPct) {
+            throw new IllegalArgumentException("Bad range " + fromPct + "-" + toPct);
+        }
+        this.tier = tier;
+        this.fromPct = fromPct;
+        this.toPct = toPct;
+        this.charging = charging;
+        this.cooldownMs = cooldownMs;
+        this.quietStartMin = quietStartMin;
+        this.quietEndMin = quietEndMin;
+        this.toneOnly = toneOnly;
+    }
+
+    /** A discharging rule from 0 to {@code toPct} with no quiet window. */
+    public static AlertRule below(int tier, int toPct, long cooldownMs) {
+        return new AlertRule(tier, 0, Math.max(0, Math.min(100, toPct)), false, cooldownMs,
+                NO_QUIET, NO_QUIET, false);
+    }
+
+    /** Parses the text form; an empty or null spec gives no rules. */
+    public static AlertRule[] parseAll(String spec, long defaultCooldownMs) {
+        List<AlertRule> rules = new ArrayList<>();
+        if (spec != null) {
+            for (String line : spec.split("[;\n]")) {
+                if (!line.trim().isEmpty()) {
+                    rules.add(parse(line, defaultCooldownMs));
+                }
+            }
+        }
+        return rules.toArray(new AlertRule[0]);
+    }
+
+    static AlertRule parse(String line, long defaultCooldownMs) {
+        String[] tokens = line.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        if (tokens.length < 2) {
+            throw new IllegalArgumentException("Expected a tier and a level range: " + line.trim());
+        }
+        int tier = parseTier(tokens[0]);
+        int from, to;
+        String range = tokens[1];
+        try {
+            if (range.startsWith("<=")) {
+                from = 0;
+                to = Integer.parseInt(range.substring(2));
+            } else if (range.startsWith(">=")) {
+                from = Integer.parseInt(range.substring(2));
+                to = 100;
+            } else {
+                int dash = range.indexOf('-');
+                if (dash < 0) {
+                    from = to = Integer.parseInt(range);
+                } else {
+                    from = Integer.parseInt(range.substring(0, dash));
+                    to = Integer.parseInt(range.substring(dash + 1));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad level range: " + range);
+        }
+        boolean charging = false;
+        boolean tone = false;
+        long cooldown = defaultCooldownMs;
+        int quietStart = NO_QUIET, quietEnd = NO_QUIET;
+        for (int i = 2; i < tokens.length; i++) {
+            switch (tokens[i]) {
+                case "charging":
+                    charging = true;
+                    break;
+                case "discharging":
+                    charging = false;
+                    break;
+                case "tone":
+                    tone = true;
+                    break;
+                case "quiet":
+                    if (++i == tokens.length) {
+                        throw new IllegalArgumentException("quiet needs HH:MM-HH:MM");
+                    }
+                    int dash = tokens[i].indexOf('-');
+                    if (dash < 0) {
+                        throw new IllegalArgumentException("quiet needs HH:MM-HH:MM");
+                    }
+                    quietStart = parseTime(tokens[i].substring(0, dash));
+                    quietEnd = parseTime(tokens[i].substring(dash + 1));
+                    break;
+                case "cooldown":
+                    if (++i == tokens.length) {
+                        throw new IllegalArgumentException("cooldown needs a duration");
+                    }
+                    cooldown = parseDuration(tokens[i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + tokens[i]);
+            }
+        }
+        return new AlertRule(tier, from, to, charging, cooldown, quietStart, quietEnd, tone);
+    }
+
+    private static int parseTier(String s) {
+        switch (s) {
+            case "normal":
+                return AlertEngine.TIER_NORMAL;
+            case "urgent":
+                return AlertEngine.TIER_URGENT;
+            case "critical":
+                return AlertEngine.TIER_CRITICAL;
+            default:
+                throw new IllegalArgumentException("Unknown tier: " + s);
+        }
+    }
+
+    private static int parseTime(String s) {
+        int colon = s.indexOf(':');
+        try {
+            int h = Integer.parseInt(colon < 0 ? s : s.substring(0, colon));
+            int m = colon < 0 ? 0 : Integer.parseInt(s.substring(colon + 1));
+            if (h >= 0 && h < 24 && m >= 0 && m < 60) {
+                return h * 60 + m;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Bad time: " + s);
+    }
+
+    private static long parseDuration(String s) {
+        long unit = 1000;
+        String digits = s;
+        if (s.endsWith("s")) {
+            digits = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("m")) {
+            unit = 60000;
+            digits = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("h")) {
+            unit = 3600000;
+            digits = s.substring(0, s.length() - 1);
+        }
+        try {
+            long n = Long.parseLong(digits);
+            if (n >= 0) {
+                return n * unit;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException("Bad duration: " + s);
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.batteryalert;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * {@link AlertRule}s compiled into a flat lookup table with one slot per
+ * charging state and level percent, each holding the index of the rule that
+ * applies there. Where rules overlap the highest tier wins, then the earlier
+ * rule. Evaluating a sample is one array read however many rules there are;
+ * the per-rule fields sit in parallel primitive arrays. Immutable.
+ */
+public final class AlertTable {
+
+    private static final int LEVELS = 101;
+    private static final long DAY_MS = 24 * 3600000L;
+
+    // slots[charging * LEVELS + pct] is a rule index, or -1.
+    private final short[] slots = new short[2 * LEVELS];
+    private final byte[] tiers;
+    private final long[] cooldownMs;
+    private final short[] quietStart;
+    private final short[] quietEnd;
+    private final boolean[] toneOnly;
+    private final TimeZone zone;
+    private final int maxDischargingPct;
+    private final boolean hasChargingRules;
+
+    private AlertTable(AlertRule[] rules, TimeZone zone) {
+        int n = rules.length;
+        if (n > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many rules: " + n);
+        }
+        this.zone = zone;
+        tiers = new byte[n];
+        cooldownMs = new long[n];
+        quietStart = new short[n];
+        quietEnd = new short[n];
+        toneOnly = new boolean[n];
+        Arrays.fill(slots, (short) -1);
+        int maxPct = -1;
+        boolean charging = false;
+        // Fill from the highest tier down; within a tier the first rule to claim a slot keeps it.
+        for (int tier = AlertEngine.TIER_CRITICAL; tier >= AlertEngine.TIER_NORMAL; tier--) {
+            for (int i = 0; i < n; i++) {
+                AlertRule r = rules[i];
+                if (r.tier != tier) {
+                    continue;
+                }
+                int base = r.charging ? LEVELS : 0;
+                for (int pct = r.fromPct; pct <= r.toPct; pct++) {
+                    if (slots[base + pct] < 0) {
+                        slots[base + pct] = (short) i;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            AlertRule r = rules[i];
+            tiers[i] = (byte) r.tier;
+            cooldownMs[i] = r.cooldownMs;
+            quietStart[i] = (short) r.quietStartMin;
+            quietEnd[i] = (short) r.quietEndMin;
+            toneOnly[i] = r.toneOnly;
+            if (r.charging) {
+                charging = true;
+            } else {
+                maxPct = Math.max(maxPct, r.toPct);
+            }
+        }
+        maxDischargingPct = maxPct;
+        hasChargingRules = charging;
+    }
+
+    public static AlertTable compile(AlertRule[] rules, TimeZone zone) {
+        return new AlertTable(rules, zone);
+    }
+
+    /**
+     * The classic three tiers: normal at or below {@code threshold}, urgent and
+     * critical {@code urgentOffset} and {@code criticalOffset} below it, all while
+     * discharging; {@code extra} rules follow them.
+     */
+    public static AlertRule[] thresholdRules(int threshold, int urgentOffset, int criticalOffset,
+                                             long cooldownMs, AlertRule[] extra) {
+        AlertRule[] rules = new AlertRule[3 + extra.length];
+        int n = 0;
+        int[] limits = {threshold - criticalOffset, threshold - urgentOffset, threshold};
+        int[] tiers = {AlertEngine.TIER_CRITICAL, AlertEngine.TIER_URGENT, AlertEngine.TIER_NORMAL};
+        for (int i = 0; i < limits.length; i++) {
+            if (limits[i] >= 0) {
+                rules[n++] = AlertRule.below(tiers[i], limits[i], cooldownMs);
+            }
+        }
+        System.arraycopy(extra, 0, rules, n, extra.length);
+        return Arrays.copyOf(rules, n + extra.length);
+    }
+
+    /**
+     * Index of the rule for {@code level/scale} in the given charging state, or -1.
+     * The level is rounded up to a whole percent, so a rule up to {@code p}
+     * matches exactly when {@code level * 100 <= p * scale}.
+     */
+    public int lookup(int level, int scale, boolean charging) {
+        // Nearly every device reports a scale of 100; skip the division then.
+        int pct = scale == 100 ? level : (int) ((level * 100L + scale - 1) / scale);
+        if (pct > 100) {
+            pct = 100;
+        }
+        return slots[(charging ? LEVELS : 0) + pct];
+    }
+
+    public int tier(int rule) {
+        return tiers[rule];
+    }
+
+    public long cooldownMs(int rule) {
+        return cooldownMs[rule];
+    }
+
+    public boolean toneOnly(int rule) {
+        return toneOnly[rule];
+    }
+
+    /** Whether {@code rule} is inside its quiet window at {@code timeMs}. */
+    public boolean isQuiet(int rule, long timeMs) {
+        int start = quietStart[rule];
+        if (start == AlertRule.NO_QUIET) {
+            return false;
+        }
+        int end = quietEnd[rule];
+        long local = (timeMs + zone.getOffset(timeMs)) % DAY_MS;
+        int minute = (int) ((local < 0 ? local + DAY_MS : local) / 60000);
+        if (start <= end) {
+            return minute >= start && minute < end;
+        }
+        return minute >= start || minute < end;
+    }
+
+    /** Highest level any discharging rule covers, or -1 if there are none. */
+    public int maxDischargingPct() {
+        return maxDischargingPct;
+    }
+
+    public boolean hasChargingRules() {
+        return hasChargingRules;
+    }
+
+    public int size() {
+        return tiers.length;
+    }
+}
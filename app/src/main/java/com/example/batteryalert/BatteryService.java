@@ -1,6 +1,5 @@
 package com.example.batteryalert;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.Service;
@@ -11,21 +10,52 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.media.AudioAttributes;
 import android.media.MediaPlayer;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.net.Uri;
 import android.os.BatteryManager;
+import android.os.Binder;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
-import androidx.core.app.NotificationCompat;
+import android.util.Log;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URLEncoder;
 import java.util.Locale;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class BatteryService extends Service implements TextToSpeech.OnInitListener {
 
+    /** Receives {@link MonitorState} updates on the main thread. */
+    public interface StateListener {
+        void onStateChanged(MonitorState state);
+    }
+
+    /** In-process handle returned from {@link #onBind}. */
+    public class LocalBinder extends Binder {
+        public BatteryService getService() {
+            return BatteryService.this;
+        }
+    }
+
+    private static final String TAG = "BatteryService";
     private static final String CHANNEL_ID = "BatteryMonitorChannel";
     public static final String PREFS_NAME = "BatteryPrefs";
-    public static final String KEY_RUNNING = "isServiceRunning";
     public static final String KEY_THRESHOLD = "threshold";
     public static final String KEY_VOLUME = "volume";
     public static final String KEY_URGENT_OFFSET = "urgent_offset";
@@ -34,188 +64,697 @@ public class BatteryService extends Service implements TextToSpeech.OnInitListen
     public static final String KEY_ALERT_URGENT = "alert_urgent_text";
     public static final String KEY_ALERT_CRITICAL = "alert_critical_text";
 
+    public static final String KEY_CUSTOM_TTS_URL = "custom_tts_url";
+    private static final String KEY_TELEMETRY_INSTALL_ID = "telemetry_install_id";
+
+    private static final int MSG_SAMPLE = 1;
+    private static final int MSG_ALERT = 2;
+    private static final int MSG_STOP = 3;
+    private static final int MSG_WARM_CLIPS = 4;
+    private static final int MSG_RELEASE_CLIPS = 5;
+    private static final int MSG_RELEASE_TTS = 6;
+
+    private static final int NOTIFICATION_ID = 1;
+    static final String HISTORY_FILE = "history.bin";
+    private static final String TELEMETRY_FILE = "telemetry.bin";
+    static final String SESSIONS_FILE = "sessions.bin";
+    static final String HIRES_FILE = "hires.bin";
+
+    private static final Locale TTS_LOCALE = new Locale("ru");
+
     private int threshold = 20;
-    private int urgentOffset = 5;
-    private int criticalOffset = 10;
-    private float volume = 1.0f;
-    private TextToSpeech tts;
-    private boolean ttsInitialized = false;
-    private int urgentOffset = 5;
-    private int criticalOffset = 10;
-    private float volume = 1.0f;
-    private String alertNormal, alertUrgent, alertCritical;
-    private String uriNormal, uriUrgent, uriCritical;
-
-    private TextToSpeech tts;
-    private boolean ttsInitialized = false;
+    private volatile float volume = 1.0f;
+    private volatile String alertNormal, alertUrgent, alertCritical;
+    private volatile String uriNormal, uriUrgent, uriCritical;
+    private volatile String customTtsUrl;
+    private volatile String telemetryUrl;
+    private ConfigSnapshot config;
+    private final MonitorStats stats = new MonitorStats();
+    private long createdAtNanos;
+    private volatile long ttsCreatedAtNanos;
+    // Broadcast time of the sample behind the alert currently being played.
+    private volatile long alertBroadcastNanos;
+    private volatile long timeToReadyMs = -1;
+    private boolean foregroundStarted = false;
+
+    private volatile TextToSpeech tts;
+    private volatile boolean ttsInitialized = false;
     private MediaPlayer mediaPlayer;
+    private AlertClipPool clipPool;
+    private TtsPhraseCache phraseCache;
+    private TonePlayer tonePlayer;
+    private final String[] pooledUris = new String[AlertClipPool.TIER_COUNT];
+
+    // Broadcasts are received and decided on pipelineThread; sound is started on
+    // audioThread so a slow MediaPlayer or TTS call never stalls ingestion or the UI.
+    private HandlerThread pipelineThread;
+    private Handler pipelineHandler;
+    private HandlerThread audioThread;
+    private Handler audioHandler;
+
+    // Latest unprocessed sample, touched only on pipelineThread.
+    private int pendingLevel, pendingScale, pendingStatus;
+    private int pendingPlugged, pendingTemperature, pendingVoltage;
+    private long pendingTime;
+    private long pendingNanos;
+    private boolean samplePending = false;
+    private boolean sampleDeferred = false;
+    private int processedStatus = -1, processedPlugged = -1;
+    private boolean clipsWarm = false;
 
-    private long lastAlertTime = 0;
-    private static final long ALERT_COOLDOWN = 60000;
+    private final AlertEngine alertEngine = new AlertEngine(
+            new AlertEngine.Config(20, 5, 10, AlertEngine.DEFAULT_COOLDOWN));
+    private final SampleFilter sampleFilter = new SampleFilter();
+    private volatile HistoryRing history;
+    private AlertJournal journal;
+    private final DischargePredictor predictor = new DischargePredictor();
+    // Predicted crossings of the threshold and the urgent and critical levels.
+    private volatile long predictedCrossingMs = -1;
+    private volatile long predictedUrgentMs = -1;
+    private volatile long predictedCriticalMs = -1;
+    private LiveNotification notification;
+    // Decides how much of the pipeline runs, and whether audio stays warm.
+    private final PowerGovernor governor = new PowerGovernor();
+    // Telemetry is queued on pipelineThread and uploaded on uploadExecutor.
+    private TelemetryQueue telemetryQueue;
+    private volatile TelemetryUploader uploader;
+    private final ExecutorService uploadExecutor = Executors.newSingleThreadExecutor();
+    private long dischargeStartMs = -1;
+    private int dischargeStartLevel;
+    // Far above the threshold, monitoring is handed to SamplingJobService and the service stops.
+    private final SamplingSchedule samplingSchedule = new SamplingSchedule(System::currentTimeMillis);
+    private final SamplingHandoff handoff = new SamplingHandoff(samplingSchedule);
+    // Charge/discharge sessions, tracked and stored on pipelineThread.
+    private final SessionTracker sessionTracker = new SessionTracker();
+    private final long[] sessionState = new long[SessionTracker.STATE_WORDS];
+    private volatile SessionStore sessions;
+    // Optional high-resolution telemetry, polled on pipelineThread at the sampler's pace.
+    private volatile boolean hiResEnabled = false;
+    private HiResLog hiResLog;
+    private final HiResSampler hiResSampler = new HiResSampler();
+    private final Runnable hiResPoll = this::pollHiRes;
+    // Latest broadcast values before SampleFilter, which drops voltage- and temperature-only changes.
+    private int hiResLevel = -1, hiResVoltage, hiResTemperature;
+    private boolean hiResCharging;
+    private BatteryManager batteryManager;
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<StateListener> stateListeners = new CopyOnWriteArrayList<>();
+    private volatile MonitorState state;
+    // Last state of the running service, for readers that can't bind (BatteryStateProvider).
+    private static volatile MonitorState runningState;
 
     private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-            int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+            stats.increment(MonitorStats.BROADCASTS);
+            long cpuStart = Debug.threadCpuTimeNanos();
+            onBatteryChanged(intent);
+            governor.charge(System.currentTimeMillis(), Debug.threadCpuTimeNanos() - cpuStart);
+        }
+    };
 
-            boolean isCharging = status == BatteryManager.BATTERY_STATUS_CHARGING ||
-                                 status == BatteryManager.BATTERY_STATUS_FULL;
+    // Quiet windows are compiled against the time zone in effect at the time.
+    private final BroadcastReceiver timeZoneReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            applyEngineConfig();
+        }
+    };
 
-            if (isCharging) {
-                stopAlertSound();
-                return;
+    private void onBatteryChanged(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
+        if (hiResEnabled && level >= 0 && scale > 0) {
+            hiResLevel = level * 100 / scale;
+            hiResCharging = AlertEngine.isCharging(status);
+            hiResVoltage = intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0);
+            hiResTemperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+        }
+        if (!sampleFilter.accept(level, scale, status, plugged)) {
+            return;
+        }
+
+        pendingLevel = level;
+        pendingScale = scale;
+        pendingStatus = status;
+        pendingPlugged = plugged;
+        pendingTemperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+        pendingVoltage = intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0);
+        pendingTime = System.currentTimeMillis();
+        pendingNanos = System.nanoTime();
+        boolean statusChanged = status != processedStatus || plugged != processedPlugged;
+        if (!samplePending) {
+            samplePending = true;
+            long delay = governor.deferMs(pendingTime, statusChanged);
+            sampleDeferred = delay > 0;
+            if (sampleDeferred) {
+                stats.increment(MonitorStats.SAMPLES_DEFERRED);
             }
+            pipelineHandler.sendEmptyMessageDelayed(MSG_SAMPLE, delay);
+        } else if (sampleDeferred && statusChanged) {
+            // A plug or status change must not wait out a deferred level update.
+            sampleDeferred = false;
+            pipelineHandler.removeMessages(MSG_SAMPLE);
+            pipelineHandler.sendEmptyMessage(MSG_SAMPLE);
+        }
+    }
 
-            if (level != -1 && scale != -1) {
-                float batteryPct = level * 100 / (float) scale;
-                if (batteryPct <= threshold) {
-                    long currentTime = System.currentTimeMillis();
-                    if (currentTime - lastAlertTime > ALERT_COOLDOWN) {
-                        playAlertSound(batteryPct);
-                        lastAlertTime = currentTime;
-                    }
+    private boolean handlePipelineMessage(Message msg) {
+        if (msg.what != MSG_SAMPLE) {
+            return false;
+        }
+        long cpuStart = Debug.threadCpuTimeNanos();
+        samplePending = false;
+        sampleDeferred = false;
+        processedStatus = pendingStatus;
+        processedPlugged = pendingPlugged;
+        governor.onProcessed(pendingTime);
+        stats.increment(MonitorStats.SAMPLES);
+        long decisionStart = System.nanoTime();
+        int result = alertEngine.onSample(pendingLevel, pendingScale, pendingStatus, pendingTime);
+        stats.recordNanos(MonitorStats.LAT_DECISION, System.nanoTime() - decisionStart);
+        boolean charging = AlertEngine.isCharging(pendingStatus);
+        int alertedTier = AlertEngine.action(result) == AlertEngine.ACTION_ALERT
+                ? AlertEngine.tier(result) : AlertEngine.TIER_NONE;
+        if (history != null && pendingLevel >= 0 && pendingScale > 0) {
+            history.append(pendingTime, pendingLevel * 100 / pendingScale, pendingStatus,
+                    pendingPlugged, alertedTier, pendingTemperature, pendingVoltage);
+        }
+        if (journal != null && pendingLevel >= 0 && pendingScale > 0) {
+            journal.record(pendingTime, pendingLevel * 100 / pendingScale,
+                    alertEngine.getLastTier(), alertedTier);
+        }
+        if (pendingLevel >= 0 && pendingScale > 0) {
+            predictor.onSample(pendingTime, pendingLevel * 100.0 / pendingScale, charging);
+            AlertEngine.Config engineConfig = alertEngine.getConfig();
+            predictedCrossingMs = predictor.predictCrossing(engineConfig.threshold);
+            predictedUrgentMs = predictor.predictCrossing(engineConfig.threshold - engineConfig.urgentOffset);
+            predictedCriticalMs = predictor.predictCrossing(engineConfig.threshold - engineConfig.criticalOffset);
+            // Warm up ahead of whichever tier is crossed next, not only the first.
+            long nextCrossingMs = MonitorState.nextCrossing(pendingTime, predictedCrossingMs,
+                    predictedUrgentMs, predictedCriticalMs);
+            // A rule above the threshold is crossed before any tier, so the governor leads that one.
+            AlertTable table = engineConfig.table;
+            int rulePct = table.maxDischargingPct();
+            long ruleCrossingMs = rulePct > engineConfig.threshold ? predictor.predictCrossing(rulePct) : -1;
+            int previousMode = governor.getMode();
+            if (governor.update(pendingTime, pendingLevel * 100 / pendingScale, charging, rulePct,
+                    table.hasChargingRules(), ruleCrossingMs > pendingTime ? ruleCrossingMs : nextCrossingMs)
+                    != previousMode) {
+                stats.increment(MonitorStats.MODE_TRANSITIONS);
+                if (governor.getMode() == PowerGovernor.MODE_DORMANT && hiResLog != null) {
+                    // Little happens from here on, so don't leave rows waiting for a full block.
+                    hiResLog.checkpoint();
                 }
             }
+            maybeHandOff(pendingLevel * 100 / pendingScale, charging);
+            notification.update(pendingLevel * 100 / pendingScale, charging, alertEngine.getLastTier(),
+                    predictedCrossingMs, predictor.isValid() ? predictor.getRatePerHour() : Double.NaN,
+                    governor.notificationIntervalMs());
         }
-    };
+        if (governor.keepAudioWarm() != clipsWarm) {
+            clipsWarm = !clipsWarm;
+            audioHandler.sendEmptyMessage(clipsWarm ? MSG_WARM_CLIPS : MSG_RELEASE_CLIPS);
+            if (clipsWarm) {
+                mainHandler.post(this::ensureTts);
+            }
+        }
+        if (!governor.keepTts() && tts != null) {
+            audioHandler.sendEmptyMessage(MSG_RELEASE_TTS);
+        }
+        switch (AlertEngine.action(result)) {
+            case AlertEngine.ACTION_STOP:
+                audioHandler.removeMessages(MSG_ALERT);
+                audioHandler.sendEmptyMessage(MSG_STOP);
+                break;
+            case AlertEngine.ACTION_ALERT:
+                stats.increment(MonitorStats.ALERTS);
+                alertBroadcastNanos = pendingNanos;
+                audioHandler.removeMessages(MSG_ALERT);
+                audioHandler.obtainMessage(MSG_ALERT, AlertEngine.tier(result),
+                        AlertEngine.toneOnly(result) ? 1 : 0).sendToTarget();
+                break;
+        }
+        if (pendingLevel >= 0 && pendingScale > 0) {
+            recordTelemetry(pendingLevel * 100 / pendingScale, charging, alertedTier);
+            recordSession(pendingLevel * 100 / pendingScale, charging);
+        }
+        if (timeToReadyMs < 0) {
+            timeToReadyMs = (SystemClock.elapsedRealtimeNanos() - createdAtNanos) / 1000000;
+            Log.i(TAG, "Ready " + timeToReadyMs + " ms after onCreate");
+        }
+        if (pendingLevel >= 0 && pendingScale > 0) {
+            publishState(new MonitorState(pendingLevel * 100 / pendingScale, charging,
+                    alertEngine.getLastTier(), predictedCrossingMs, predictedUrgentMs, predictedCriticalMs,
+                    alertEngine.getLastAlertTime(), pendingTime));
+        }
+        governor.charge(pendingTime, Debug.threadCpuTimeNanos() - cpuStart);
+        return true;
+    }
+
+    private void maybeHandOff(int levelPct, boolean charging) {
+        double rate = !charging && predictor.isValid() ? predictor.getRatePerHour() : Double.NaN;
+        long delay = handoff.onForegroundSample(levelPct, charging, alertEngine.getConfig().table, rate,
+                hiResEnabled, () -> SamplingJobService.canSchedule(this));
+        if (delay < 0) {
+            return;
+        }
+        SamplingJobService.start(this, samplingSchedule, delay);
+        Log.i(TAG, "Handing off to scheduled sampling, first poll in " + formatDuration(delay));
+        // Before leaving the foreground, or a pending update would repost the notification.
+        notification.cancel();
+        mainHandler.post(() -> {
+            stopForeground(true);
+            stopSelf();
+        });
+    }
+
+    private void recordTelemetry(int levelPct, boolean charging, int alertedTier) {
+        TelemetryUploader uploader = this.uploader;
+        String url = telemetryUrl;
+        if (uploader == null || url == null || url.trim().isEmpty()) {
+            dischargeStartMs = -1;
+            return;
+        }
+        if (alertedTier != AlertEngine.TIER_NONE) {
+            telemetryQueue.appendAlert(pendingTime, levelPct, alertedTier);
+        }
+        if (!charging && dischargeStartMs < 0) {
+            dischargeStartMs = pendingTime;
+            dischargeStartLevel = levelPct;
+        } else if (charging && dischargeStartMs >= 0) {
+            telemetryQueue.appendDischarge(dischargeStartMs, pendingTime, dischargeStartLevel, levelPct);
+            dischargeStartMs = -1;
+        }
+        // Only ask about the network while charging; otherwise size and age decide.
+        if (telemetryQueue.pendingCount() > 0
+                && uploader.shouldUpload(pendingTime, charging, charging && isUnmetered())) {
+            uploadExecutor.execute(() -> stats.increment(uploader.uploadOnce(System.currentTimeMillis())
+                    ? MonitorStats.TELEMETRY_BATCHES : MonitorStats.TELEMETRY_FAILURES));
+        }
+    }
+
+    private void recordSession(int levelPct, boolean charging) {
+        SessionStore sessions = this.sessions;
+        if (sessions == null) {
+            return;
+        }
+        // Reading the charge counter is a binder call; only do it where a session starts or ends.
+        int counter = sessionTracker.isBoundary(pendingTime, charging)
+                ? readChargeCounter() : SessionTracker.UNKNOWN;
+        if (sessionTracker.onSample(pendingTime, levelPct, charging, alertEngine.getLastTier(), counter)) {
+            sessions.append(sessionTracker.closed());
+        }
+        sessionTracker.saveState(sessionState);
+        sessions.saveOpen(sessionState);
+    }
+
+    private int readChargeCounter() {
+        if (batteryManager == null) {
+            return SessionTracker.UNKNOWN;
+        }
+        int uah = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+        return uah > 0 ? uah : SessionTracker.UNKNOWN;
+    }
+
+    private void pollHiRes() {
+        if (hiResLog == null) {
+            return;
+        }
+        long cpuStart = Debug.threadCpuTimeNanos();
+        long now = System.currentTimeMillis();
+        long delay = hiResSampler.getIntervalMs();
+        if (hiResLevel >= 0 && batteryManager != null) {
+            int current = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+            int counter = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+            hiResLog.append(now, hiResLevel, current, hiResVoltage, hiResTemperature, counter);
+            delay = hiResSampler.onSample(now, current, hiResTemperature, hiResCharging);
+        }
+        pipelineHandler.postDelayed(hiResPoll, delay);
+        governor.charge(now, Debug.threadCpuTimeNanos() - cpuStart);
+    }
+
+    private void updateHiRes() {
+        if (config.hiResTelemetry && hiResLog == null) {
+            try {
+                hiResLog = HiResLog.open(new File(getFilesDir(), HIRES_FILE), HiResLog.DEFAULT_CAPACITY);
+                hiResEnabled = true;
+                pipelineHandler.post(hiResPoll);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else if (!config.hiResTelemetry) {
+            closeHiRes();
+        }
+    }
+
+    private void closeHiRes() {
+        hiResEnabled = false;
+        hiResLevel = -1;
+        pipelineHandler.removeCallbacks(hiResPoll);
+        if (hiResLog != null) {
+            hiResLog.close();
+            hiResLog = null;
+        }
+    }
+
+    private boolean isUnmetered() {
+        ConnectivityManager cm = (ConnectivityManager) getSystemService(CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return false;
+        }
+        NetworkInfo info = cm.getActiveNetworkInfo();
+        return info != null && info.isConnected() && !cm.isActiveNetworkMetered();
+    }
+
+    private void publishState(MonitorState newState) {
+        state = newState;
+        runningState = newState;
+        if (StateSnapshot.get(this).update(newState)) {
+            StatusSurfaces.onChanged(this, false);
+        }
+        getContentResolver().notifyChange(BatteryStateProvider.CURRENT_URI, null);
+        if (!stateListeners.isEmpty()) {
+            mainHandler.post(() -> {
+                for (StateListener l : stateListeners) {
+                    l.onStateChanged(newState);
+                }
+            });
+        }
+    }
+
+    /** Latest state of the running service in this process, or null if it is not running or has no sample yet. */
+    static MonitorState runningState() {
+        return runningState;
+    }
+
+    /** Latest published state, or null before the first sample. */
+    public MonitorState getState() {
+        return state;
+    }
+
+    /** The sample history being recorded, or null if it could not be opened. Safe to read from any thread. */
+    public HistoryRing getHistory() {
+        return history;
+    }
+
+    /** Stored charge and discharge sessions, or null if they could not be opened. Safe to read from any thread. */
+    public SessionStore getSessions() {
+        return sessions;
+    }
+
+    /** Adds a main-thread listener and immediately delivers the current state to it, if any. */
+    public void addStateListener(StateListener listener) {
+        stateListeners.add(listener);
+        MonitorState current = state;
+        if (current != null) {
+            listener.onStateChanged(current);
+        }
+    }
+
+    public void removeStateListener(StateListener listener) {
+        stateListeners.remove(listener);
+    }
+
+    /**
+     * Applies a snapshot the caller has already persisted. Must be called on the
+     * main thread; stale versions are ignored.
+     */
+    public void pushConfig(ConfigSnapshot next) {
+        if (next.version < config.version) {
+            return;
+        }
+        int changed = next.diff(config);
+        if (changed == 0) {
+            return;
+        }
+        applyConfig(next, changed);
+    }
+
+    private boolean handleAudioMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_ALERT:
+                playAlertSound(msg.arg1, msg.arg2 != 0);
+                return true;
+            case MSG_STOP:
+                stopAlertSound();
+                return true;
+            case MSG_WARM_CLIPS:
+                warmClips();
+                return true;
+            case MSG_RELEASE_CLIPS:
+                releaseClips();
+                return true;
+            case MSG_RELEASE_TTS:
+                releaseTts();
+                return true;
+            default:
+                return false;
+        }
+    }
 
     @Override
     public void onCreate() {
+        createdAtNanos = SystemClock.elapsedRealtimeNanos();
         super.onCreate();
-        tts = new TextToSpeech(this, this);
-        registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
         createNotificationChannel();
+        notification = new LiveNotification(this, CHANNEL_ID, NOTIFICATION_ID, mainHandler);
+        batteryManager = (BatteryManager) getSystemService(BATTERY_SERVICE);
 
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        loadSettings(prefs);
+        // TTS and the audio pool are created lazily once an alert is getting close.
+        applyConfig(ConfigStore.loadFast(this), ConfigSnapshot.FIELD_ALL);
+        openJournal();
 
-        prefs.edit().putBoolean(KEY_RUNNING, true).apply();
-    }
+        pipelineThread = new HandlerThread("BatteryPipeline", Process.THREAD_PRIORITY_BACKGROUND);
+        pipelineThread.start();
+        pipelineHandler = new Handler(pipelineThread.getLooper(), this::handlePipelineMessage);
+        pipelineHandler.post(this::openHistory);
+        pipelineHandler.post(this::openTelemetry);
+        pipelineHandler.post(this::openSessions);
+        pipelineHandler.post(this::updateHiRes);
+        audioThread = new HandlerThread("BatteryAudio", Process.THREAD_PRIORITY_AUDIO);
+        audioThread.start();
+        audioHandler = new Handler(audioThread.getLooper(), this::handleAudioMessage);
 
-    private void loadSettings(SharedPreferences prefs) {
-        threshold = prefs.getInt(KEY_THRESHOLD, 20);
-        urgentOffset = prefs.getInt(KEY_URGENT_OFFSET, 5);
-        criticalOffset = prefs.getInt(KEY_CRITICAL_OFFSET, 10);
-        volume = prefs.getInt(KEY_VOLUME, 100) / 100f;
-        alertNormal = prefs.getString(KEY_ALERT_NORMAL, getString(R.string.alert_normal));
-        alertUrgent = prefs.getString(KEY_ALERT_URGENT, getString(R.string.alert_urgent));
-        alertCritical = prefs.getString(KEY_ALERT_CRITICAL, getString(R.string.alert_critical));
-        uriNormal = prefs.getString("uri_normal", null);
-        uriUrgent = prefs.getString("uri_urgent", null);
-        uriCritical = prefs.getString("uri_critical", null);
+        registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED),
+                null, pipelineHandler);
+        registerReceiver(timeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+
+        pipelineHandler.post(() -> {
+            SamplingJobService.cancel(this);
+            if (StateSnapshot.get(this).setRunning(true)) {
+                StatusSurfaces.onChanged(this, true);
+            }
+        });
     }
 
     @Override
-    public void onInit(int status) {
-        if (status == TextToSpeech.SUCCESS) {
-            int result = tts.setLanguage(new Locale("ru"));
-            if (result != TextToSpeech.LANG_MISSING_DATA && result != TextToSpeech.LANG_NOT_SUPPORTED) {
-                ttsInitialized = true;
-            }
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        dumpStats(pw);
+    }
+
+    /** Writes the counters and latency histograms; backs both dumpsys and the stats screen. */
+    public void dumpStats(PrintWriter pw) {
+        pw.println("BatteryService stats");
+        pw.print("  uptime_ms: ");
+        pw.println((SystemClock.elapsedRealtimeNanos() - createdAtNanos) / 1000000);
+        pw.print("  process_cpu_ms: ");
+        pw.println(Process.getElapsedCpuTime());
+        pw.print("  time_to_ready_ms: ");
+        pw.println(timeToReadyMs);
+        pw.print("  filter_dropped: ");
+        pw.println(sampleFilter.getDropped());
+        pw.print("  filter_processed: ");
+        pw.println(sampleFilter.getProcessed());
+        governor.dump(pw, System.currentTimeMillis());
+        if (hiResEnabled) {
+            hiResSampler.dump(pw);
+        }
+        TelemetryUploader uploader = this.uploader;
+        if (uploader != null) {
+            uploader.dump(pw, System.currentTimeMillis());
+        }
+        stats.dump(pw);
+    }
+
+    /** Milliseconds from onCreate to the first processed sample, or -1 if not ready yet. */
+    public long getTimeToReadyMs() {
+        return timeToReadyMs;
+    }
+
+    private boolean needsTts() {
+        return uriNormal == null || uriUrgent == null || uriCritical == null;
+    }
+
+    private void ensureTts() {
+        if (tts == null && needsTts()) {
+            ttsCreatedAtNanos = System.nanoTime();
+            tts = new TextToSpeech(this, this);
+        }
+    }
+
+    private void ensureAudio() {
+        if (clipPool == null) {
+            clipPool = new AlertClipPool();
+            phraseCache = new TtsPhraseCache(new File(getCacheDir(), "tts"), audioHandler, clipPool);
+            phraseCache.setLiveSpeechListener(() -> recordAudioLatency(MonitorStats.LAT_AUDIO_TTS));
+            tonePlayer = new TonePlayer();
+        }
+    }
+
+    private void applyConfig(ConfigSnapshot c, int changed) {
+        config = c;
+        threshold = c.threshold;
+        volume = c.volume / 100f;
+        alertNormal = c.alertNormal;
+        alertUrgent = c.alertUrgent;
+        alertCritical = c.alertCritical;
+        customTtsUrl = c.customTtsUrl;
+        telemetryUrl = c.telemetryUrl;
+        uriNormal = c.uriNormal;
+        uriUrgent = c.uriUrgent;
+        uriCritical = c.uriCritical;
+        governor.setBudgetMsPerHour(c.cpuBudgetMsPerHour);
+        if ((changed & ConfigSnapshot.FIELD_THRESHOLD) != 0) {
+            notification.setThreshold(threshold);
+        }
+        stats.increment(MonitorStats.CONFIG_UPDATES);
+
+        if ((changed & ConfigSnapshot.FIELDS_ENGINE) != 0) {
+            applyEngineConfig();
+        }
+        if (pipelineHandler != null && (changed & ConfigSnapshot.FIELD_TELEMETRY_URL) != 0) {
+            pipelineHandler.post(this::updateTelemetryTransport);
+        }
+        if (pipelineHandler != null && (changed & ConfigSnapshot.FIELD_HIRES_TELEMETRY) != 0) {
+            pipelineHandler.post(this::updateHiRes);
+        }
+        if (audioHandler != null && (changed & ConfigSnapshot.FIELDS_PHRASES) != 0) {
+            audioHandler.post(this::refreshPhraseCache);
+        }
+        if (pipelineHandler != null && (changed & ConfigSnapshot.FIELDS_URIS) != 0) {
+            // clipsWarm is the pipeline's; while released, new clips load when the governor next warms up.
+            pipelineHandler.post(() -> {
+                if (clipsWarm) {
+                    audioHandler.sendEmptyMessage(MSG_WARM_CLIPS);
+                }
+            });
+        }
+    }
+
+    /** Compiles the rules in {@code c}; extra rules that don't parse are logged and left out. */
+    static AlertEngine.Config engineConfig(ConfigSnapshot c) {
+        AlertRule[] extra;
+        try {
+            extra = AlertRule.parseAll(c.alertRules, AlertEngine.DEFAULT_COOLDOWN);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring alert rules: " + e.getMessage());
+            extra = new AlertRule[0];
+        }
+        return new AlertEngine.Config(c.threshold, c.urgentOffset, c.criticalOffset,
+                AlertEngine.DEFAULT_COOLDOWN, extra, TimeZone.getDefault());
+    }
+
+    private void applyEngineConfig() {
+        alertEngine.setConfig(engineConfig(config));
+        if (pipelineHandler != null) {
+            // Re-evaluate the next broadcast against the new limits even if it is unchanged.
+            pipelineHandler.post(() -> {
+                sampleFilter.reset();
+                governor.expedite();
+            });
         }
     }
 
     @Override
     public void onInit(int status) {
+        stats.recordNanos(MonitorStats.LAT_TTS_INIT, System.nanoTime() - ttsCreatedAtNanos);
+        TextToSpeech tts = this.tts;
+        if (tts == null) {
+            // Released by the governor before the engine came up.
+            return;
+        }
         if (status == TextToSpeech.SUCCESS) {
-            int result = tts.setLanguage(new Locale("ru"));
+            int result = tts.setLanguage(TTS_LOCALE);
             if (result != TextToSpeech.LANG_MISSING_DATA && result != TextToSpeech.LANG_NOT_SUPPORTED) {
                 ttsInitialized = true;
+                audioHandler.post(this::refreshPhraseCache);
             }
         }
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null) {
-            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            SharedPreferences.Editor editor = prefs.edit();
-            if (intent.hasExtra("threshold")) {
-                threshold = intent.getIntExtra("threshold", 20);
-                editor.putInt(KEY_THRESHOLD, threshold);
-            }
-            if (intent.hasExtra("volume")) {
-                int volInt = intent.getIntExtra("volume", 100);
-                volume = volInt / 100f;
-                editor.putInt(KEY_VOLUME, volInt);
-            }
-            if (intent.hasExtra("urgent_offset")) {
-                urgentOffset = intent.getIntExtra("urgent_offset", 5);
-                editor.putInt(KEY_URGENT_OFFSET, urgentOffset);
-            }
-            if (intent.hasExtra("critical_offset")) {
-                criticalOffset = intent.getIntExtra("critical_offset", 10);
-                editor.putInt(KEY_CRITICAL_OFFSET, criticalOffset);
-            }
-            if (intent.hasExtra("alert_normal")) {
-                alertNormal = intent.getStringExtra("alert_normal");
-                editor.putString(KEY_ALERT_NORMAL, alertNormal);
-            }
-            if (intent.hasExtra("alert_urgent")) {
-                alertUrgent = intent.getStringExtra("alert_urgent");
-                editor.putString(KEY_ALERT_URGENT, alertUrgent);
-            }
-            if (intent.hasExtra("alert_critical")) {
-                alertCritical = intent.getStringExtra("alert_critical");
-                editor.putString(KEY_ALERT_CRITICAL, alertCritical);
-            }
-            if (intent.hasExtra("uri_normal")) {
-                uriNormal = intent.getStringExtra("uri_normal");
-                editor.putString("uri_normal", uriNormal);
-            }
-            if (intent.hasExtra("uri_urgent")) {
-                uriUrgent = intent.getStringExtra("uri_urgent");
-                editor.putString("uri_urgent", uriUrgent);
-            }
-            if (intent.hasExtra("uri_critical")) {
-                uriCritical = intent.getStringExtra("uri_critical");
-                editor.putString("uri_critical", uriCritical);
+        if (intent != null && intent.hasExtra(ConfigStore.EXTRA_VERSION)) {
+            // MainActivity has already persisted this snapshot; only apply what changed.
+            ConfigSnapshot next = ConfigStore.fromExtras(intent, config);
+            if (next.version >= config.version) {
+                int changed = next.diff(config);
+                if (changed != 0) {
+                    applyConfig(next, changed);
+                }
             }
-            editor.apply();
         }
 
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle(getString(R.string.service_active))
-                .setContentText(getString(R.string.service_monitoring, threshold))
-                .setSmallIcon(android.R.drawable.ic_dialog_info)
-                .setOngoing(true)
-                .build();
-
-        startForeground(1, notification);
+        if (!foregroundStarted) {
+            startForeground(NOTIFICATION_ID, notification.build());
+            foregroundStarted = true;
+        }
         return START_STICKY;
     }
 
+    static String formatDuration(long ms) {
+        long minutes = ms / 60000;
+        if (minutes < 60) {
+            return minutes + "m";
+        }
+        return (minutes / 60) + "h " + (minutes % 60) + "m";
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         unregisterReceiver(batteryReceiver);
-        if (tts != null) {
-            tts.stop();
-            tts.shutdown();
+        unregisterReceiver(timeZoneReceiver);
+        runningState = null;
+        notification.cancel();
+        pipelineHandler.post(this::closeHistory);
+        pipelineHandler.post(this::closeJournal);
+        uploadExecutor.shutdown();
+        pipelineHandler.post(this::closeTelemetry);
+        pipelineHandler.post(this::closeSessions);
+        pipelineHandler.post(this::closeHiRes);
+        pipelineThread.quitSafely();
+        audioHandler.removeCallbacksAndMessages(null);
+        audioHandler.post(this::releaseAudio);
+        audioThread.quitSafely();
+        if (handoff.stopEndsMonitoring() && StateSnapshot.get(this).setRunning(false)) {
+            StatusSurfaces.onChanged(this, true);
         }
-        if (mediaPlayer != null) {
-            mediaPlayer.release();
-            mediaPlayer = null;
-        }
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        prefs.edit().putBoolean(KEY_RUNNING, false).apply();
     }
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
 
-    private void playAlertSound(float batteryPct) {
-        String alertUriString = null;
-        String textToSpeak = null;
+    private void playAlertSound(int tier, boolean toneOnly) {
+        ensureAudio();
+        if (toneOnly) {
+            playTone(tier);
+            return;
+        }
+        String alertUriString;
+        String textToSpeak;
 
-        if (batteryPct <= threshold - criticalOffset) {
+        if (tier == AlertEngine.TIER_CRITICAL) {
             alertUriString = uriCritical;
             textToSpeak = alertCritical;
-        } else if (batteryPct <= threshold - urgentOffset) {
+        } else if (tier == AlertEngine.TIER_URGENT) {
             alertUriString = uriUrgent;
             textToSpeak = alertUrgent;
         } else {
@@ -224,77 +763,54 @@ public class BatteryService extends Service implements TextToSpeech.OnInitListen
         }
 
         if (alertUriString != null) {
-            playAudioUri(Uri.parse(alertUriString));
-        } else if (textToSpeak != null) {
+            if (clipPool != null && alertUriString.equals(pooledUris[tier - 1])
+                    && clipPool.play(AlertClipPool.URI_BASE + tier - 1, volume)) {
+                recordAudioLatency(MonitorStats.LAT_AUDIO_CLIP);
+                return;
+            }
+            playAudioUri(Uri.parse(alertUriString), tier);
+        } else if (textToSpeak == null || textToSpeak.trim().isEmpty()) {
+            playTone(tier);
+        } else {
             if (customTtsUrl != null && !customTtsUrl.trim().isEmpty() && customTtsUrl.contains("%s")) {
                 try {
                     String encodedText = URLEncoder.encode(textToSpeak, "UTF-8");
                     String finalUrl = customTtsUrl.replace("%s", encodedText);
-                    playAudioUri(Uri.parse(finalUrl));
+                    playAudioUri(Uri.parse(finalUrl), tier);
                 } catch (Exception e) {
                     e.printStackTrace();
-                    fallbackToTts(textToSpeak);
+                    fallbackToTts(tier, textToSpeak);
                 }
             } else {
-                fallbackToTts(textToSpeak);
+                fallbackToTts(tier, textToSpeak);
             }
-        String alertUriString = null;
-        String textToSpeak = null;
-
-        if (batteryPct <= threshold - criticalOffset) {
-            alertUriString = uriCritical;
-            textToSpeak = alertCritical;
-        } else if (batteryPct <= threshold - urgentOffset) {
-            alertUriString = uriUrgent;
-            textToSpeak = alertUrgent;
-        } else {
-            alertUriString = uriNormal;
-            textToSpeak = alertNormal;
-        }
-
-        if (alertUriString != null) {
-            playAudioUri(Uri.parse(alertUriString));
-        } else if (textToSpeak != null && tts != null && ttsInitialized) {
-            speakTts(textToSpeak);
         }
     }
 
-    private void speakTts(String text) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            Bundle params = new Bundle();
-            params.putFloat(TextToSpeech.Engine.KEY_PARAM_VOLUME, volume);
-            tts.speak(text, TextToSpeech.QUEUE_FLUSH, params, "battery_alert");
+    private void fallbackToTts(int tier, String text) {
+        if (phraseCache != null && phraseCache.play(tier, volume)) {
+            recordAudioLatency(MonitorStats.LAT_AUDIO_CLIP);
+            return;
+        }
+        if (tts != null && ttsInitialized) {
+            speakTts(text);
         } else {
-            tts.speak(text, TextToSpeech.QUEUE_FLUSH, null);
+            playTone(tier);
         }
     }
 
-    private void playAudioUri(Uri uri) {
-        try {
-            if (mediaPlayer != null) {
-                mediaPlayer.release();
-            }
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setDataSource(this, uri);
-            mediaPlayer.setAudioAttributes(new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_ALARM)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                    .build());
-            mediaPlayer.setVolume(volume, volume);
-            mediaPlayer.prepareAsync();
-            mediaPlayer.setOnPreparedListener(MediaPlayer::start);
-        } catch (Exception e) {
-            e.printStackTrace();
+    private void playTone(int tier) {
+        if (tonePlayer != null && tonePlayer.play(tier, volume)) {
+            recordAudioLatency(MonitorStats.LAT_AUDIO_TONE);
         }
     }
 
-    private void fallbackToTts(String text) {
-        if (tts != null && ttsInitialized) {
-            speakTts(text);
-        }
+    private void recordAudioLatency(int histogram) {
+        stats.recordNanos(histogram, System.nanoTime() - alertBroadcastNanos);
     }
 
-    private void playAudioUri(Uri uri) {
+    /** Plays {@code uri}, falling back to the tier's tone if it can't be opened or fails to play. */
+    private void playAudioUri(Uri uri, int tier) {
         try {
             if (mediaPlayer != null) {
                 mediaPlayer.release();
@@ -306,14 +822,20 @@ public class BatteryService extends Service implements TextToSpeech.OnInitListen
                     .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
                     .build());
             mediaPlayer.setVolume(volume, volume);
-            mediaPlayer.prepareAsync();
-            mediaPlayer.setOnPreparedListener(MediaPlayer::start);
+            mediaPlayer.setOnPreparedListener(mp -> {
+                mp.start();
+                recordAudioLatency(MonitorStats.LAT_AUDIO_MEDIA_PLAYER);
+            });
+            // Covers unreachable TTS URLs and undecodable clips; the player thread is this one.
             mediaPlayer.setOnErrorListener((mp, what, extra) -> {
-                // If network audio fails, we could fallback to TTS here too
-                return false;
+                Log.w(TAG, "Alert audio failed (" + what + ", " + extra + "), playing tone");
+                playTone(tier);
+                return true;
             });
+            mediaPlayer.prepareAsync();
         } catch (Exception e) {
             e.printStackTrace();
+            playTone(tier);
         }
     }
 
@@ -321,13 +843,67 @@ public class BatteryService extends Service implements TextToSpeech.OnInitListen
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             Bundle params = new Bundle();
             params.putFloat(TextToSpeech.Engine.KEY_PARAM_VOLUME, volume);
-            tts.speak(text, TextToSpeech.QUEUE_FLUSH, params, "battery_alert");
+            tts.speak(text, TextToSpeech.QUEUE_FLUSH, params, TtsPhraseCache.LIVE_UTTERANCE_ID);
         } else {
             tts.speak(text, TextToSpeech.QUEUE_FLUSH, null);
         }
     }
 
+    private void refreshPhraseCache() {
+        if (tts == null || !ttsInitialized) {
+            return;
+        }
+        ensureAudio();
+        tts.setOnUtteranceProgressListener(phraseCache);
+        phraseCache.update(tts, TTS_LOCALE, new String[]{alertNormal, alertUrgent, alertCritical});
+    }
+
+    private void warmClips() {
+        ensureAudio();
+        String[] uris = {uriNormal, uriUrgent, uriCritical};
+        for (int i = 0; i < uris.length; i++) {
+            String uri = uris[i];
+            int slot = AlertClipPool.URI_BASE + i;
+            if (uri == null) {
+                clipPool.unload(slot);
+                pooledUris[i] = null;
+            } else if (!uri.equals(pooledUris[i]) || !clipPool.isLoaded(slot)) {
+                pooledUris[i] = clipPool.load(slot, getContentResolver(), Uri.parse(uri)) ? uri : null;
+            }
+        }
+        if (phraseCache != null) {
+            phraseCache.reload();
+        }
+    }
+
+    private void releaseClips() {
+        if (clipPool == null) {
+            return;
+        }
+        clipPool.unloadAll();
+        for (int i = 0; i < pooledUris.length; i++) {
+            pooledUris[i] = null;
+        }
+    }
+
+    private void releaseTts() {
+        TextToSpeech tts = this.tts;
+        if (tts == null) {
+            return;
+        }
+        this.tts = null;
+        ttsInitialized = false;
+        tts.stop();
+        tts.shutdown();
+    }
+
     private void stopAlertSound() {
+        if (clipPool != null) {
+            clipPool.stop();
+        }
+        if (tonePlayer != null) {
+            tonePlayer.stop();
+        }
         if (tts != null) {
             tts.stop();
         }
@@ -336,6 +912,126 @@ public class BatteryService extends Service implements TextToSpeech.OnInitListen
         }
     }
 
+    private void openJournal() {
+        try {
+            journal = AlertJournal.open(new File(getFilesDir(), "alert_state.bin"));
+            // Carry the cooldown over a sticky restart so the first sample doesn't re-alert.
+            long[] lastAlertByTier = new long[AlertEngine.TIER_CRITICAL + 1];
+            for (int t = AlertEngine.TIER_NORMAL; t <= AlertEngine.TIER_CRITICAL; t++) {
+                lastAlertByTier[t] = journal.getLastAlertTime(t);
+            }
+            alertEngine.restore(lastAlertByTier, journal.getStage());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void openHistory() {
+        try {
+            history = HistoryRing.open(new File(getFilesDir(), HISTORY_FILE),
+                    HistoryRing.DEFAULT_CAPACITY, System.currentTimeMillis());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeHistory() {
+        if (history != null) {
+            history.close();
+            history = null;
+        }
+    }
+
+    private void openTelemetry() {
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        String installId = prefs.getString(KEY_TELEMETRY_INSTALL_ID, null);
+        if (installId == null) {
+            installId = UUID.randomUUID().toString();
+            prefs.edit().putString(KEY_TELEMETRY_INSTALL_ID, installId).apply();
+        }
+        try {
+            telemetryQueue = TelemetryQueue.open(new File(getFilesDir(), TELEMETRY_FILE),
+                    TelemetryQueue.DEFAULT_CAPACITY);
+            uploader = new TelemetryUploader(telemetryQueue, installId, null);
+            updateTelemetryTransport();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void updateTelemetryTransport() {
+        TelemetryUploader uploader = this.uploader;
+        if (uploader == null) {
+            return;
+        }
+        String url = telemetryUrl;
+        TelemetryUploader.Transport transport = null;
+        if (url != null && !url.trim().isEmpty()) {
+            try {
+                transport = new TelemetryUploader.HttpTransport(url.trim());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        uploader.setTransport(transport);
+    }
+
+    private void closeTelemetry() {
+        uploader = null;
+        if (telemetryQueue != null) {
+            telemetryQueue.close();
+            telemetryQueue = null;
+        }
+    }
+
+    private void openSessions() {
+        try {
+            SessionStore store = SessionStore.open(new File(getFilesDir(), SESSIONS_FILE),
+                    SessionStore.DEFAULT_CAPACITY);
+            // Pick up the session that was open when the service last stopped; a gap ends it.
+            if (store.loadOpen(sessionState)) {
+                sessionTracker.restoreState(sessionState);
+            }
+            sessions = store;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeSessions() {
+        if (sessions != null) {
+            sessions.close();
+            sessions = null;
+        }
+    }
+
+    private void releaseAudio() {
+        TextToSpeech tts = this.tts;
+        if (tts != null) {
+            tts.stop();
+            tts.shutdown();
+        }
+        if (mediaPlayer != null) {
+            mediaPlayer.release();
+            mediaPlayer = null;
+        }
+        if (clipPool != null) {
+            clipPool.release();
+            clipPool = null;
+        }
+        if (tonePlayer != null) {
+            tonePlayer.release();
+            tonePlayer = null;
+        }
+    }
+
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel serviceChannel = new NotificationChannel(
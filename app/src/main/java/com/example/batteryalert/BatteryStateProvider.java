@@ -0,0 +1,181 @@
+package com.example.batteryalert;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.BatteryManager;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Read-only access to the monitor for automation tools. Callers need
+ * {@code com.example.batteryalert.permission.READ_BATTERY_STATE}, a runtime
+ * permission the user grants to the tool:
+ * <pre>
+ * content://com.example.batteryalert.state/current
+ * content://com.example.batteryalert.state/history?from=1700000000000&amp;step=10
+ * </pre>
+ * {@code current} is one row with the latest state. {@code history} takes
+ * optional {@code from}/{@code to} times in ms and a {@code step} (every n-th
+ * record), and is served by a {@link HistoryCursor} paging from the ring file.
+ */
+public class BatteryStateProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "com.example.batteryalert.state";
+    public static final Uri CURRENT_URI = Uri.parse("content://" + AUTHORITY + "/current");
+    public static final Uri HISTORY_URI = Uri.parse("content://" + AUTHORITY + "/history");
+
+    public static final String PARAM_FROM = "from";
+    public static final String PARAM_TO = "to";
+    public static final String PARAM_STEP = "step";
+
+    static final String COLUMN_LEVEL = "level";
+    static final String COLUMN_CHARGING = "charging";
+    static final String COLUMN_TIER = "tier";
+    static final String COLUMN_ETA = "eta_ms";
+    static final String COLUMN_LAST_ALERT = "last_alert_ms";
+    static final String COLUMN_SAMPLE_TIME = "sample_time_ms";
+    static final String COLUMN_RUNNING = "running";
+    private static final String[] CURRENT_COLUMNS = {"_id", COLUMN_LEVEL, COLUMN_CHARGING, COLUMN_TIER,
+            COLUMN_ETA, COLUMN_LAST_ALERT, COLUMN_SAMPLE_TIME, COLUMN_RUNNING};
+
+    private static final int MATCH_CURRENT = 1;
+    private static final int MATCH_HISTORY = 2;
+    private static final UriMatcher MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        MATCHER.addURI(AUTHORITY, "current", MATCH_CURRENT);
+        MATCHER.addURI(AUTHORITY, "history", MATCH_HISTORY);
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        switch (MATCHER.match(uri)) {
+            case MATCH_CURRENT:
+                return queryCurrent(projection);
+            case MATCH_HISTORY:
+                return queryHistory(uri, projection);
+            default:
+                throw new IllegalArgumentException("Unknown URI " + uri);
+        }
+    }
+
+    private Cursor queryCurrent(String[] projection) {
+        long[] values = new long[CURRENT_COLUMNS.length];
+        MonitorState state = BatteryService.runningState();
+        if (state != null) {
+            values[1] = state.levelPct;
+            values[2] = state.charging ? 1 : 0;
+            values[3] = state.tier;
+            values[4] = state.predictedCrossingMs;
+            values[5] = state.lastAlertTimeMs;
+            values[6] = state.sampleTimeMs;
+            values[7] = 1;
+        } else {
+            // Not monitoring: report the sticky battery level only.
+            Intent sticky = getContext().registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            int level = sticky != null ? sticky.getIntExtra(BatteryManager.EXTRA_LEVEL, -1) : -1;
+            int scale = sticky != null ? sticky.getIntExtra(BatteryManager.EXTRA_SCALE, -1) : -1;
+            int status = sticky != null ? sticky.getIntExtra(BatteryManager.EXTRA_STATUS, -1) : -1;
+            values[1] = level >= 0 && scale > 0 ? level * 100 / scale : -1;
+            values[2] = status == AlertEngine.STATUS_CHARGING || status == AlertEngine.STATUS_FULL ? 1 : 0;
+            values[3] = AlertEngine.TIER_NONE;
+            values[4] = -1;
+            values[5] = 0;
+            values[6] = System.currentTimeMillis();
+            // Scheduled polling between foreground sessions still counts as running.
+            values[7] = StateSnapshot.get(getContext()).isRunning() ? 1 : 0;
+        }
+
+        String[] columns = projection != null ? projection : CURRENT_COLUMNS;
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int index = indexOf(CURRENT_COLUMNS, columns[i]);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown column " + columns[i]);
+            }
+            row[i] = values[index];
+        }
+        cursor.addRow(row);
+        cursor.setNotificationUri(getContext().getContentResolver(), CURRENT_URI);
+        return cursor;
+    }
+
+    private Cursor queryHistory(Uri uri, String[] projection) {
+        long from = longParam(uri, PARAM_FROM, Long.MIN_VALUE);
+        long to = longParam(uri, PARAM_TO, Long.MAX_VALUE);
+        int step = (int) Math.max(1, Math.min(Integer.MAX_VALUE, longParam(uri, PARAM_STEP, 1)));
+        HistoryRing ring = null;
+        try {
+            ring = HistoryRing.openReadOnly(new File(getContext().getFilesDir(), BatteryService.HISTORY_FILE));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (ring == null) {
+            return new HistoryCursor(null, 0, 0, 1, from, to, projection);
+        }
+        long firstSeq = from == Long.MIN_VALUE ? ring.firstSeq() : ring.seekTime(from);
+        long endSeq = to == Long.MAX_VALUE ? ring.endSeq() : ring.seekTime(to + 1);
+        return new HistoryCursor(ring, firstSeq, endSeq, step, from, to, projection);
+    }
+
+    private static long longParam(Uri uri, String name, long fallback) {
+        String value = uri.getQueryParameter(name);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+
+    private static int indexOf(String[] columns, String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        switch (MATCHER.match(uri)) {
+            case MATCH_CURRENT:
+                return "vnd.android.cursor.item/vnd." + AUTHORITY + ".current";
+            case MATCH_HISTORY:
+                return "vnd.android.cursor.dir/vnd." + AUTHORITY + ".history";
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Read-only");
+    }
+}
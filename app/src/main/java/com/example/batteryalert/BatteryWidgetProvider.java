@@ -0,0 +1,51 @@
+package com.example.batteryalert;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.widget.RemoteViews;
+
+/**
+ * Home-screen widget showing the level and monitoring status from
+ * {@link StateSnapshot}. It has no update period: the system calls
+ * {@link #onUpdate} when a widget is placed or the host restarts, and
+ * {@link StatusSurfaces} pushes changes otherwise.
+ */
+public class BatteryWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager manager, int[] appWidgetIds) {
+        manager.updateAppWidget(appWidgetIds, render(context));
+    }
+
+    /** Re-renders every placed widget; a no-op if none is. */
+    static void updateAll(Context context) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        ComponentName component = new ComponentName(context, BatteryWidgetProvider.class);
+        if (manager == null || manager.getAppWidgetIds(component).length == 0) {
+            return;
+        }
+        manager.updateAppWidget(component, render(context));
+    }
+
+    private static RemoteViews render(Context context) {
+        StateSnapshot snapshot = StateSnapshot.get(context);
+        MonitorState state = snapshot.getState();
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_battery);
+        views.setTextViewText(R.id.widgetLevel,
+                StatusSurfaces.levelText(context, StatusSurfaces.level(context, snapshot, state)));
+        views.setTextViewText(R.id.widgetStatus, StatusSurfaces.statusText(context, snapshot, state));
+
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        }
+        Intent open = new Intent(context, MainActivity.class);
+        views.setOnClickPendingIntent(R.id.widgetRoot, PendingIntent.getActivity(context, 0, open, flags));
+        return views;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.batteryalert;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Immutable, versioned copy of the user settings shared by MainActivity and
+ * BatteryService. {@link #diff} reports which fields changed so only those need
+ * to be delivered; {@link #writeTo}/{@link #readFrom} give a small versioned
+ * binary form that is cheaper to load at service start than SharedPreferences.
+ */
+public final class ConfigSnapshot {
+
+    public static final int FIELD_THRESHOLD = 1;
+    public static final int FIELD_VOLUME = 1 << 1;
+    public static final int FIELD_URGENT_OFFSET = 1 << 2;
+    public static final int FIELD_CRITICAL_OFFSET = 1 << 3;
+    public static final int FIELD_ALERT_NORMAL = 1 << 4;
+    public static final int FIELD_ALERT_URGENT = 1 << 5;
+    public static final int FIELD_ALERT_CRITICAL = 1 << 6;
+    public static final int FIELD_CUSTOM_TTS_URL = 1 << 7;
+    public static final int FIELD_URI_NORMAL = 1 << 8;
+    public static final int FIELD_URI_URGENT = 1 << 9;
+    public static final int FIELD_URI_CRITICAL = 1 << 10;
+    public static final int FIELD_CPU_BUDGET = 1 << 11;
+    public static final int FIELD_TELEMETRY_URL = 1 << 12;
+    public static final int FIELD_ALERT_RULES = 1 << 13;
+    public static final int FIELD_HIRES_TELEMETRY = 1 << 14;
+    public static final int FIELD_ALL = (1 << 15) - 1;
+
+    public static final int FIELDS_ENGINE = FIELD_THRESHOLD | FIELD_URGENT_OFFSET | FIELD_CRITICAL_OFFSET
+            | FIELD_ALERT_RULES;
+    public static final int FIELDS_PHRASES = FIELD_ALERT_NORMAL | FIELD_ALERT_URGENT | FIELD_ALERT_CRITICAL;
+    public static final int FIELDS_URIS = FIELD_URI_NORMAL | FIELD_URI_URGENT | FIELD_URI_CRITICAL;
+
+    static final int BINARY_MAGIC = 0x42434647; // "BCFG"
+    static final int BINARY_FORMAT = 5;
+
+    public final long version;
+    public final int threshold;
+    public final int volume;
+    public final int urgentOffset;
+    public final int criticalOffset;
+    public final String alertNormal, alertUrgent, alertCritical;
+    public final String customTtsUrl;
+    public final String uriNormal, uriUrgent, uriCritical;
+    public final long cpuBudgetMsPerHour;
+    public final String telemetryUrl;
+    // Extra rules in AlertRule's text form.
+    public final String alertRules;
+    public final boolean hiResTelemetry;
+
+    public ConfigSnapshot(long version, int threshold, int volume, int urgentOffset, int criticalOffset,
+                          String alertNormal, String alertUrgent, String alertCritical,
+                          String customTtsUrl, String uriNormal, String uriUrgent, String uriCritical,
+                          long cpuBudgetMsPerHour, String telemetryUrl, String alertRules,
+                          boolean hiResTelemetry) {
+        this.version = version;
+        this.threshold = threshold;
+        this.volume = volume;
+        this.urgentOffset = urgentOffset;
+        this.criticalOffset = criticalOffset;
+        this.alertNormal = alertNormal;
+        this.alertUrgent = alertUrgent;
+        this.alertCritical = alertCritical;
+        this.customTtsUrl = customTtsUrl;
+        this.uriNormal = uriNormal;
+        this.uriUrgent = uriUrgent;
+        this.uriCritical = uriCritical;
+        this.cpuBudgetMsPerHour = cpuBudgetMsPerHour;
+        this.telemetryUrl = telemetryUrl;
+        this.alertRules = alertRules;
+        this.hiResTelemetry = hiResTelemetry;
+    }
+
+    public ConfigSnapshot withVersion(long newVersion) {
+        return new ConfigSnapshot(newVersion, threshold, volume, urgentOffset, criticalOffset,
+                alertNormal, alertUrgent, alertCritical, customTtsUrl, uriNormal, uriUrgent, uriCritical,
+                cpuBudgetMsPerHour, telemetryUrl, alertRules, hiResTelemetry);
+    }
+
+    /** Bitmask of {@code FIELD_*} values that differ from {@code other}; all fields if it is null. */
+    public int diff(ConfigSnapshot other) {
+        if (other == null) {
+            return FIELD_ALL;
+        }
+        int changed = 0;
+        if (threshold != other.threshold) changed |= FIELD_THRESHOLD;
+        if (volume != other.volume) changed |= FIELD_VOLUME;
+        if (urgentOffset != other.urgentOffset) changed |= FIELD_URGENT_OFFSET;
+        if (criticalOffset != other.criticalOffset) changed |= FIELD_CRITICAL_OFFSET;
+        if (!same(alertNormal, other.alertNormal)) changed |= FIELD_ALERT_NORMAL;
+        if (!same(alertUrgent, other.alertUrgent)) changed |= FIELD_ALERT_URGENT;
+        if (!same(alertCritical, other.alertCritical)) changed |= FIELD_ALERT_CRITICAL;
+        if (!same(customTtsUrl, other.customTtsUrl)) changed |= FIELD_CUSTOM_TTS_URL;
+        if (!same(uriNormal, other.uriNormal)) changed |= FIELD_URI_NORMAL;
+        if (!same(uriUrgent, other.uriUrgent)) changed |= FIELD_URI_URGENT;
+        if (!same(uriCritical, other.uriCritical)) changed |= FIELD_URI_CRITICAL;
+        if (cpuBudgetMsPerHour != other.cpuBudgetMsPerHour) changed |= FIELD_CPU_BUDGET;
+        if (!same(telemetryUrl, other.telemetryUrl)) changed |= FIELD_TELEMETRY_URL;
+        if (!same(alertRules, other.alertRules)) changed |= FIELD_ALERT_RULES;
+        if (hiResTelemetry != other.hiResTelemetry) changed |= FIELD_HIRES_TELEMETRY;
+        return changed;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(BINARY_FORMAT);
+        out.writeLong(version);
+        out.writeInt(threshold);
+        out.writeInt(volume);
+        out.writeInt(urgentOffset);
+        out.writeInt(criticalOffset);
+        writeString(out, alertNormal);
+        writeString(out, alertUrgent);
+        writeString(out, alertCritical);
+        writeString(out, customTtsUrl);
+        writeString(out, uriNormal);
+        writeString(out, uriUrgent);
+        writeString(out, uriCritical);
+        out.writeLong(cpuBudgetMsPerHour);
+        writeString(out, telemetryUrl);
+        writeString(out, alertRules);
+        out.writeBoolean(hiResTelemetry);
+    }
+
+    /** Reads a snapshot written by {@link #writeTo}; throws if the magic or format differs. */
+    public static ConfigSnapshot readFrom(DataInput in) throws IOException {
+        if (in.readInt() != BINARY_MAGIC || in.readInt() != BINARY_FORMAT) {
+            throw new IOException("Unknown config snapshot format");
+        }
+        return new ConfigSnapshot(in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                readString(in), readString(in), readString(in), readString(in),
+                readString(in), readString(in), readString(in), in.readLong(), readString(in),
+                readString(in), in.readBoolean());
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.batteryalert;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes {@link ConfigSnapshot}s to SharedPreferences and to the
+ * Intent extras used to hand changes to BatteryService. Every save also
+ * refreshes a binary copy in {@code files/config.bin}, which the service
+ * reads at startup instead of parsing the preferences. The copy ends with a
+ * CRC32 of its contents and is replaced by rename, so a torn or partial file
+ * is rejected; a failed write deletes it rather than leave an old one behind.
+ */
+final class ConfigStore {
+
+    static final String EXTRA_VERSION = "config_version";
+
+    private static final String KEY_VERSION = "config_version";
+    private static final String KEY_URI_NORMAL = "uri_normal";
+    private static final String KEY_URI_URGENT = "uri_urgent";
+    private static final String KEY_URI_CRITICAL = "uri_critical";
+    private static final String KEY_CPU_BUDGET = "cpu_budget_ms_per_hour";
+    private static final String KEY_TELEMETRY_URL = "telemetry_url";
+    private static final String KEY_ALERT_RULES = "alert_rules";
+    private static final String KEY_HIRES_TELEMETRY = "hires_telemetry";
+    private static final String SNAPSHOT_FILE = "config.bin";
+    // Far above any real snapshot; a larger file is treated as corrupt.
+    private static final int MAX_SNAPSHOT_BYTES = 1 << 20;
+
+    private static final Executor IO = Executors.newSingleThreadExecutor();
+
+    private ConfigStore() {
+    }
+
+    static ConfigSnapshot load(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(BatteryService.PREFS_NAME, Context.MODE_PRIVATE);
+        return new ConfigSnapshot(
+                prefs.getLong(KEY_VERSION, 0),
+                prefs.getInt(BatteryService.KEY_THRESHOLD, 20),
+                prefs.getInt(BatteryService.KEY_VOLUME, 100),
+                prefs.getInt(BatteryService.KEY_URGENT_OFFSET, 5),
+                prefs.getInt(BatteryService.KEY_CRITICAL_OFFSET, 10),
+                prefs.getString(BatteryService.KEY_ALERT_NORMAL, context.getString(R.string.alert_normal)),
+                prefs.getString(BatteryService.KEY_ALERT_URGENT, context.getString(R.string.alert_urgent)),
+                prefs.getString(BatteryService.KEY_ALERT_CRITICAL, context.getString(R.string.alert_critical)),
+                prefs.getString(BatteryService.KEY_CUSTOM_TTS_URL, ""),
+                prefs.getString(KEY_URI_NORMAL, null),
+                prefs.getString(KEY_URI_URGENT, null),
+                prefs.getString(KEY_URI_CRITICAL, null),
+                prefs.getLong(KEY_CPU_BUDGET, PowerGovernor.DEFAULT_CPU_BUDGET_MS_PER_HOUR),
+                prefs.getString(KEY_TELEMETRY_URL, ""),
+                prefs.getString(KEY_ALERT_RULES, ""),
+                prefs.getBoolean(KEY_HIRES_TELEMETRY, false));
+    }
+
+    /**
+     * Loads the binary snapshot without touching SharedPreferences, falling back
+     * to them only if the snapshot is missing or fails its checksum.
+     */
+    static ConfigSnapshot loadFast(Context context) {
+        File file = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) Math.min(raf.length(), MAX_SNAPSHOT_BYTES)];
+            raf.readFully(bytes);
+            int n = bytes.length - 4;
+            if (n > 0 && raf.length() == bytes.length) {
+                CRC32 crc = new CRC32();
+                crc.update(bytes, 0, n);
+                if (ByteBuffer.wrap(bytes).getInt(n) == (int) crc.getValue()) {
+                    return ConfigSnapshot.readFrom(new DataInputStream(new ByteArrayInputStream(bytes, 0, n)));
+                }
+            }
+        } catch (IOException e) {
+            // Missing or unreadable; rebuilt below.
+        }
+        ConfigSnapshot c = load(context);
+        writeSnapshotAsync(context, c);
+        return c;
+    }
+
+    private static void writeSnapshotAsync(Context context, ConfigSnapshot c) {
+        File dir = context.getFilesDir();
+        IO.execute(() -> {
+            File file = new File(dir, SNAPSHOT_FILE);
+            File tmp = new File(dir, SNAPSHOT_FILE + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+                DataOutputStream data = new DataOutputStream(bytes);
+                c.writeTo(data);
+                CRC32 crc = new CRC32();
+                crc.update(bytes.toByteArray(), 0, bytes.size());
+                data.writeInt((int) crc.getValue());
+                bytes.writeTo(out);
+                out.getFD().sync();
+            } catch (IOException e) {
+                e.printStackTrace();
+                tmp.delete();
+                // The old snapshot no longer matches the preferences.
+                file.delete();
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                file.delete();
+            }
+        });
+    }
+
+    /** Writes the {@code changed} fields of {@code c} in a single apply(), plus the binary snapshot. */
+    static void save(Context context, ConfigSnapshot c, int changed) {
+        SharedPreferences.Editor editor = context
+                .getSharedPreferences(BatteryService.PREFS_NAME, Context.MODE_PRIVATE).edit();
+        editor.putLong(KEY_VERSION, c.version);
+        if ((changed & ConfigSnapshot.FIELD_THRESHOLD) != 0) editor.putInt(BatteryService.KEY_THRESHOLD, c.threshold);
+        if ((changed & ConfigSnapshot.FIELD_VOLUME) != 0) editor.putInt(BatteryService.KEY_VOLUME, c.volume);
+        if ((changed & ConfigSnapshot.FIELD_URGENT_OFFSET) != 0) editor.putInt(BatteryService.KEY_URGENT_OFFSET, c.urgentOffset);
+        if ((changed & ConfigSnapshot.FIELD_CRITICAL_OFFSET) != 0) editor.putInt(BatteryService.KEY_CRITICAL_OFFSET, c.criticalOffset);
+        if ((changed & ConfigSnapshot.FIELD_ALERT_NORMAL) != 0) editor.putString(BatteryService.KEY_ALERT_NORMAL, c.alertNormal);
+        if ((changed & ConfigSnapshot.FIELD_ALERT_URGENT) != 0) editor.putString(BatteryService.KEY_ALERT_URGENT, c.alertUrgent);
+        if ((changed & ConfigSnapshot.FIELD_ALERT_CRITICAL) != 0) editor.putString(BatteryService.KEY_ALERT_CRITICAL, c.alertCritical);
+        if ((changed & ConfigSnapshot.FIELD_CUSTOM_TTS_URL) != 0) editor.putString(BatteryService.KEY_CUSTOM_TTS_URL, c.customTtsUrl);
+        if ((changed & ConfigSnapshot.FIELD_URI_NORMAL) != 0) editor.putString(KEY_URI_NORMAL, c.uriNormal);
+        if ((changed & ConfigSnapshot.FIELD_URI_URGENT) != 0) editor.putString(KEY_URI_URGENT, c.uriUrgent);
+        if ((changed & ConfigSnapshot.FIELD_URI_CRITICAL) != 0) editor.putString(KEY_URI_CRITICAL, c.uriCritical);
+        if ((changed & ConfigSnapshot.FIELD_CPU_BUDGET) != 0) editor.putLong(KEY_CPU_BUDGET, c.cpuBudgetMsPerHour);
+        if ((changed & ConfigSnapshot.FIELD_TELEMETRY_URL) != 0) editor.putString(KEY_TELEMETRY_URL, c.telemetryUrl);
+        if ((changed & ConfigSnapshot.FIELD_ALERT_RULES) != 0) editor.putString(KEY_ALERT_RULES, c.alertRules);
+        if ((changed & ConfigSnapshot.FIELD_HIRES_TELEMETRY) != 0) editor.putBoolean(KEY_HIRES_TELEMETRY, c.hiResTelemetry);
+        editor.apply();
+        writeSnapshotAsync(context, c);
+    }
+
+    /** Puts the version and the {@code changed} fields of {@code c} into {@code intent}. */
+    static void putExtras(Intent intent, ConfigSnapshot c, int changed) {
+        intent.putExtra(EXTRA_VERSION, c.version);
+        if ((changed & ConfigSnapshot.FIELD_THRESHOLD) != 0) intent.putExtra("threshold", c.threshold);
+        if ((changed & ConfigSnapshot.FIELD_VOLUME) != 0) intent.putExtra("volume", c.volume);
+        if ((changed & ConfigSnapshot.FIELD_URGENT_OFFSET) != 0) intent.putExtra("urgent_offset", c.urgentOffset);
+        if ((changed & ConfigSnapshot.FIELD_CRITICAL_OFFSET) != 0) intent.putExtra("critical_offset", c.criticalOffset);
+        if ((changed & ConfigSnapshot.FIELD_ALERT_NORMAL) != 0) intent.putExtra("alert_normal", c.alertNormal);
+        if ((changed & ConfigSnapshot.FIELD_ALERT_URGENT) != 0) intent.putExtra("alert_urgent", c.alertUrgent);
+        if ((changed & ConfigSnapshot.FIELD_ALERT_CRITICAL) != 0) intent.putExtra("alert_critical", c.alertCritical);
+        if ((changed & ConfigSnapshot.FIELD_CUSTOM_TTS_URL) != 0) intent.putExtra(BatteryService.KEY_CUSTOM_TTS_URL, c.customTtsUrl);
+        if ((changed & ConfigSnapshot.FIELD_URI_NORMAL) != 0) intent.putExtra("uri_normal", c.uriNormal);
+        if ((changed & ConfigSnapshot.FIELD_URI_URGENT) != 0) intent.putExtra("uri_urgent", c.uriUrgent);
+        if ((changed & ConfigSnapshot.FIELD_URI_CRITICAL) != 0) intent.putExtra("uri_critical", c.uriCritical);
+        if ((changed & ConfigSnapshot.FIELD_CPU_BUDGET) != 0) intent.putExtra(KEY_CPU_BUDGET, c.cpuBudgetMsPerHour);
+        if ((changed & ConfigSnapshot.FIELD_TELEMETRY_URL) != 0) intent.putExtra(KEY_TELEMETRY_URL, c.telemetryUrl);
+        if ((changed & ConfigSnapshot.FIELD_ALERT_RULES) != 0) intent.putExtra(KEY_ALERT_RULES, c.alertRules);
+        if ((changed & ConfigSnapshot.FIELD_HIRES_TELEMETRY) != 0) intent.putExtra(KEY_HIRES_TELEMETRY, c.hiResTelemetry);
+    }
+
+    /** Returns {@code base} with any fields present in {@code intent} replaced. */
+    static ConfigSnapshot fromExtras(Intent intent, ConfigSnapshot base) {
+        return new ConfigSnapshot(
+                intent.getLongExtra(EXTRA_VERSION, base.version),
+                intent.getIntExtra("threshold", base.threshold),
+                intent.getIntExtra("volume", base.volume),
+                intent.getIntExtra("urgent_offset", base.urgentOffset),
+                intent.getIntExtra("critical_offset", base.criticalOffset),
+                intent.hasExtra("alert_normal") ? intent.getStringExtra("alert_normal") : base.alertNormal,
+                intent.hasExtra("alert_urgent") ? intent.getStringExtra("alert_urgent") : base.alertUrgent,
+                intent.hasExtra("alert_critical") ? intent.getStringExtra("alert_critical") : base.alertCritical,
+                intent.hasExtra(BatteryService.KEY_CUSTOM_TTS_URL)
+                        ? intent.getStringExtra(BatteryService.KEY_CUSTOM_TTS_URL) : base.customTtsUrl,
+                intent.hasExtra("uri_normal") ? intent.getStringExtra("uri_normal") : base.uriNormal,
+                intent.hasExtra("uri_urgent") ? intent.getStringExtra("uri_urgent") : base.uriUrgent,
+                intent.hasExtra("uri_critical") ? intent.getStringExtra("uri_critical") : base.uriCritical,
+                intent.getLongExtra(KEY_CPU_BUDGET, base.cpuBudgetMsPerHour),
+                intent.hasExtra(KEY_TELEMETRY_URL) ? intent.getStringExtra(KEY_TELEMETRY_URL) : base.telemetryUrl,
+                intent.hasExtra(KEY_ALERT_RULES) ? intent.getStringExtra(KEY_ALERT_RULES) : base.alertRules,
+                intent.getBooleanExtra(KEY_HIRES_TELEMETRY, base.hiResTelemetry));
+    }
+}
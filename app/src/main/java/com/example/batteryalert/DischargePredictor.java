@@ -0,0 +1,68 @@
+package com.example.batteryalert;
+
+/**
+ * Incremental estimate of the discharge rate from successive samples, used to
+ * predict when a given level will be reached. Each sample updates an
+ * exponentially weighted moving average of the slope in O(1) with no
+ * allocation. Charging resets the estimate. Not thread-safe.
+ */
+public final class DischargePredictor {
+
+    // Weight of the newest slope; about the last five level steps dominate.
+    private static final double ALPHA = 0.3;
+    private static final double MS_PER_HOUR = 3600000.0;
+
+    private long lastTimeMs;
+    private double lastLevel;
+    private boolean hasLast = false;
+    private double ratePerMs = 0;
+    private int slopes = 0;
+
+    public void onSample(long timeMs, double levelPct, boolean charging) {
+        if (charging) {
+            reset();
+            return;
+        }
+        if (hasLast && timeMs > lastTimeMs && levelPct != lastLevel) {
+            double slope = (lastLevel - levelPct) / (timeMs - lastTimeMs);
+            ratePerMs = slopes == 0 ? slope : ratePerMs + ALPHA * (slope - ratePerMs);
+            slopes++;
+        }
+        if (!hasLast || levelPct != lastLevel) {
+            lastTimeMs = timeMs;
+            lastLevel = levelPct;
+            hasLast = true;
+        }
+    }
+
+    public void reset() {
+        hasLast = false;
+        ratePerMs = 0;
+        slopes = 0;
+    }
+
+    public boolean isValid() {
+        return slopes > 0 && ratePerMs > 0;
+    }
+
+    /** Discharge rate in percent per hour; positive while discharging. */
+    public double getRatePerHour() {
+        return ratePerMs * MS_PER_HOUR;
+    }
+
+    /**
+     * Predicted absolute time at which the level reaches {@code targetPct}, or -1
+     * if there is no discharge estimate yet. Returns the time of the last level
+     * change if the level is already at or below the target.
+     */
+    public long predictCrossing(int targetPct) {
+        if (!isValid()) {
+            return -1;
+        }
+        double remaining = lastLevel - targetPct;
+        if (remaining <= 0) {
+            return lastTimeMs;
+        }
+        return lastTimeMs + (long) (remaining / ratePerMs);
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.batteryalert;
+
+/**
+ * Column-wise codec for high-resolution battery samples in fixed-size blocks.
+ *
+ * <p>An encoded block is {@link #BLOCK_SIZE} bytes: the row count and the byte
+ * length of each column (little-endian shorts), then the columns one after
+ * another, zero-padded. Each value is the zigzag varint of its difference from
+ * the previous row's, the first row's from 0. Slowly moving readings such as
+ * voltage, temperature and the charge counter mostly take a byte or two per
+ * row, and one column can be decoded without touching the others. Time is
+ * kept in whole seconds, as in {@link HistoryRing}; polls are seconds apart.
+ *
+ * <p>Rows are buffered by {@link #add}, which keeps the encoded size exact so a
+ * block is filled as far as it goes, and only {@link #encode} writes bytes.
+ * Not thread-safe.
+ */
+public final class HiResBlock {
+
+    public interface Visitor {
+        void onRow(long timeMs, int level, int currentUa, int voltageMv, int temperature, int chargeCounterUah);
+    }
+
+    public static final int BLOCK_SIZE = 4096;
+
+    public static final int COL_TIME = 0;
+    public static final int COL_LEVEL = 1;
+    public static final int COL_CURRENT = 2;
+    public static final int COL_VOLTAGE = 3;
+    public static final int COL_TEMPERATURE = 4;
+    public static final int COL_CHARGE_COUNTER = 5;
+    public static final int COLUMNS = 6;
+
+    static final int HEADER_SIZE = 2 + 2 * COLUMNS;
+    // Every value takes at least one byte.
+    static final int MAX_ROWS = (BLOCK_SIZE - HEADER_SIZE) / COLUMNS;
+
+    private final long[][] values = new long[COLUMNS][MAX_ROWS];
+    private final int[] columnBytes = new int[COLUMNS];
+    private final long[] row = new long[COLUMNS];
+    private final int[] rowBytes = new int[COLUMNS];
+    private int rows;
+    private int size = HEADER_SIZE;
+
+    /** Adds a row if it fits; returns false when the block is full and must be encoded first. */
+    public boolean add(long timeMs, int level, int currentUa, int voltageMv, int temperature,
+                       int chargeCounterUah) {
+        row[COL_TIME] = timeMs / 1000;
+        row[COL_LEVEL] = level;
+        row[COL_CURRENT] = currentUa;
+        row[COL_VOLTAGE] = voltageMv;
+        row[COL_TEMPERATURE] = temperature;
+        row[COL_CHARGE_COUNTER] = chargeCounterUah;
+        int added = 0;
+        for (int c = 0; c < COLUMNS; c++) {
+            rowBytes[c] = varintSize(HistoryExporter.zigzag(row[c] - (rows > 0 ? values[c][rows - 1] : 0)));
+            added += rowBytes[c];
+        }
+        if (size + added > BLOCK_SIZE) {
+            return false;
+        }
+        for (int c = 0; c < COLUMNS; c++) {
+            columnBytes[c] += rowBytes[c];
+            values[c][rows] = row[c];
+        }
+        rows++;
+        size += added;
+        return true;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /** Bytes the buffered rows take once encoded, header included. */
+    public int encodedSize() {
+        return size;
+    }
+
+    /** Time of the first buffered row; only valid if {@link #rows()} is positive. */
+    public long firstTimeMs() {
+        return values[COL_TIME][0] * 1000;
+    }
+
+    /** Encodes the buffered rows into {@code out} at {@code offset}, {@link #BLOCK_SIZE} bytes, and clears them. */
+    public void encode(byte[] out, int offset) {
+        encodeCopy(out, offset);
+        clear();
+    }
+
+    /** As {@link #encode}, but keeps the rows buffered so more can be added. */
+    public void encodeCopy(byte[] out, int offset) {
+        putShort(out, offset, rows);
+        for (int c = 0; c < COLUMNS; c++) {
+            putShort(out, offset + 2 + 2 * c, columnBytes[c]);
+        }
+        int pos = offset + HEADER_SIZE;
+        for (int c = 0; c < COLUMNS; c++) {
+            long[] column = values[c];
+            long prev = 0;
+            for (int i = 0; i < rows; i++) {
+                long v = HistoryExporter.zigzag(column[i] - prev);
+                prev = column[i];
+                while ((v & ~0x7FL) != 0) {
+                    out[pos++] = (byte) ((v & 0x7F) | 0x80);
+                    v >>>= 7;
+                }
+                out[pos++] = (byte) v;
+            }
+        }
+        for (int end = offset + BLOCK_SIZE; pos < end; pos++) {
+            out[pos] = 0;
+        }
+    }
+
+    public void clear() {
+        rows = 0;
+        size = HEADER_SIZE;
+        for (int c = 0; c < COLUMNS; c++) {
+            columnBytes[c] = 0;
+        }
+    }
+
+    /** Row count of the encoded block at {@code offset}. */
+    public static int rowCount(byte[] block, int offset) {
+        return getShort(block, offset);
+    }
+
+    /**
+     * Decodes one column of the encoded block at {@code offset} into {@code out},
+     * which must hold {@link #rowCount} values, skipping the other columns. The
+     * time column comes out in seconds. Returns the row count.
+     */
+    public static int decodeColumn(byte[] block, int offset, int column, long[] out) {
+        int rows = getShort(block, offset);
+        int pos = offset + HEADER_SIZE;
+        for (int c = 0; c < column; c++) {
+            pos += getShort(block, offset + 2 + 2 * c);
+        }
+        long prev = 0;
+        for (int i = 0; i < rows; i++) {
+            long raw = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = block[pos++];
+                raw |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            prev += (raw >>> 1) ^ -(raw & 1);
+            out[i] = prev;
+        }
+        return rows;
+    }
+
+    /** Decodes every row of the encoded block at {@code offset}, using {@code scratch} for the columns. */
+    public static int decode(byte[] block, int offset, long[][] scratch, Visitor visitor) {
+        int rows = 0;
+        for (int c = 0; c < COLUMNS; c++) {
+            rows = decodeColumn(block, offset, c, scratch[c]);
+        }
+        for (int i = 0; i < rows; i++) {
+            visitor.onRow(scratch[COL_TIME][i] * 1000, (int) scratch[COL_LEVEL][i], (int) scratch[COL_CURRENT][i],
+                    (int) scratch[COL_VOLTAGE][i], (int) scratch[COL_TEMPERATURE][i],
+                    (int) scratch[COL_CHARGE_COUNTER][i]);
+        }
+        return rows;
+    }
+
+    /** Scratch space for {@link #decode}. */
+    public static long[][] newScratch() {
+        return new long[COLUMNS][MAX_ROWS];
+    }
+
+    static int varintSize(long v) {
+        int n = 1;
+        while ((v & ~0x7FL) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    private static void putShort(byte[] b, int off, int v) {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >>> 8);
+    }
+
+    private static int getShort(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.batteryalert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Ring of {@link HiResBlock}s in a memory-mapped file. Rows are buffered in
+ * memory and a block is written in one go when it fills, so each 4 KiB page is
+ * dirtied once per block rather than once per sample. Rows still buffered
+ * {@link #MAX_PENDING_MS} after the first of them are checkpointed: the open
+ * block is written to the slot it will fill, without advancing {@code count},
+ * and {@link #open} adopts it if the process died without {@link #close}. So
+ * at most that much is lost, and blocks still fill before the ring moves on.
+ *
+ * <p>Layout: a header page ({@code magic, version, blockSize, capacity,
+ * count, checkpoint}) followed by {@code capacity} blocks. As in
+ * {@link HistoryRing}, a block is written before {@code count} is advanced;
+ * {@code checkpoint} equals {@code count} while the next slot holds a
+ * checkpoint, and that slot's previous block no longer counts. One thread
+ * appends; any thread may read.
+ */
+public final class HiResLog implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final long MAX_PENDING_MS = 3600000;
+
+    static final int MAGIC = 0x42485242; // "BHRB"
+    static final short VERSION = 2;
+    // A whole block, so every data block stays page-aligned.
+    static final int HEADER_SIZE = HiResBlock.BLOCK_SIZE;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_BLOCK_SIZE = 6;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_COUNT = 16;
+    private static final int OFF_CHECKPOINT = 24;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private volatile long count;
+    private volatile long checkpoint;
+    private final HiResBlock pending = new HiResBlock();
+    private final byte[] encoded = new byte[HiResBlock.BLOCK_SIZE];
+    private volatile long rowsWritten;
+    // Time of the oldest buffered row not yet checkpointed, -1 if none.
+    private long unsavedSinceMs = -1;
+
+    private HiResLog(MappedByteBuffer buffer, int capacity, long count, long checkpoint) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.count = count;
+        this.checkpoint = checkpoint;
+    }
+
+    /** Opens the log at {@code file}, creating or resetting it if the header doesn't match. */
+    public static HiResLog open(File file, int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * HiResBlock.BLOCK_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() != size;
+            if (fresh) {
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (!fresh && isValid(buf) && buf.getInt(OFF_CAPACITY) == capacity) {
+                long count = buf.getLong(OFF_COUNT);
+                if (buf.getLong(OFF_CHECKPOINT) == count) {
+                    // Died with a checkpointed block open; keep it as it stands.
+                    count++;
+                    buf.putLong(OFF_COUNT, count);
+                }
+                return new HiResLog(buf, capacity, count, -1);
+            }
+            buf.putLong(OFF_CHECKPOINT, -1);
+            buf.putLong(OFF_COUNT, 0);
+            buf.putInt(OFF_CAPACITY, capacity);
+            buf.putShort(OFF_BLOCK_SIZE, (short) HiResBlock.BLOCK_SIZE);
+            buf.putShort(OFF_VERSION, VERSION);
+            buf.putInt(OFF_MAGIC, MAGIC);
+            return new HiResLog(buf, capacity, 0, -1);
+        }
+    }
+
+    /** Maps an existing log read-only. Returns null if the file is missing or not a log. */
+    public static HiResLog openReadOnly(File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            int capacity = buf.getInt(OFF_CAPACITY);
+            if (!isValid(buf) || capacity <= 0
+                    || raf.length() != HEADER_SIZE + (long) capacity * HiResBlock.BLOCK_SIZE) {
+                return null;
+            }
+            return new HiResLog(buf, capacity, buf.getLong(OFF_COUNT), buf.getLong(OFF_CHECKPOINT));
+        }
+    }
+
+    private static boolean isValid(MappedByteBuffer buf) {
+        return buf.getInt(OFF_MAGIC) == MAGIC
+                && buf.getShort(OFF_VERSION) == VERSION
+                && buf.getShort(OFF_BLOCK_SIZE) == HiResBlock.BLOCK_SIZE
+                && buf.getLong(OFF_COUNT) >= 0;
+    }
+
+    public void append(long timeMs, int level, int currentUa, int voltageMv, int temperature,
+                       int chargeCounterUah) {
+        if (!pending.add(timeMs, level, currentUa, voltageMv, temperature, chargeCounterUah)) {
+            flush();
+            pending.add(timeMs, level, currentUa, voltageMv, temperature, chargeCounterUah);
+        }
+        rowsWritten++;
+        if (unsavedSinceMs < 0) {
+            unsavedSinceMs = timeMs;
+        } else if (timeMs - unsavedSinceMs >= MAX_PENDING_MS) {
+            checkpoint();
+        }
+    }
+
+    /** Writes the buffered rows to the slot they will fill, so a crash can't lose them. */
+    public void checkpoint() {
+        if (pending.rows() == 0) {
+            return;
+        }
+        long seq = count;
+        // Retire the slot's old block before overwriting it.
+        buffer.putLong(OFF_CHECKPOINT, seq);
+        checkpoint = seq;
+        pending.encodeCopy(encoded, 0);
+        writeSlot(seq);
+        unsavedSinceMs = -1;
+    }
+
+    /** Writes the buffered rows as a block, even if it isn't full. */
+    public void flush() {
+        if (pending.rows() == 0) {
+            return;
+        }
+        long seq = count;
+        pending.encode(encoded, 0);
+        writeSlot(seq);
+        buffer.putLong(OFF_COUNT, seq + 1);
+        count = seq + 1;
+        unsavedSinceMs = -1;
+    }
+
+    private void writeSlot(long seq) {
+        buffer.position(HEADER_SIZE + (int) (seq % capacity) * HiResBlock.BLOCK_SIZE);
+        buffer.put(encoded);
+    }
+
+    public long firstSeq() {
+        long end = checkpoint == count ? count + 1 : count;
+        return Math.max(0, end - capacity);
+    }
+
+    public long endSeq() {
+        return count;
+    }
+
+    /** Copies block {@code seq}, which must be in {@code [firstSeq(), endSeq())}, into {@code out}. */
+    public void readBlock(long seq, byte[] out) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(HEADER_SIZE + (int) (seq % capacity) * HiResBlock.BLOCK_SIZE);
+        view.get(out, 0, HiResBlock.BLOCK_SIZE);
+    }
+
+    /** Rows appended through this instance, including ones not yet written. */
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() {
+        if (!buffer.isReadOnly()) {
+            flush();
+            buffer.force();
+        }
+    }
+}
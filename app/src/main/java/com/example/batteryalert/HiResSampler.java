@@ -0,0 +1,103 @@
+package com.example.batteryalert;
+
+import java.io.PrintWriter;
+
+/**
+ * Sampling interval and health counters for high-resolution telemetry. The
+ * interval halves, down to {@link #MIN_INTERVAL_MS}, when current or
+ * temperature moved noticeably since the last poll or while the battery is
+ * hot; otherwise it grows by half, up to {@link #MAX_INTERVAL_MS}. Steady
+ * idle periods cost a poll every two minutes, while a heating or
+ * fast-draining phone is recorded every few seconds.
+ *
+ * <p>Also accumulates time spent hot and time draining faster than
+ * {@link #HIGH_DRAIN_UA}. One thread calls {@link #onSample}; the counters may
+ * be read from any thread.
+ */
+public final class HiResSampler {
+
+    public static final long MIN_INTERVAL_MS = 5000;
+    public static final long MAX_INTERVAL_MS = 120000;
+    static final long INITIAL_INTERVAL_MS = 30000;
+
+    static final int CURRENT_STEP_UA = 100000;
+    // Tenths of a degree, as in BatteryManager.EXTRA_TEMPERATURE.
+    static final int TEMPERATURE_STEP = 5;
+    public static final int HOT_TEMPERATURE = 450;
+    public static final int HIGH_DRAIN_UA = 1000000;
+
+    private long intervalMs = INITIAL_INTERVAL_MS;
+    private long lastMs = -1;
+    private int lastCurrent;
+    private int lastTemperature;
+    private boolean lastHot;
+    private boolean lastDraining;
+    private volatile long samples;
+    private volatile long hotMs;
+    private volatile long highDrainMs;
+    private volatile int maxTemperature = Integer.MIN_VALUE;
+    private volatile int peakDrainUa;
+
+    /**
+     * Records one poll and returns the delay until the next. Discharge current
+     * is negative by the BatteryManager convention; either sign is accepted.
+     */
+    public long onSample(long timeMs, int currentUa, int temperature, boolean charging) {
+        int drain = charging || currentUa == Integer.MIN_VALUE ? 0 : Math.abs(currentUa);
+        boolean hot = temperature >= HOT_TEMPERATURE;
+        boolean draining = drain >= HIGH_DRAIN_UA;
+        if (lastMs >= 0) {
+            long dt = timeMs - lastMs;
+            if (lastHot) {
+                hotMs += dt;
+            }
+            if (lastDraining) {
+                highDrainMs += dt;
+            }
+        }
+        boolean moved = lastMs < 0
+                || Math.abs((long) currentUa - lastCurrent) >= CURRENT_STEP_UA
+                || Math.abs(temperature - lastTemperature) >= TEMPERATURE_STEP;
+        if (moved || hot || draining) {
+            intervalMs = Math.max(MIN_INTERVAL_MS, intervalMs / 2);
+        } else {
+            intervalMs = Math.min(MAX_INTERVAL_MS, intervalMs + intervalMs / 2);
+        }
+        lastMs = timeMs;
+        lastCurrent = currentUa;
+        lastTemperature = temperature;
+        lastHot = hot;
+        lastDraining = draining;
+        samples++;
+        maxTemperature = Math.max(maxTemperature, temperature);
+        peakDrainUa = Math.max(peakDrainUa, drain);
+        return intervalMs;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public long getHotMs() {
+        return hotMs;
+    }
+
+    public long getHighDrainMs() {
+        return highDrainMs;
+    }
+
+    public void dump(PrintWriter pw) {
+        pw.print("  hires_samples: ");
+        pw.println(samples);
+        pw.print("  hires_interval_ms: ");
+        pw.println(intervalMs);
+        pw.print("  hires_max_temperature: ");
+        pw.println(maxTemperature == Integer.MIN_VALUE ? "-" : String.valueOf(maxTemperature / 10.0));
+        pw.print("  hires_hot_ms: ");
+        pw.println(hotMs);
+        pw.print("  hires_peak_drain_ma: ");
+        pw.println(peakDrainUa / 1000);
+        pw.print("  hires_high_drain_ms: ");
+        pw.println(highDrainMs);
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.batteryalert;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Battery level history from a {@link HistoryRing}, with the threshold, urgent
+ * and critical limits and the recorded alerts overlaid. Drag to pan, pinch to
+ * zoom, double-tap to return to the last 24 hours.
+ *
+ * <p>Records are copied into primitive arrays on a loader thread, only reading
+ * what was appended since the last load. For every viewport change the loader
+ * downsamples the visible range to one point per pixel with {@link Lttb} into
+ * the back of two preallocated frames and swaps them. {@link #onDraw} maps the
+ * front frame to the current viewport, so a pan shows immediately while the next
+ * frame is computed, and draws it with a reused Path without allocating.
+ */
+public class HistoryChartView extends View {
+
+    private static final long MIN_SPAN_MS = 10 * 60000;
+    private static final long DEFAULT_SPAN_MS = 24 * 3600000L;
+    private static final int MAX_MARKERS = 256;
+
+    /** One downsampled viewport; x values are milliseconds since {@code origin}. */
+    private static final class Frame {
+        long origin;
+        float[] x = new float[0];
+        float[] y = new float[0];
+        int count;
+        final float[] markerX = new float[MAX_MARKERS];
+        final float[] markerY = new float[MAX_MARKERS];
+        final byte[] markerTier = new byte[MAX_MARKERS];
+        int markerCount;
+    }
+
+    private final Object lock = new Object();
+    private Frame front = new Frame();
+    private Frame back = new Frame();
+    // Viewport requested by the UI thread, guarded by lock.
+    private long requestedStart, requestedEnd;
+    private int requestedWidth;
+
+    // Loader thread only.
+    private HandlerThread loaderThread;
+    private Handler loader;
+    private volatile HistoryRing source;
+    private volatile File sourceFile;
+    private HistoryRing loadedRing;
+    private long loadedEndSeq;
+    private long[] times = new long[1024];
+    private byte[] levels = new byte[1024];
+    private byte[] tiers = new byte[1024];
+    private int size;
+    private final HistoryRing.Visitor appender = this::append;
+    private final Runnable load = this::load;
+    private final Runnable computeFrame = this::computeFrame;
+    private final Runnable onDataLoaded = this::onDataLoaded;
+
+    private volatile long dataStartMs = -1, dataEndMs = -1;
+
+    // UI thread only.
+    private long viewStartMs, viewEndMs;
+    private boolean followLive = true;
+    private int threshold = 20, urgentOffset = 5, criticalOffset = 10;
+
+    private final Path path = new Path();
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint gridPaint = new Paint();
+    private final Paint thresholdPaint = new Paint();
+    private final Paint urgentPaint = new Paint();
+    private final Paint criticalPaint = new Paint();
+    private final Paint[] markerPaints = new Paint[AlertEngine.TIER_CRITICAL + 1];
+    private final float markerRadius;
+
+    private final GestureDetector gestures;
+    private final ScaleGestureDetector scaleGestures;
+
+    public HistoryChartView(Context context) {
+        this(context, null);
+    }
+
+    public HistoryChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        linePaint.setStyle(Paint.Style.STROKE);
+        linePaint.setStrokeWidth(2 * density);
+        linePaint.setStrokeJoin(Paint.Join.ROUND);
+        linePaint.setColor(Color.parseColor("#1976D2"));
+        gridPaint.setColor(Color.parseColor("#DDDDDD"));
+        gridPaint.setStrokeWidth(density);
+        thresholdPaint.setColor(Color.parseColor("#FFA000"));
+        thresholdPaint.setStrokeWidth(density);
+        urgentPaint.setColor(Color.parseColor("#F57C00"));
+        urgentPaint.setStrokeWidth(density);
+        criticalPaint.setColor(Color.parseColor("#D32F2F"));
+        criticalPaint.setStrokeWidth(density);
+        markerPaints[AlertEngine.TIER_NONE] = gridPaint;
+        markerPaints[AlertEngine.TIER_NORMAL] = markerPaint(thresholdPaint);
+        markerPaints[AlertEngine.TIER_URGENT] = markerPaint(urgentPaint);
+        markerPaints[AlertEngine.TIER_CRITICAL] = markerPaint(criticalPaint);
+        markerRadius = 3 * density;
+
+        long now = System.currentTimeMillis();
+        viewEndMs = now;
+        viewStartMs = now - DEFAULT_SPAN_MS;
+
+        gestures = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float dx, float dy) {
+                if (Math.abs(dx) > Math.abs(dy)) {
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                long shift = (long) (dx / Math.max(1, contentWidth()) * (viewEndMs - viewStartMs));
+                setViewport(viewStartMs + shift, viewEndMs + shift);
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                long end = dataEndMs >= 0 ? dataEndMs : System.currentTimeMillis();
+                setViewport(end - DEFAULT_SPAN_MS, end);
+                return true;
+            }
+        });
+        scaleGestures = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                getParent().requestDisallowInterceptTouchEvent(true);
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                long span = viewEndMs - viewStartMs;
+                long newSpan = (long) (span / Math.max(0.01f, detector.getScaleFactor()));
+                float focus = (detector.getFocusX() - getPaddingLeft()) / Math.max(1, contentWidth());
+                long anchor = viewStartMs + (long) (focus * span);
+                long start = anchor - (long) (focus * newSpan);
+                setViewport(start, start + newSpan);
+                return true;
+            }
+        });
+    }
+
+    private static Paint markerPaint(Paint base) {
+        Paint p = new Paint(Paint.ANTI_ALIAS_FLAG);
+        p.setColor(base.getColor());
+        p.setStyle(Paint.Style.FILL);
+        return p;
+    }
+
+    /** Charts {@code ring}; calling it again with the same ring picks up newly appended records. */
+    public void setSource(HistoryRing ring) {
+        if (ring == null) {
+            return;
+        }
+        source = ring;
+        sourceFile = null;
+        postLoad();
+    }
+
+    /** Charts a ring file read-only, for when the service that writes it is not running. */
+    public void setSourceFile(File file) {
+        source = null;
+        sourceFile = file;
+        postLoad();
+    }
+
+    public void setLimits(int threshold, int urgentOffset, int criticalOffset) {
+        this.threshold = threshold;
+        this.urgentOffset = urgentOffset;
+        this.criticalOffset = criticalOffset;
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        loaderThread = new HandlerThread("HistoryChart", Process.THREAD_PRIORITY_BACKGROUND);
+        loaderThread.start();
+        loader = new Handler(loaderThread.getLooper());
+        postLoad();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        loader.removeCallbacksAndMessages(null);
+        loaderThread.quitSafely();
+        loader = null;
+        loaderThread = null;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        requestFrame();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleGestures.onTouchEvent(event);
+        handled |= gestures.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    private int contentWidth() {
+        return getWidth() - getPaddingLeft() - getPaddingRight();
+    }
+
+    private void setViewport(long start, long end) {
+        long span = Math.max(MIN_SPAN_MS, end - start);
+        long dataStart = dataStartMs, dataEnd = dataEndMs;
+        if (dataEnd >= 0) {
+            span = Math.min(span, Math.max(MIN_SPAN_MS, dataEnd - dataStart));
+            start = Math.max(dataStart, Math.min(start, dataEnd - span));
+        }
+        viewStartMs = start;
+        viewEndMs = start + span;
+        followLive = dataEnd < 0 || viewEndMs >= dataEnd;
+        invalidate();
+        requestFrame();
+    }
+
+    private void requestFrame() {
+        synchronized (lock) {
+            requestedStart = viewStartMs;
+            requestedEnd = viewEndMs;
+            requestedWidth = contentWidth();
+        }
+        Handler h = loader;
+        if (h != null) {
+            h.removeCallbacks(computeFrame);
+            h.post(computeFrame);
+        }
+    }
+
+    private void postLoad() {
+        Handler h = loader;
+        if (h != null) {
+            h.removeCallbacks(load);
+            h.post(load);
+        }
+    }
+
+    // Loader thread.
+    private void load() {
+        HistoryRing ring = source;
+        File file = sourceFile;
+        if (ring == null && file != null) {
+            try {
+                ring = HistoryRing.openReadOnly(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            sourceFile = null;
+            source = ring;
+        }
+        if (ring == null) {
+            return;
+        }
+        if (ring != loadedRing) {
+            loadedRing = ring;
+            loadedEndSeq = 0;
+            size = 0;
+        }
+        long first = ring.firstSeq();
+        long dropped = first - (loadedEndSeq - size);
+        if (dropped > 0) {
+            int drop = (int) Math.min(size, dropped);
+            System.arraycopy(times, drop, times, 0, size - drop);
+            System.arraycopy(levels, drop, levels, 0, size - drop);
+            System.arraycopy(tiers, drop, tiers, 0, size - drop);
+            size -= drop;
+        }
+        long end = ring.endSeq();
+        ring.read(Math.max(loadedEndSeq, first), end, appender);
+        loadedEndSeq = Math.max(loadedEndSeq, end);
+        if (size > 0) {
+            dataStartMs = times[0];
+            dataEndMs = times[size - 1];
+        }
+        post(onDataLoaded);
+    }
+
+    // Loader thread.
+    private void append(long seq, long timeMs, int level, int status, int plugged,
+                        int alertTier, int temperature, int voltage) {
+        if (size == times.length) {
+            int n = size * 2;
+            times = Arrays.copyOf(times, n);
+            levels = Arrays.copyOf(levels, n);
+            tiers = Arrays.copyOf(tiers, n);
+        }
+        // Keep times sorted for the range search even if the wall clock stepped back.
+        times[size] = size > 0 ? Math.max(timeMs, times[size - 1]) : timeMs;
+        levels[size] = (byte) level;
+        tiers[size] = (byte) alertTier;
+        size++;
+    }
+
+    private void onDataLoaded() {
+        if (followLive && dataEndMs >= 0) {
+            long span = viewEndMs - viewStartMs;
+            setViewport(dataEndMs - span, dataEndMs);
+        } else {
+            requestFrame();
+        }
+    }
+
+    // Loader thread.
+    private void computeFrame() {
+        long start, end;
+        int width;
+        synchronized (lock) {
+            start = requestedStart;
+            end = requestedEnd;
+            width = requestedWidth;
+        }
+        if (width <= 0) {
+            return;
+        }
+        Frame f = back;
+        if (f.x.length < width) {
+            f.x = new float[width];
+            f.y = new float[width];
+        }
+        // One point past each edge so the line runs to the border.
+        int from = Math.max(0, lowerBound(start) - 1);
+        int to = Math.min(size, lowerBound(end + 1) + 1);
+        f.origin = start;
+        f.count = Lttb.downsample(times, levels, from, to, width, start, f.x, f.y);
+        f.markerCount = 0;
+        for (int i = from; i < to && f.markerCount < MAX_MARKERS; i++) {
+            if (tiers[i] != AlertEngine.TIER_NONE) {
+                f.markerX[f.markerCount] = times[i] - start;
+                f.markerY[f.markerCount] = levels[i];
+                f.markerTier[f.markerCount] = tiers[i];
+                f.markerCount++;
+            }
+        }
+        synchronized (lock) {
+            back = front;
+            front = f;
+        }
+        postInvalidateOnAnimation();
+    }
+
+    private int lowerBound(long timeMs) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < timeMs) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float left = getPaddingLeft();
+        float right = getWidth() - getPaddingRight();
+        float top = getPaddingTop();
+        float bottom = getHeight() - getPaddingBottom();
+        float height = bottom - top;
+
+        for (int pct = 0; pct <= 100; pct += 25) {
+            float y = bottom - pct * height / 100f;
+            canvas.drawLine(left, y, right, y, gridPaint);
+        }
+        drawLimit(canvas, threshold, thresholdPaint, left, right, bottom, height);
+        drawLimit(canvas, threshold - urgentOffset, urgentPaint, left, right, bottom, height);
+        drawLimit(canvas, threshold - criticalOffset, criticalPaint, left, right, bottom, height);
+
+        canvas.save();
+        canvas.clipRect(left, top, right, bottom);
+        synchronized (lock) {
+            Frame f = front;
+            double pxPerMs = (right - left) / (double) Math.max(1, viewEndMs - viewStartMs);
+            double shift = f.origin - viewStartMs;
+            path.rewind();
+            for (int i = 0; i < f.count; i++) {
+                float x = left + (float) ((f.x[i] + shift) * pxPerMs);
+                float y = bottom - f.y[i] * height / 100f;
+                if (i == 0) {
+                    path.moveTo(x, y);
+                } else {
+                    path.lineTo(x, y);
+                }
+            }
+            canvas.drawPath(path, linePaint);
+            for (int i = 0; i < f.markerCount; i++) {
+                canvas.drawCircle(left + (float) ((f.markerX[i] + shift) * pxPerMs),
+                        bottom - f.markerY[i] * height / 100f, markerRadius, markerPaints[f.markerTier[i]]);
+            }
+        }
+        canvas.restore();
+    }
+
+    private static void drawLimit(Canvas canvas, int pct, Paint paint, float left, float right,
+                                  float bottom, float height) {
+        if (pct <= 0) {
+            return;
+        }
+        float y = bottom - pct * height / 100f;
+        canvas.drawLine(left, y, right, y, paint);
+    }
+}
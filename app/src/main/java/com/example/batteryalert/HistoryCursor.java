@@ -0,0 +1,185 @@
+package com.example.batteryalert;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+/**
+ * Read-only cursor over every {@code step}-th record of a {@link HistoryRing}
+ * range. Rows are read from the mapped ring {@link #PAGE_ROWS} at a time as the
+ * cursor moves, so a query over the whole history holds one page in memory.
+ * The service keeps appending meanwhile: rows whose records have since been
+ * overwritten, or whose time is outside {@code [fromMs, toMs]}, are still
+ * counted and movable, with every column null.
+ */
+final class HistoryCursor extends AbstractCursor implements HistoryRing.Visitor {
+
+    static final String COLUMN_TIME = "time_ms";
+    static final String COLUMN_LEVEL = "level";
+    static final String COLUMN_STATUS = "status";
+    static final String COLUMN_PLUGGED = "plugged";
+    static final String COLUMN_ALERT_TIER = "alert_tier";
+    static final String COLUMN_TEMPERATURE = "temperature";
+    static final String COLUMN_VOLTAGE = "voltage";
+    static final String[] ALL_COLUMNS = {"_id", COLUMN_TIME, COLUMN_LEVEL, COLUMN_STATUS, COLUMN_PLUGGED,
+            COLUMN_ALERT_TIER, COLUMN_TEMPERATURE, COLUMN_VOLTAGE};
+
+    private static final int PAGE_ROWS = 256;
+    private static final int FIELDS = 8;
+
+    private final HistoryRing ring;
+    private final long firstSeq;
+    private final int step;
+    private final int count;
+    private final long fromMs;
+    private final long toMs;
+    private final String[] names;
+    private final int[] fields;
+
+    // Page of rows [pageStart, pageStart + pageCount), FIELDS values per row; seq -1 for a missing row.
+    private final long[] page = new long[PAGE_ROWS * FIELDS];
+    private int pageStart = -1;
+    private int pageCount = 0;
+
+    /**
+     * Rows are records {@code firstSeq, firstSeq + step, ...} before {@code endSeq},
+     * found by seeking {@code fromMs} and {@code toMs}.
+     */
+    HistoryCursor(HistoryRing ring, long firstSeq, long endSeq, int step, long fromMs, long toMs,
+                  String[] projection) {
+        this.ring = ring;
+        this.firstSeq = firstSeq;
+        this.step = Math.max(1, step);
+        this.count = endSeq <= firstSeq ? 0 : (int) Math.min(Integer.MAX_VALUE,
+                (endSeq - firstSeq + this.step - 1) / this.step);
+        this.fromMs = fromMs;
+        this.toMs = toMs;
+        this.names = projection != null ? projection : ALL_COLUMNS;
+        this.fields = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            fields[i] = indexOf(names[i]);
+            if (fields[i] < 0) {
+                throw new IllegalArgumentException("Unknown column " + names[i]);
+            }
+        }
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < ALL_COLUMNS.length; i++) {
+            if (ALL_COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return names;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        if (newPosition < pageStart || newPosition >= pageStart + pageCount) {
+            loadPage(newPosition);
+        }
+        return newPosition - pageStart < pageCount;
+    }
+
+    private void loadPage(int row) {
+        pageStart = row;
+        pageCount = Math.min(PAGE_ROWS, count - row);
+        for (int i = 0; i < pageCount; i++) {
+            page[i * FIELDS] = -1;
+        }
+        // The writer may have wrapped since the query; read only what the ring
+        // still holds, then blank rows it overwrote while we read.
+        ring.refresh();
+        long from = firstSeq + (long) row * step;
+        if (step == 1) {
+            ring.read(from, from + pageCount, this);
+        } else {
+            for (int i = 0; i < pageCount; i++) {
+                long seq = from + (long) i * step;
+                ring.read(seq, seq + 1, this);
+            }
+        }
+        ring.refresh();
+        for (int i = 0; i < pageCount; i++) {
+            if (page[i * FIELDS] >= 0 && !ring.holds(page[i * FIELDS])) {
+                page[i * FIELDS] = -1;
+            }
+        }
+    }
+
+    @Override
+    public void onRecord(long seq, long timeMs, int level, int status, int plugged,
+                         int alertTier, int temperature, int voltage) {
+        int row = (int) ((seq - firstSeq) / step) - pageStart;
+        if (row < 0 || row >= pageCount || timeMs < fromMs || timeMs > toMs) {
+            return;
+        }
+        int o = row * FIELDS;
+        page[o] = seq;
+        page[o + 1] = timeMs;
+        page[o + 2] = level;
+        page[o + 3] = status;
+        page[o + 4] = plugged;
+        page[o + 5] = alertTier;
+        page[o + 6] = temperature;
+        page[o + 7] = voltage;
+    }
+
+    private boolean missing() {
+        return page[(getPosition() - pageStart) * FIELDS] < 0;
+    }
+
+    // 0 for a missing row, as a null column reads.
+    private long value(int column) {
+        return missing() ? 0 : page[(getPosition() - pageStart) * FIELDS + fields[column]];
+    }
+
+    @Override
+    public int getType(int column) {
+        return missing() ? Cursor.FIELD_TYPE_NULL : Cursor.FIELD_TYPE_INTEGER;
+    }
+
+    @Override
+    public String getString(int column) {
+        return missing() ? null : Long.toString(value(column));
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) value(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) value(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return value(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return value(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return value(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return missing();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.batteryalert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a {@link HistoryRing} to an OutputStream as CSV or compact binary,
+ * optionally gzipped. Records are encoded straight from the mapped ring into one
+ * {@link #CHUNK_SIZE} buffer that is written out whenever it fills, so memory
+ * use does not depend on how much history there is.
+ *
+ * <p>Binary layout: magic {@code "BHX1"}, then varints for the time of the first
+ * record in ms and its sequence number, then per record: zigzag varint deltas of
+ * time in seconds and level, a varint {@code status | plugged << 3 | alertTier << 7},
+ * and zigzag varint deltas of temperature and voltage. The stream ends at EOF.
+ */
+public final class HistoryExporter implements HistoryRing.Visitor {
+
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_BINARY = 1;
+
+    static final int CHUNK_SIZE = 8192;
+    static final byte[] BINARY_MAGIC = {'B', 'H', 'X', '1'};
+    private static final byte[] CSV_HEADER =
+            "time_ms,level,status,plugged,alert_tier,temperature,voltage\n".getBytes();
+    // Worst case for one encoded record in either format.
+    private static final int MAX_RECORD_BYTES = 128;
+
+    private final OutputStream out;
+    private final int format;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int pos = 0;
+    private IOException error;
+    private long records = 0;
+    private long prevTime, prevLevel, prevTemperature, prevVoltage;
+
+    private HistoryExporter(OutputStream out, int format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Writes every record currently in {@code ring} to {@code out} and returns the
+     * number written. {@code out} is flushed but not closed.
+     */
+    public static long export(HistoryRing ring, OutputStream out, int format, boolean gzip) throws IOException {
+        GZIPOutputStream gz = gzip ? new GZIPOutputStream(out, CHUNK_SIZE) : null;
+        HistoryExporter exporter = new HistoryExporter(gz != null ? gz : out, format);
+        exporter.writeHeader(ring);
+        ring.read(ring.firstSeq(), ring.endSeq(), exporter);
+        if (exporter.error != null) {
+            throw exporter.error;
+        }
+        exporter.flushChunk();
+        if (gz != null) {
+            gz.finish();
+        }
+        out.flush();
+        return exporter.records;
+    }
+
+    private void writeHeader(HistoryRing ring) {
+        if (format == FORMAT_CSV) {
+            System.arraycopy(CSV_HEADER, 0, chunk, 0, CSV_HEADER.length);
+            pos = CSV_HEADER.length;
+            return;
+        }
+        System.arraycopy(BINARY_MAGIC, 0, chunk, 0, BINARY_MAGIC.length);
+        pos = BINARY_MAGIC.length;
+        long[] first = {0};
+        ring.read(ring.firstSeq(), ring.firstSeq() + 1,
+                (seq, timeMs, level, status, plugged, alertTier, temperature, voltage) -> first[0] = timeMs);
+        prevTime = first[0];
+        putVarint(first[0]);
+        putVarint(ring.firstSeq());
+    }
+
+    @Override
+    public void onRecord(long seq, long timeMs, int level, int status, int plugged,
+                         int alertTier, int temperature, int voltage) {
+        if (error != null) {
+            return;
+        }
+        if (format == FORMAT_CSV) {
+            putDecimal(timeMs);
+            chunk[pos++] = ',';
+            putDecimal(level);
+            chunk[pos++] = ',';
+            putDecimal(status);
+            chunk[pos++] = ',';
+            putDecimal(plugged);
+            chunk[pos++] = ',';
+            putDecimal(alertTier);
+            chunk[pos++] = ',';
+            putDecimal(temperature);
+            chunk[pos++] = ',';
+            putDecimal(voltage);
+            chunk[pos++] = '\n';
+        } else {
+            putVarint(zigzag((timeMs - prevTime) / 1000));
+            putVarint(zigzag(level - prevLevel));
+            putVarint((status & 0x7) | (plugged & 0xF) << 3 | (alertTier & 0x3) << 7);
+            putVarint(zigzag(temperature - prevTemperature));
+            putVarint(zigzag(voltage - prevVoltage));
+            prevTime = timeMs;
+            prevLevel = level;
+            prevTemperature = temperature;
+            prevVoltage = voltage;
+        }
+        records++;
+        if (pos > CHUNK_SIZE - MAX_RECORD_BYTES) {
+            try {
+                flushChunk();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (pos > 0) {
+            out.write(chunk, 0, pos);
+            pos = 0;
+        }
+    }
+
+    private void putVarint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            chunk[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        chunk[pos++] = (byte) v;
+    }
+
+    private void putDecimal(long v) {
+        if (v < 0) {
+            chunk[pos++] = '-';
+            v = -v;
+        }
+        int start = pos;
+        do {
+            chunk[pos++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = chunk[i];
+            chunk[i] = chunk[j];
+            chunk[j] = t;
+        }
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+}
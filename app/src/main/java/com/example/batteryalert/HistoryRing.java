@@ -0,0 +1,208 @@
+package com.example.batteryalert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fixed-size ring of battery samples in a memory-mapped file.
+ *
+ * <p>Layout: a 64-byte header ({@code magic, version, recordSize, capacity,
+ * baseTimeMs, count}) followed by {@code capacity} records of
+ * {@link #RECORD_SIZE} bytes: seconds since {@code baseTimeMs} (int), level
+ * percent, status, plugged, the tier alerted on that sample (0 for none),
+ * temperature in tenths of a degree (short) and voltage in mV (short). A record is written before {@code count}
+ * is advanced with one 8-byte store, so a crash mid-append never exposes a torn
+ * record. Pages are left to the kernel to flush; there is no per-write sync.
+ *
+ * <p>One thread appends; any thread may read. Records are addressed by a
+ * sequence number in {@code [firstSeq(), endSeq())}.
+ */
+public final class HistoryRing implements Closeable {
+
+    public interface Visitor {
+        void onRecord(long seq, long timeMs, int level, int status, int plugged,
+                      int alertTier, int temperature, int voltage);
+    }
+
+    public static final int DEFAULT_CAPACITY = 16384;
+    public static final int RECORD_SIZE = 12;
+
+    static final int MAGIC = 0x42485354; // "BHST"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_RECORD_SIZE = 6;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_BASE_TIME = 16;
+    private static final int OFF_COUNT = 24;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long baseTimeMs;
+    private volatile long count;
+
+    private HistoryRing(MappedByteBuffer buffer, int capacity, long baseTimeMs, long count) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.baseTimeMs = baseTimeMs;
+        this.count = count;
+    }
+
+    /** Opens the ring at {@code file}, creating or resetting it if the header doesn't match. */
+    public static HistoryRing open(File file, int capacity, long nowMs) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() != size;
+            if (fresh) {
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (!fresh
+                    && buf.getInt(OFF_MAGIC) == MAGIC
+                    && buf.getShort(OFF_VERSION) == VERSION
+                    && buf.getShort(OFF_RECORD_SIZE) == RECORD_SIZE
+                    && buf.getInt(OFF_CAPACITY) == capacity
+                    && buf.getLong(OFF_COUNT) >= 0) {
+                return new HistoryRing(buf, capacity, buf.getLong(OFF_BASE_TIME), buf.getLong(OFF_COUNT));
+            }
+            buf.putLong(OFF_COUNT, 0);
+            buf.putLong(OFF_BASE_TIME, nowMs);
+            buf.putInt(OFF_CAPACITY, capacity);
+            buf.putShort(OFF_RECORD_SIZE, (short) RECORD_SIZE);
+            buf.putShort(OFF_VERSION, VERSION);
+            buf.putInt(OFF_MAGIC, MAGIC);
+            return new HistoryRing(buf, capacity, nowMs, 0);
+        }
+    }
+
+    /**
+     * Maps an existing ring read-only, e.g. to chart it while the service is not
+     * running. Returns null if the file is missing or not a ring. The returned
+     * instance does not see records appended through another instance until
+     * {@link #refresh}.
+     */
+    public static HistoryRing openReadOnly(File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            int capacity = buf.getInt(OFF_CAPACITY);
+            if (buf.getInt(OFF_MAGIC) != MAGIC
+                    || buf.getShort(OFF_VERSION) != VERSION
+                    || buf.getShort(OFF_RECORD_SIZE) != RECORD_SIZE
+                    || capacity <= 0
+                    || raf.length() != HEADER_SIZE + (long) capacity * RECORD_SIZE
+                    || buf.getLong(OFF_COUNT) < 0) {
+                return null;
+            }
+            return new HistoryRing(buf, capacity, buf.getLong(OFF_BASE_TIME), buf.getLong(OFF_COUNT));
+        }
+    }
+
+    public void append(long timeMs, int level, int status, int plugged, int alertTier,
+                       int temperature, int voltage) {
+        long seq = count;
+        int off = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+        long delta = (timeMs - baseTimeMs) / 1000;
+        buffer.putInt(off, (int) Math.max(0, Math.min(Integer.MAX_VALUE, delta)));
+        buffer.put(off + 4, (byte) level);
+        buffer.put(off + 5, (byte) status);
+        buffer.put(off + 6, (byte) plugged);
+        buffer.put(off + 7, (byte) alertTier);
+        buffer.putShort(off + 8, (short) temperature);
+        buffer.putShort(off + 10, (short) voltage);
+        buffer.putLong(OFF_COUNT, seq + 1);
+        count = seq + 1;
+    }
+
+    /**
+     * Re-reads the record count from the header, so an instance from
+     * {@link #openReadOnly} sees what was appended since and no longer reads
+     * slots the writer has reused.
+     */
+    public void refresh() {
+        count = buffer.getLong(OFF_COUNT);
+    }
+
+    /**
+     * Whether record {@code seq} is still held. Checked after {@link #refresh},
+     * it tells a reader racing the writer whether values read for {@code seq}
+     * before the refresh came from it rather than from a record that replaced it.
+     */
+    public boolean holds(long seq) {
+        return seq >= firstSeq() && seq < count;
+    }
+
+    public long firstSeq() {
+        return Math.max(0, count - capacity);
+    }
+
+    public long endSeq() {
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /** Time of record {@code seq}, which must be in {@code [firstSeq(), endSeq())}. */
+    public long timeAt(long seq) {
+        int off = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+        return baseTimeMs + (buffer.getInt(off) & 0xFFFFFFFFL) * 1000;
+    }
+
+    /** First sequence number whose time is at or after {@code timeMs}, by binary search. */
+    public long seekTime(long timeMs) {
+        long lo = firstSeq(), hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timeAt(mid) < timeMs) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Streams records {@code [fromSeq, toSeq)} to {@code visitor}, clamped to what
+     * the ring still holds. Returns the number of records visited.
+     */
+    public int read(long fromSeq, long toSeq, Visitor visitor) {
+        long end = Math.min(toSeq, count);
+        long seq = Math.max(fromSeq, firstSeq());
+        int n = 0;
+        for (; seq < end; seq++, n++) {
+            int off = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+            visitor.onRecord(seq,
+                    baseTimeMs + (buffer.getInt(off) & 0xFFFFFFFFL) * 1000,
+                    buffer.get(off + 4),
+                    buffer.get(off + 5),
+                    buffer.get(off + 6),
+                    buffer.get(off + 7),
+                    buffer.getShort(off + 8),
+                    buffer.getShort(off + 10));
+        }
+        return n;
+    }
+
+    @Override
+    public void close() {
+        // The mapping stays valid until the buffer is collected; flush what we have.
+        if (!buffer.isReadOnly()) {
+            buffer.force();
+        }
+    }
+}
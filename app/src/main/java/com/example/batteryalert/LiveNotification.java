@@ -0,0 +1,171 @@
+package com.example.batteryalert;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.core.app.NotificationCompat;
+
+/**
+ * The service's ongoing notification, showing level, tier, trend and ETA. Each
+ * update renders the text and reposts only if it differs from what is shown,
+ * and no sooner than the current interval after the previous post; a change of
+ * tier, charging state or threshold only waits {@link #MIN_INTERVAL_MS}. Updates
+ * arriving inside the interval collapse into one delayed post of the latest
+ * state. One builder is reused for every post. Thread-safe.
+ */
+final class LiveNotification {
+
+    static final long MIN_INTERVAL_MS = 1000;
+
+    private final Context context;
+    private final NotificationManager manager;
+    private final Handler handler;
+    private final int id;
+    private final NotificationCompat.Builder builder;
+    private final Runnable postLatest = this::postLatest;
+
+    private int threshold;
+    private int levelPct = -1;
+    private boolean charging;
+    private int tier = AlertEngine.TIER_NONE;
+    private long crossingMs = -1;
+    private double ratePerHour = Double.NaN;
+    private long intervalMs = MIN_INTERVAL_MS;
+
+    private boolean started = false;
+    private String shownTitle, shownText, shownSubText;
+    private int shownTier = -1;
+    private boolean shownCharging;
+    private int shownThreshold = -1;
+    private long postedAtMs;
+
+    LiveNotification(Context context, String channelId, int id, Handler handler) {
+        this.context = context;
+        this.manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.handler = handler;
+        this.id = id;
+        this.builder = new NotificationCompat.Builder(context, channelId)
+                .setSmallIcon(android.R.drawable.ic_dialog_info)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setShowWhen(false);
+    }
+
+    /** Renders the current state for {@code startForeground}; later updates are posted from here on. */
+    synchronized Notification build() {
+        started = true;
+        render();
+        postedAtMs = SystemClock.elapsedRealtime();
+        return builder.build();
+    }
+
+    synchronized void setThreshold(int threshold) {
+        this.threshold = threshold;
+        schedule();
+    }
+
+    /** {@code crossingMs} is -1 and {@code ratePerHour} NaN when there is no estimate. */
+    synchronized void update(int levelPct, boolean charging, int tier, long crossingMs,
+                             double ratePerHour, long intervalMs) {
+        this.levelPct = levelPct;
+        this.charging = charging;
+        this.tier = tier;
+        this.crossingMs = crossingMs;
+        this.ratePerHour = ratePerHour;
+        this.intervalMs = Math.max(MIN_INTERVAL_MS, intervalMs);
+        schedule();
+    }
+
+    /** Stops further posts and removes the notification, e.g. once the service leaves the foreground. */
+    synchronized void cancel() {
+        handler.removeCallbacks(postLatest);
+        started = false;
+        if (manager != null) {
+            manager.cancel(id);
+        }
+    }
+
+    private void schedule() {
+        if (!started || !contentChanged()) {
+            return;
+        }
+        boolean significant = tier != shownTier || charging != shownCharging || threshold != shownThreshold;
+        long due = postedAtMs + (significant ? MIN_INTERVAL_MS : intervalMs);
+        long wait = due - SystemClock.elapsedRealtime();
+        handler.removeCallbacks(postLatest);
+        if (wait <= 0) {
+            postLatest();
+        } else {
+            handler.postDelayed(postLatest, wait);
+        }
+    }
+
+    private synchronized void postLatest() {
+        if (!started || !contentChanged() || manager == null) {
+            return;
+        }
+        render();
+        postedAtMs = SystemClock.elapsedRealtime();
+        manager.notify(id, builder.build());
+    }
+
+    private boolean contentChanged() {
+        return !same(title(), shownTitle) || !same(text(), shownText) || !same(subText(), shownSubText);
+    }
+
+    private void render() {
+        shownTitle = title();
+        shownText = text();
+        shownSubText = subText();
+        shownTier = tier;
+        shownCharging = charging;
+        shownThreshold = threshold;
+        builder.setContentTitle(shownTitle)
+                .setContentText(shownText)
+                .setSubText(shownSubText);
+    }
+
+    private String title() {
+        if (levelPct < 0) {
+            return context.getString(R.string.service_active);
+        }
+        if (charging) {
+            return context.getString(R.string.notification_level_charging, levelPct);
+        }
+        switch (tier) {
+            case AlertEngine.TIER_CRITICAL:
+                return context.getString(R.string.notification_level_tier, levelPct,
+                        context.getString(R.string.tier_critical));
+            case AlertEngine.TIER_URGENT:
+                return context.getString(R.string.notification_level_tier, levelPct,
+                        context.getString(R.string.tier_urgent));
+            case AlertEngine.TIER_NORMAL:
+                return context.getString(R.string.notification_level_tier, levelPct,
+                        context.getString(R.string.tier_normal));
+            default:
+                return context.getString(R.string.notification_level, levelPct);
+        }
+    }
+
+    private String text() {
+        long remaining = crossingMs - System.currentTimeMillis();
+        if (!charging && crossingMs >= 0 && remaining > 0) {
+            return context.getString(R.string.service_monitoring_eta, threshold,
+                    BatteryService.formatDuration(remaining));
+        }
+        return context.getString(R.string.service_monitoring, threshold);
+    }
+
+    private String subText() {
+        if (charging || Double.isNaN(ratePerHour) || ratePerHour <= 0) {
+            return null;
+        }
+        return context.getString(R.string.notification_trend, Math.round(ratePerHour * 10) / 10.0);
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
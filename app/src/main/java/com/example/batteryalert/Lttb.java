@@ -0,0 +1,86 @@
+package com.example.batteryalert;
+
+/**
+ * Largest-triangle-three-buckets downsampling of a time series into a fixed
+ * number of points that keeps its visual shape. Works on primitive arrays and
+ * writes into caller-owned output arrays, so repeated runs allocate nothing.
+ */
+public final class Lttb {
+
+    private Lttb() {
+    }
+
+    /**
+     * Downsamples {@code times[from, to)} / {@code values[from, to)} to at most
+     * {@code maxPoints} points. X values are written relative to {@code origin}.
+     * Returns the number of points written to {@code outX}/{@code outY}.
+     */
+    public static int downsample(long[] times, byte[] values, int from, int to, int maxPoints,
+                                 long origin, float[] outX, float[] outY) {
+        int n = to - from;
+        if (n <= 0 || maxPoints <= 0) {
+            return 0;
+        }
+        if (n <= maxPoints || maxPoints < 3) {
+            int count = Math.min(n, maxPoints);
+            // Too few buckets for LTTB: pass through, keeping the last point when truncating.
+            for (int i = 0; i < count; i++) {
+                int src = count == n ? from + i : from + (int) ((long) i * (n - 1) / Math.max(1, count - 1));
+                outX[i] = times[src] - origin;
+                outY[i] = values[src];
+            }
+            return count;
+        }
+
+        int out = 0;
+        outX[out] = times[from] - origin;
+        outY[out] = values[from];
+        out++;
+
+        // Interior points are split into maxPoints - 2 buckets between the fixed endpoints.
+        double bucketSize = (double) (n - 2) / (maxPoints - 2);
+        int a = from;
+        for (int b = 0; b < maxPoints - 2; b++) {
+            int start = from + 1 + (int) (b * bucketSize);
+            int end = Math.min(to - 1, from + 1 + (int) ((b + 1) * bucketSize));
+
+            // Average of the next bucket (or the last point) is the third triangle vertex.
+            int nextStart = end;
+            int nextEnd = Math.min(to, from + 1 + (int) ((b + 2) * bucketSize));
+            if (b == maxPoints - 3) {
+                nextStart = to - 1;
+                nextEnd = to;
+            }
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += times[i] - origin;
+                avgY += values[i];
+            }
+            int span = Math.max(1, nextEnd - nextStart);
+            avgX /= span;
+            avgY /= span;
+
+            double ax = times[a] - origin;
+            double ay = values[a];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ax - avgX) * (values[i] - ay)
+                        - (ax - (times[i] - origin)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            outX[out] = times[chosen] - origin;
+            outY[out] = values[chosen];
+            out++;
+            a = chosen;
+        }
+
+        outX[out] = times[to - 1] - origin;
+        outY[out] = values[to - 1];
+        return out + 1;
+    }
+}
@@ -1,29 +1,43 @@
 package com.example.batteryalert;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
-import android.content.Context;
+import android.content.ComponentName;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.SharedPreferences;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.SeekBar;
 import android.widget.TextView;
+import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.switchmaterial.SwitchMaterial;
+import com.google.android.material.textfield.TextInputLayout;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -38,20 +52,36 @@ public class MainActivity extends AppCompatActivity {
     private EditText alertNormalEdit;
     private EditText alertUrgentEdit;
     private EditText alertCriticalEdit;
-    private SeekBar urgentOffsetSeekBar;
-    private TextView urgentOffsetLabel;
-    private SeekBar criticalOffsetSeekBar;
-    private TextView criticalOffsetLabel;
+    private EditText customTtsUrlEdit;
+    private EditText telemetryUrlEdit;
+    private SwitchMaterial hiResSwitch;
+    private SeekBar cpuBudgetSeekBar;
+    private TextView cpuBudgetText;
+    private TextInputLayout alertRulesLayout;
+    private EditText alertRulesEdit;
     private TextView audioNormalPath, audioUrgentPath, audioCriticalPath;
     private Button btnSelectAudioNormal, btnClearAudioNormal;
     private Button btnSelectAudioUrgent, btnClearAudioUrgent;
     private Button btnSelectAudioCritical, btnClearAudioCritical;
     private TextView batteryLevelText;
+    private HistoryChartView historyChart;
+    private TextView sessionsText;
+    private TextView sessionsPageText;
+    private Button sessionsNewerButton, sessionsOlderButton;
     private MaterialButton startStopButton;
     private boolean isServiceRunning = false;
 
     private String uriNormal, uriUrgent, uriCritical;
 
+    // Settings edits are coalesced: nothing is written or sent until the UI has been
+    // quiet for CONFIG_QUIET_MS, which bounds updates to 1000 / CONFIG_QUIET_MS per second.
+    private static final long CONFIG_QUIET_MS = 400;
+    private static final int CPU_BUDGET_STEP_MS = 500;
+    private final Handler configHandler = new Handler(Looper.getMainLooper());
+    private final Runnable commitConfig = this::commitConfig;
+    private ConfigSnapshot committedConfig;
+    private long configCommits = 0;
+
     private final ActivityResultLauncher<String[]> pickAudioNormal = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(), uri -> handleAudioPick(uri, "normal"));
     private final ActivityResultLauncher<String[]> pickAudioUrgent = registerForActivityResult(
@@ -59,6 +89,25 @@ public class MainActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String[]> pickAudioCritical = registerForActivityResult(
             new ActivityResultContracts.OpenDocument(), uri -> handleAudioPick(uri, "critical"));
 
+    private final ActivityResultLauncher<String> exportCsv = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("text/csv"),
+            uri -> exportHistory(uri, HistoryExporter.FORMAT_CSV, false));
+    private final ActivityResultLauncher<String> exportCsvGzip = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/gzip"),
+            uri -> exportHistory(uri, HistoryExporter.FORMAT_CSV, true));
+    private final ActivityResultLauncher<String> exportBinary = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/octet-stream"),
+            uri -> exportHistory(uri, HistoryExporter.FORMAT_BINARY, false));
+    private final ActivityResultLauncher<String> exportBinaryGzip = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument("application/gzip"),
+            uri -> exportHistory(uri, HistoryExporter.FORMAT_BINARY, true));
+    private final Executor exportExecutor = Executors.newSingleThreadExecutor();
+
+    private static final int SESSIONS_PAGE_SIZE = 10;
+    private final Executor sessionLoader = Executors.newSingleThreadExecutor();
+    private int sessionsPage = 0;
+    private long shownSessionCount = -1;
+
     private void handleAudioPick(Uri uri, String level) {
         if (uri != null) {
             getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
@@ -71,22 +120,68 @@ public class MainActivity extends AppCompatActivity {
                 uriCritical = uriString;
             }
             updateAudioLabels();
-            saveAudioUris();
-            if (isServiceRunning) updateService();
+            scheduleConfigCommit();
         }
     }
 
-    private final BroadcastReceiver batteryInfoReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-            if (level != -1 && scale != -1) {
-                int batteryPct = (int) (level * 100 / (float) scale);
-                batteryLevelText.setText(getString(R.string.current_battery, batteryPct));
+    // Live level comes from the service's state stream; the activity keeps no receiver of its own.
+    private BatteryService boundService;
+    private final BatteryService.StateListener stateListener = state -> {
+        showState(state);
+        if (boundService != null) {
+            historyChart.setSource(boundService.getHistory());
+            SessionStore store = boundService.getSessions();
+            if (store != null && store.endSeq() != shownSessionCount) {
+                loadSessions();
             }
         }
     };
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            boundService = ((BatteryService.LocalBinder) service).getService();
+            historyChart.setSource(boundService.getHistory());
+            boundService.addStateListener(stateListener);
+            loadSessions();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            boundService = null;
+        }
+    };
+
+    private void showState(MonitorState state) {
+        long now = System.currentTimeMillis();
+        long remaining = state.predictedCrossingMs - now;
+        String text;
+        if (!state.charging && state.predictedCrossingMs >= 0 && remaining > 0) {
+            text = getString(R.string.current_battery_eta, state.levelPct, BatteryService.formatDuration(remaining));
+        } else {
+            text = getString(R.string.current_battery, state.levelPct);
+        }
+        if (!state.charging && state.predictedUrgentMs > now) {
+            text += "\n" + getString(R.string.current_battery_urgent_eta,
+                    BatteryService.formatDuration(state.predictedUrgentMs - now));
+        }
+        if (!state.charging && state.predictedCriticalMs > now) {
+            text += "\n" + getString(R.string.current_battery_critical_eta,
+                    BatteryService.formatDuration(state.predictedCriticalMs - now));
+        }
+        batteryLevelText.setText(text);
+    }
+
+    private void showStickyLevel() {
+        Intent sticky = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (sticky == null) {
+            return;
+        }
+        int level = sticky.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = sticky.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level != -1 && scale > 0) {
+            batteryLevelText.setText(getString(R.string.current_battery, level * 100 / scale));
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -104,6 +199,13 @@ public class MainActivity extends AppCompatActivity {
         alertNormalEdit = findViewById(R.id.alertNormalEdit);
         alertUrgentEdit = findViewById(R.id.alertUrgentEdit);
         alertCriticalEdit = findViewById(R.id.alertCriticalEdit);
+        customTtsUrlEdit = findViewById(R.id.customTtsUrlEdit);
+        telemetryUrlEdit = findViewById(R.id.telemetryUrlEdit);
+        hiResSwitch = findViewById(R.id.hiResSwitch);
+        cpuBudgetSeekBar = findViewById(R.id.cpuBudgetSeekBar);
+        cpuBudgetText = findViewById(R.id.cpuBudgetText);
+        alertRulesLayout = findViewById(R.id.alertRulesLayout);
+        alertRulesEdit = findViewById(R.id.alertRulesEdit);
         audioNormalPath = findViewById(R.id.audioNormalPath);
         audioUrgentPath = findViewById(R.id.audioUrgentPath);
         audioCriticalPath = findViewById(R.id.audioCriticalPath);
@@ -114,27 +216,29 @@ public class MainActivity extends AppCompatActivity {
         btnSelectAudioCritical = findViewById(R.id.btnSelectAudioCritical);
         btnClearAudioCritical = findViewById(R.id.btnClearAudioCritical);
         batteryLevelText = findViewById(R.id.batteryLevelText);
+        historyChart = findViewById(R.id.historyChart);
+        sessionsText = findViewById(R.id.sessionsText);
+        sessionsPageText = findViewById(R.id.sessionsPageText);
+        sessionsNewerButton = findViewById(R.id.sessionsNewerButton);
+        sessionsOlderButton = findViewById(R.id.sessionsOlderButton);
         startStopButton = findViewById(R.id.startStopButton);
 
         // Load preferences
-        SharedPreferences prefs = getSharedPreferences(BatteryService.PREFS_NAME, MODE_PRIVATE);
-        isServiceRunning = prefs.getBoolean(BatteryService.KEY_RUNNING, false);
-        int savedThreshold = prefs.getInt(BatteryService.KEY_THRESHOLD, 20);
-        int savedVolume = prefs.getInt(BatteryService.KEY_VOLUME, 100);
-        int savedUrgentOffset = prefs.getInt("urgent_offset", 5);
-        int savedCriticalOffset = prefs.getInt("critical_offset", 10);
-        String savedNormal = prefs.getString("alert_normal_text", getString(R.string.alert_normal));
-        String savedUrgent = prefs.getString("alert_urgent_text", getString(R.string.alert_urgent));
-        String savedCritical = prefs.getString("alert_critical_text", getString(R.string.alert_critical));
-        String savedCustomTtsUrl = prefs.getString("custom_tts_url", "");
-
-        uriNormal = prefs.getString("uri_normal", null);
-        uriUrgent = prefs.getString("uri_urgent", null);
-        uriCritical = prefs.getString("uri_critical", null);
-
-        uriNormal = prefs.getString("uri_normal", null);
-        uriUrgent = prefs.getString("uri_urgent", null);
-        uriCritical = prefs.getString("uri_critical", null);
+        isServiceRunning = StateSnapshot.get(this).isRunning();
+        committedConfig = ConfigStore.load(this);
+        int savedThreshold = committedConfig.threshold;
+        int savedVolume = committedConfig.volume;
+        int savedUrgentOffset = committedConfig.urgentOffset;
+        int savedCriticalOffset = committedConfig.criticalOffset;
+        String savedNormal = committedConfig.alertNormal;
+        String savedUrgent = committedConfig.alertUrgent;
+        String savedCritical = committedConfig.alertCritical;
+        String savedCustomTtsUrl = committedConfig.customTtsUrl;
+        String savedTelemetryUrl = committedConfig.telemetryUrl;
+
+        uriNormal = committedConfig.uriNormal;
+        uriUrgent = committedConfig.uriUrgent;
+        uriCritical = committedConfig.uriCritical;
 
         thresholdSeekBar.setProgress(savedThreshold);
         thresholdText.setText(getString(R.string.alert_threshold, savedThreshold));
@@ -147,13 +251,19 @@ public class MainActivity extends AppCompatActivity {
 
         criticalOffsetSeekBar.setProgress(savedCriticalOffset);
         criticalOffsetLabel.setText(getString(R.string.critical_offset_label, savedCriticalOffset));
+        historyChart.setLimits(savedThreshold, savedUrgentOffset, savedCriticalOffset);
 
         alertNormalEdit.setText(savedNormal);
         alertUrgentEdit.setText(savedUrgent);
         alertCriticalEdit.setText(savedCritical);
         customTtsUrlEdit.setText(savedCustomTtsUrl);
-
-        updateAudioLabels();
+        telemetryUrlEdit.setText(savedTelemetryUrl);
+        hiResSwitch.setChecked(committedConfig.hiResTelemetry);
+        cpuBudgetSeekBar.setProgress((int) Math.max(0,
+                Math.round(committedConfig.cpuBudgetMsPerHour / (double) CPU_BUDGET_STEP_MS) - 1));
+        cpuBudgetText.setText(getString(R.string.cpu_budget_label, cpuBudgetMs()));
+        alertRulesEdit.setText(committedConfig.alertRules);
+        validateAlertRules();
 
         updateAudioLabels();
 
@@ -163,7 +273,8 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 thresholdText.setText(getString(R.string.alert_threshold, progress));
-                if (isServiceRunning && fromUser) updateService();
+                updateChartLimits();
+                if (fromUser) scheduleConfigCommit();
             }
             @Override public void onStartTrackingTouch(SeekBar seekBar) {}
             @Override public void onStopTrackingTouch(SeekBar seekBar) {}
@@ -173,7 +284,17 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 volumeText.setText(getString(R.string.volume_label, progress));
-                if (isServiceRunning && fromUser) updateService();
+                if (fromUser) scheduleConfigCommit();
+            }
+            @Override public void onStartTrackingTouch(SeekBar seekBar) {}
+            @Override public void onStopTrackingTouch(SeekBar seekBar) {}
+        });
+
+        cpuBudgetSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                cpuBudgetText.setText(getString(R.string.cpu_budget_label, cpuBudgetMs()));
+                if (fromUser) scheduleConfigCommit();
             }
             @Override public void onStartTrackingTouch(SeekBar seekBar) {}
             @Override public void onStopTrackingTouch(SeekBar seekBar) {}
@@ -183,7 +304,8 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 urgentOffsetLabel.setText(getString(R.string.urgent_offset_label, progress));
-                if (isServiceRunning && fromUser) updateService();
+                updateChartLimits();
+                if (fromUser) scheduleConfigCommit();
             }
             @Override public void onStartTrackingTouch(SeekBar seekBar) {}
             @Override public void onStopTrackingTouch(SeekBar seekBar) {}
@@ -193,7 +315,8 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 criticalOffsetLabel.setText(getString(R.string.critical_offset_label, progress));
-                if (isServiceRunning && fromUser) updateService();
+                updateChartLimits();
+                if (fromUser) scheduleConfigCommit();
             }
             @Override public void onStartTrackingTouch(SeekBar seekBar) {}
             @Override public void onStopTrackingTouch(SeekBar seekBar) {}
@@ -208,56 +331,32 @@ public class MainActivity extends AppCompatActivity {
 
             @Override
             public void afterTextChanged(Editable s) {
-                if (isServiceRunning) { updateService(); }
-            }
-            @Override public void onStartTrackingTouch(SeekBar seekBar) {}
-            @Override public void onStopTrackingTouch(SeekBar seekBar) {}
-        });
-
-        urgentOffsetSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
-            @Override
-            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                urgentOffsetLabel.setText(getString(R.string.urgent_offset_label, progress));
-                if (isServiceRunning && fromUser) updateService();
-            }
-            @Override public void onStartTrackingTouch(SeekBar seekBar) {}
-            @Override public void onStopTrackingTouch(SeekBar seekBar) {}
-        });
-
-        criticalOffsetSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
-            @Override
-            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                criticalOffsetLabel.setText(getString(R.string.critical_offset_label, progress));
-                if (isServiceRunning && fromUser) updateService();
+                if (s == alertRulesEdit.getText()) {
+                    validateAlertRules();
+                }
+                scheduleConfigCommit();
             }
-            @Override public void onStartTrackingTouch(SeekBar seekBar) {}
-            @Override public void onStopTrackingTouch(SeekBar seekBar) {}
-        });
-
-        TextWatcher textWatcher = new TextWatcher() {
+        };
 
         alertNormalEdit.addTextChangedListener(textWatcher);
         alertUrgentEdit.addTextChangedListener(textWatcher);
         alertCriticalEdit.addTextChangedListener(textWatcher);
         customTtsUrlEdit.addTextChangedListener(textWatcher);
+        telemetryUrlEdit.addTextChangedListener(textWatcher);
+        alertRulesEdit.addTextChangedListener(textWatcher);
+        hiResSwitch.setOnCheckedChangeListener((button, checked) -> scheduleConfigCommit());
 
         btnSelectAudioNormal.setOnClickListener(v -> pickAudioNormal.launch(new String[]{"audio/*"}));
         btnSelectAudioUrgent.setOnClickListener(v -> pickAudioUrgent.launch(new String[]{"audio/*"}));
         btnSelectAudioCritical.setOnClickListener(v -> pickAudioCritical.launch(new String[]{"audio/*"}));
 
-        btnClearAudioNormal.setOnClickListener(v -> { uriNormal = null; updateAudioLabels(); saveAudioUris(); if (isServiceRunning) updateService(); });
-        btnClearAudioUrgent.setOnClickListener(v -> { uriUrgent = null; updateAudioLabels(); saveAudioUris(); if (isServiceRunning) updateService(); });
-        btnClearAudioCritical.setOnClickListener(v -> { uriCritical = null; updateAudioLabels(); saveAudioUris(); if (isServiceRunning) updateService(); });
-
-        btnSelectAudioNormal.setOnClickListener(v -> pickAudioNormal.launch(new String[]{"audio/*"}));
-        btnSelectAudioUrgent.setOnClickListener(v -> pickAudioUrgent.launch(new String[]{"audio/*"}));
-        btnSelectAudioCritical.setOnClickListener(v -> pickAudioCritical.launch(new String[]{"audio/*"}));
-
-        btnClearAudioNormal.setOnClickListener(v -> { uriNormal = null; updateAudioLabels(); saveAudioUris(); if (isServiceRunning) updateService(); });
-        btnClearAudioUrgent.setOnClickListener(v -> { uriUrgent = null; updateAudioLabels(); saveAudioUris(); if (isServiceRunning) updateService(); });
-        btnClearAudioCritical.setOnClickListener(v -> { uriCritical = null; updateAudioLabels(); saveAudioUris(); if (isServiceRunning) updateService(); });
+        btnClearAudioNormal.setOnClickListener(v -> { uriNormal = null; updateAudioLabels(); scheduleConfigCommit(); });
+        btnClearAudioUrgent.setOnClickListener(v -> { uriUrgent = null; updateAudioLabels(); scheduleConfigCommit(); });
+        btnClearAudioCritical.setOnClickListener(v -> { uriCritical = null; updateAudioLabels(); scheduleConfigCommit(); });
 
         startStopButton.setOnClickListener(v -> toggleService());
+        sessionsNewerButton.setOnClickListener(v -> { sessionsPage--; loadSessions(); });
+        sessionsOlderButton.setOnClickListener(v -> { sessionsPage++; loadSessions(); });
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             if (ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
@@ -268,53 +367,243 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void updateChartLimits() {
+        historyChart.setLimits(thresholdSeekBar.getProgress(), urgentOffsetSeekBar.getProgress(),
+                criticalOffsetSeekBar.getProgress());
+    }
+
     private void updateAudioLabels() {
         audioNormalPath.setText(uriNormal != null ? getString(R.string.audio_selected, Uri.parse(uriNormal).getLastPathSegment()) : getString(R.string.no_audio_selected));
         audioUrgentPath.setText(uriUrgent != null ? getString(R.string.audio_selected, Uri.parse(uriUrgent).getLastPathSegment()) : getString(R.string.no_audio_selected));
         audioCriticalPath.setText(uriCritical != null ? getString(R.string.audio_selected, Uri.parse(uriCritical).getLastPathSegment()) : getString(R.string.no_audio_selected));
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_stats) {
+            startActivity(new Intent(this, StatsActivity.class)
+                    .putExtra(StatsActivity.EXTRA_CONFIG_COMMITS, configCommits));
+            return true;
+        } else if (id == R.id.action_export_csv) {
+            exportCsv.launch("battery_history.csv");
+            return true;
+        } else if (id == R.id.action_export_csv_gzip) {
+            exportCsvGzip.launch("battery_history.csv.gz");
+            return true;
+        } else if (id == R.id.action_export_binary) {
+            exportBinary.launch("battery_history.bhx");
+            return true;
+        } else if (id == R.id.action_export_binary_gzip) {
+            exportBinaryGzip.launch("battery_history.bhx.gz");
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /** Streams the history to {@code uri} on a background thread. */
+    private void exportHistory(Uri uri, int format, boolean gzip) {
+        if (uri == null) {
+            return;
+        }
+        HistoryRing live = boundService != null ? boundService.getHistory() : null;
+        File file = new File(getFilesDir(), BatteryService.HISTORY_FILE);
+        exportExecutor.execute(() -> {
+            String message;
+            try (OutputStream out = getContentResolver().openOutputStream(uri, "w")) {
+                HistoryRing ring = live != null ? live : HistoryRing.openReadOnly(file);
+                if (out == null || ring == null) {
+                    message = getString(R.string.export_failed);
+                } else {
+                    long records = HistoryExporter.export(ring, out, format, gzip);
+                    message = getString(R.string.export_done, records);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                message = getString(R.string.export_failed);
+            }
+            String text = message;
+            runOnUiThread(() -> Toast.makeText(this, text, Toast.LENGTH_SHORT).show());
+        });
+    }
+
+    /**
+     * Shows page {@link #sessionsPage} of the stored sessions, newest first. Records
+     * are fixed-size, so only the {@link #SESSIONS_PAGE_SIZE} on the page are read.
+     */
+    private void loadSessions() {
+        SessionStore live = boundService != null ? boundService.getSessions() : null;
+        File file = new File(getFilesDir(), BatteryService.SESSIONS_FILE);
+        int requestedPage = Math.max(0, sessionsPage);
+        sessionLoader.execute(() -> {
+            StringBuilder text = new StringBuilder();
+            long total = 0;
+            int page = requestedPage;
+            long count = -1;
+            try {
+                SessionStore store = live != null ? live : SessionStore.openReadOnly(file);
+                if (store != null) {
+                    long first = store.firstSeq();
+                    count = store.endSeq();
+                    total = count - first;
+                    page = (int) Math.min(page, Math.max(0, (total - 1) / SESSIONS_PAGE_SIZE));
+                    SessionTracker.Session s = new SessionTracker.Session();
+                    int reference = store.referenceCapacityMah();
+                    long from = count - 1 - (long) page * SESSIONS_PAGE_SIZE;
+                    for (long seq = from; seq >= first && seq > from - SESSIONS_PAGE_SIZE; seq--) {
+                        store.get(seq, s);
+                        if (text.length() > 0) {
+                            text.append('\n');
+                        }
+                        appendSession(text, s, reference);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            long shownTotal = total;
+            int shownPage = page;
+            long shownCount = count;
+            runOnUiThread(() -> showSessions(text.toString(), shownPage, shownTotal, shownCount));
+        });
+    }
+
+    private void appendSession(StringBuilder out, SessionTracker.Session s, int referenceMah) {
+        DateFormat format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+        out.append(getString(R.string.session_line, format.format(new Date(s.startMs)),
+                getString(s.charging ? R.string.session_charging : R.string.session_discharging),
+                BatteryService.formatDuration(s.durationMs()), s.startLevel, s.endLevel,
+                s.rateMean, s.rateStdDev()));
+        int[] t = s.tierSeconds;
+        if (t[AlertEngine.TIER_NORMAL] + t[AlertEngine.TIER_URGENT] + t[AlertEngine.TIER_CRITICAL] > 0) {
+            out.append(getString(R.string.session_tiers,
+                    BatteryService.formatDuration(t[AlertEngine.TIER_NORMAL] * 1000L),
+                    BatteryService.formatDuration(t[AlertEngine.TIER_URGENT] * 1000L),
+                    BatteryService.formatDuration(t[AlertEngine.TIER_CRITICAL] * 1000L)));
+        }
+        if (s.capacityMah > 0 && referenceMah > 0) {
+            out.append(getString(R.string.session_capacity_fade, s.capacityMah,
+                    100.0 * (referenceMah - s.capacityMah) / referenceMah));
+        } else if (s.capacityMah > 0) {
+            out.append(getString(R.string.session_capacity, s.capacityMah));
+        }
+    }
+
+    private void showSessions(String text, int page, long total, long count) {
+        sessionsPage = page;
+        shownSessionCount = count;
+        if (total == 0) {
+            sessionsText.setText(R.string.sessions_empty);
+            sessionsPageText.setText(null);
+        } else {
+            sessionsText.setText(text);
+            long from = (long) page * SESSIONS_PAGE_SIZE + 1;
+            sessionsPageText.setText(getString(R.string.sessions_page, from,
+                    Math.min(total, from + SESSIONS_PAGE_SIZE - 1), total));
+        }
+        sessionsNewerButton.setEnabled(page > 0);
+        sessionsOlderButton.setEnabled((long) (page + 1) * SESSIONS_PAGE_SIZE < total);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // No BIND_AUTO_CREATE: binding must not start monitoring, only attach to a running service.
+        bindService(new Intent(this, BatteryService.class), serviceConnection, 0);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (boundService != null) {
+            boundService.removeStateListener(stateListener);
+            boundService = null;
+        }
+        unbindService(serviceConnection);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
-        registerReceiver(batteryInfoReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
-        SharedPreferences prefs = getSharedPreferences(BatteryService.PREFS_NAME, MODE_PRIVATE);
-        isServiceRunning = prefs.getBoolean(BatteryService.KEY_RUNNING, false);
+        if (boundService == null) {
+            showStickyLevel();
+            historyChart.setSourceFile(new File(getFilesDir(), BatteryService.HISTORY_FILE));
+            loadSessions();
+        }
+        isServiceRunning = StateSnapshot.get(this).isRunning();
         updateButtonText();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        unregisterReceiver(batteryInfoReceiver);
-        saveSettings();
+        configHandler.removeCallbacks(commitConfig);
+        commitConfig();
+    }
+
+    // The service ignores rules that don't parse; say so next to the field.
+    private void validateAlertRules() {
+        try {
+            AlertRule.parseAll(alertRulesEdit.getText().toString(), AlertEngine.DEFAULT_COOLDOWN);
+            alertRulesLayout.setError(null);
+        } catch (IllegalArgumentException e) {
+            alertRulesLayout.setError(getString(R.string.alert_rules_invalid, e.getMessage()));
+        }
     }
 
-    private void saveAlertTexts() {
-        saveSettings();
+    // The seek bar runs from CPU_BUDGET_STEP_MS up in steps of the same.
+    private int cpuBudgetMs() {
+        return (cpuBudgetSeekBar.getProgress() + 1) * CPU_BUDGET_STEP_MS;
     }
 
-    private void saveSettings() {
-        SharedPreferences prefs = getSharedPreferences(BatteryService.PREFS_NAME, MODE_PRIVATE);
-        prefs.edit()
-            .putString("alert_normal_text", alertNormalEdit.getText().toString())
-            .putString("alert_urgent_text", alertUrgentEdit.getText().toString())
-            .putString("alert_critical_text", alertCriticalEdit.getText().toString())
-            .putInt("urgent_offset", urgentOffsetSeekBar.getProgress())
-            .putInt("critical_offset", criticalOffsetSeekBar.getProgress())
-            .putString("uri_normal", uriNormal)
-            .putString("uri_urgent", uriUrgent)
-            .putString("uri_critical", uriCritical)
-            .apply();
+    private void scheduleConfigCommit() {
+        configHandler.removeCallbacks(commitConfig);
+        configHandler.postDelayed(commitConfig, CONFIG_QUIET_MS);
     }
 
-    private void saveAudioUris() {
-        SharedPreferences prefs = getSharedPreferences(BatteryService.PREFS_NAME, MODE_PRIVATE);
-        prefs.edit()
-            .putString("uri_normal", uriNormal)
-            .putString("uri_urgent", uriUrgent)
-            .putString("uri_critical", uriCritical)
-            .apply();
+    private ConfigSnapshot readConfigFromUi(long version) {
+        return new ConfigSnapshot(version,
+                thresholdSeekBar.getProgress(),
+                volumeSeekBar.getProgress(),
+                urgentOffsetSeekBar.getProgress(),
+                criticalOffsetSeekBar.getProgress(),
+                alertNormalEdit.getText().toString(),
+                alertUrgentEdit.getText().toString(),
+                alertCriticalEdit.getText().toString(),
+                customTtsUrlEdit.getText().toString(),
+                uriNormal, uriUrgent, uriCritical,
+                cpuBudgetMs(),
+                telemetryUrlEdit.getText().toString(),
+                alertRulesEdit.getText().toString(),
+                hiResSwitch.isChecked());
+    }
+
+    /** Persists the current UI state once and sends only the changed fields to a running service. */
+    private void commitConfig() {
+        ConfigSnapshot next = readConfigFromUi(committedConfig.version + 1);
+        int changed = next.diff(committedConfig);
+        if (changed == 0) {
+            return;
+        }
+        ConfigStore.save(this, next, changed);
+        committedConfig = next;
+        configCommits++;
+        if (boundService != null) {
+            boundService.pushConfig(next);
+        } else if (isServiceRunning && (!SamplingJobService.isScheduled(this)
+                || (changed & (ConfigSnapshot.FIELDS_ENGINE | ConfigSnapshot.FIELD_HIRES_TELEMETRY)) != 0)) {
+            // Polls pick up other changes themselves; a new threshold is re-checked in the foreground
+            // now, and high-resolution sampling needs the service.
+            Intent serviceIntent = new Intent(this, BatteryService.class);
+            ConfigStore.putExtras(serviceIntent, next, changed);
+            startService(serviceIntent);
+        }
     }
 
     private void updateButtonText() {
@@ -325,46 +614,30 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void updateService() {
-        saveSettings();
-        Intent serviceIntent = new Intent(this, BatteryService.class);
-        serviceIntent.putExtra("threshold", thresholdSeekBar.getProgress());
-        serviceIntent.putExtra("volume", volumeSeekBar.getProgress());
-        serviceIntent.putExtra("urgent_offset", urgentOffsetSeekBar.getProgress());
-        serviceIntent.putExtra("critical_offset", criticalOffsetSeekBar.getProgress());
-        serviceIntent.putExtra("alert_normal", alertNormalEdit.getText().toString());
-        serviceIntent.putExtra("alert_urgent", alertUrgentEdit.getText().toString());
-        serviceIntent.putExtra("alert_critical", alertCriticalEdit.getText().toString());
-        serviceIntent.putExtra("custom_tts_url", customTtsUrlEdit.getText().toString());
-        serviceIntent.putExtra("uri_normal", uriNormal);
-        serviceIntent.putExtra("uri_urgent", uriUrgent);
-        serviceIntent.putExtra("uri_critical", uriCritical);
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(serviceIntent);
-        } else {
-            startService(serviceIntent);
-        }
-    }
-
     private void toggleService() {
-        saveSettings();
+        configHandler.removeCallbacks(commitConfig);
+        commitConfig();
         Intent serviceIntent = new Intent(this, BatteryService.class);
-        serviceIntent.putExtra("threshold", thresholdSeekBar.getProgress());
-        serviceIntent.putExtra("volume", volumeSeekBar.getProgress());
-        serviceIntent.putExtra("urgent_offset", urgentOffsetSeekBar.getProgress());
-        serviceIntent.putExtra("critical_offset", criticalOffsetSeekBar.getProgress());
-        serviceIntent.putExtra("alert_normal", alertNormalEdit.getText().toString());
-        serviceIntent.putExtra("alert_urgent", alertUrgentEdit.getText().toString());
-        serviceIntent.putExtra("alert_critical", alertCriticalEdit.getText().toString());
-        serviceIntent.putExtra("uri_normal", uriNormal);
-        serviceIntent.putExtra("uri_urgent", uriUrgent);
-        serviceIntent.putExtra("uri_critical", uriCritical);
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(serviceIntent);
+        if (isServiceRunning) {
+            if (boundService != null) {
+                boundService.removeStateListener(stateListener);
+                boundService = null;
+            }
+            stopService(serviceIntent);
+            SamplingJobService.cancel(this);
+            if (StateSnapshot.get(this).setRunning(false)) {
+                StatusSurfaces.onChanged(this, true);
+            }
+            isServiceRunning = false;
         } else {
-            startService(serviceIntent);
+            ConfigStore.putExtras(serviceIntent, committedConfig, ConfigSnapshot.FIELD_ALL);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                startForegroundService(serviceIntent);
+            } else {
+                startService(serviceIntent);
+            }
+            isServiceRunning = true;
         }
+        updateButtonText();
     }
 }
@@ -0,0 +1,49 @@
+package com.example.batteryalert;
+
+/**
+ * Immutable view of what BatteryService currently knows, published to bound
+ * clients after each processed sample.
+ */
+public final class MonitorState {
+
+    public final int levelPct;
+    public final boolean charging;
+    public final int tier;
+    /** Predicted time the alert threshold is crossed, or -1 if unknown. */
+    public final long predictedCrossingMs;
+    /** Predicted times the urgent and critical levels are crossed, or -1 if unknown. */
+    public final long predictedUrgentMs;
+    public final long predictedCriticalMs;
+    /** Time of the last alert, or 0 if none has fired. */
+    public final long lastAlertTimeMs;
+    public final long sampleTimeMs;
+
+    public MonitorState(int levelPct, boolean charging, int tier, long predictedCrossingMs,
+                        long predictedUrgentMs, long predictedCriticalMs, long lastAlertTimeMs,
+                        long sampleTimeMs) {
+        this.levelPct = levelPct;
+        this.charging = charging;
+        this.tier = tier;
+        this.predictedCrossingMs = predictedCrossingMs;
+        this.predictedUrgentMs = predictedUrgentMs;
+        this.predictedCriticalMs = predictedCriticalMs;
+        this.lastAlertTimeMs = lastAlertTimeMs;
+        this.sampleTimeMs = sampleTimeMs;
+    }
+
+    /** The first of the predicted crossings still after {@code nowMs}, or -1 if none is. */
+    public long nextCrossingMs(long nowMs) {
+        return nextCrossing(nowMs, predictedCrossingMs, predictedUrgentMs, predictedCriticalMs);
+    }
+
+    // Lower levels are crossed later, so the first one ahead is the next.
+    static long nextCrossing(long nowMs, long crossingMs, long urgentMs, long criticalMs) {
+        if (crossingMs > nowMs) {
+            return crossingMs;
+        }
+        if (urgentMs > nowMs) {
+            return urgentMs;
+        }
+        return criticalMs > nowMs ? criticalMs : -1;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.batteryalert;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms for the monitor's own work. Recording is
+ * lock-free and allocation-free so it can sit on the broadcast and audio paths.
+ */
+public final class MonitorStats {
+
+    public static final int BROADCASTS = 0;
+    public static final int SAMPLES = 1;
+    public static final int ALERTS = 2;
+    public static final int CONFIG_UPDATES = 3;
+    public static final int SAMPLES_DEFERRED = 4;
+    public static final int MODE_TRANSITIONS = 5;
+    public static final int TELEMETRY_BATCHES = 6;
+    public static final int TELEMETRY_FAILURES = 7;
+    private static final String[] COUNTER_NAMES = {
+            "broadcasts", "samples", "alerts", "config_updates", "samples_deferred", "mode_transitions",
+            "telemetry_batches", "telemetry_failures"};
+
+    public static final int LAT_DECISION = 0;
+    public static final int LAT_AUDIO_CLIP = 1;
+    public static final int LAT_AUDIO_TONE = 2;
+    public static final int LAT_AUDIO_MEDIA_PLAYER = 3;
+    public static final int LAT_AUDIO_TTS = 4;
+    public static final int LAT_TTS_INIT = 5;
+    private static final String[] HISTOGRAM_NAMES = {
+            "decision", "broadcast_to_audio_clip", "broadcast_to_audio_tone",
+            "broadcast_to_audio_media_player", "broadcast_to_audio_tts", "tts_init"};
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_NAMES.length);
+    private final LatencyHistogram[] histograms = new LatencyHistogram[HISTOGRAM_NAMES.length];
+
+    public MonitorStats() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void increment(int counter) {
+        counters.incrementAndGet(counter);
+    }
+
+    public long get(int counter) {
+        return counters.get(counter);
+    }
+
+    public void recordNanos(int histogram, long nanos) {
+        histograms[histogram].recordNanos(nanos);
+    }
+
+    public LatencyHistogram histogram(int histogram) {
+        return histograms[histogram];
+    }
+
+    public void dump(PrintWriter pw) {
+        for (int i = 0; i < COUNTER_NAMES.length; i++) {
+            pw.print("  ");
+            pw.print(COUNTER_NAMES[i]);
+            pw.print(": ");
+            pw.println(counters.get(i));
+        }
+        pw.println("  latency (us): count mean p50 p90 p99 max");
+        for (int i = 0; i < HISTOGRAM_NAMES.length; i++) {
+            LatencyHistogram h = histograms[i];
+            pw.print("  ");
+            pw.print(HISTOGRAM_NAMES[i]);
+            pw.print(": ");
+            pw.print(h.getCount());
+            pw.print(' ');
+            pw.print(h.getMeanMicros());
+            pw.print(' ');
+            pw.print(h.percentileMicros(50));
+            pw.print(' ');
+            pw.print(h.percentileMicros(90));
+            pw.print(' ');
+            pw.print(h.percentileMicros(99));
+            pw.print(' ');
+            pw.println(h.getMaxMicros());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.batteryalert;
+
+import android.content.Intent;
+import android.os.Build;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Quick Settings tile mirroring {@link StateSnapshot}. Declared as an active
+ * tile, so the system binds it only when {@link StatusSurfaces} requests a
+ * refresh or the shade is opened with no state cached, instead of every time
+ * the shade opens. Tapping opens the app.
+ */
+@RequiresApi(Build.VERSION_CODES.N)
+public class MonitorTileService extends TileService {
+
+    @Override
+    public void onStartListening() {
+        Tile tile = getQsTile();
+        if (tile == null) {
+            return;
+        }
+        StateSnapshot snapshot = StateSnapshot.get(this);
+        MonitorState state = snapshot.getState();
+        String level = StatusSurfaces.levelText(this, StatusSurfaces.level(this, snapshot, state));
+        String status = StatusSurfaces.statusText(this, snapshot, state);
+        tile.setState(snapshot.isRunning() ? Tile.STATE_ACTIVE : Tile.STATE_INACTIVE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            tile.setLabel(level);
+            tile.setSubtitle(status);
+        } else {
+            tile.setLabel(getString(R.string.surface_tile_label, level, status));
+        }
+        tile.updateTile();
+    }
+
+    @Override
+    public void onClick() {
+        Intent intent = new Intent(this, MainActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivityAndCollapse(intent);
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.batteryalert;
+
+import java.io.PrintWriter;
+
+/**
+ * Scales the monitor's own work to how close the battery is to an alert and
+ * keeps it within a CPU budget. Modes:
+ * <ul>
+ * <li>{@link #MODE_DORMANT}: charging with no charging rules, or far above the
+ * highest discharging rule with no crossing predicted soon. Level-only updates are processed at most every
+ * few minutes, audio and TTS are released, the notification rarely refreshes.
+ * <li>{@link #MODE_NORMAL}: every distinct sample is processed; TTS may stay up
+ * but tier clips are not decoded.
+ * <li>{@link #MODE_HIGH_ALERT}: near the highest discharging rule, a crossing is
+ * imminent, or charging with charging rules, which may fire at any sample.
+ * Everything is processed and all alert audio is kept warm.
+ * </ul>
+ * Status and plug changes are never deferred. CPU time spent on broadcasts is
+ * charged against a token bucket refilled at the configured budget per hour;
+ * once it is exhausted the sampling intervals widen until half of it has
+ * refilled. Only the pipeline thread may call the mutators; {@link #dump} may
+ * see slightly stale values.
+ */
+public final class PowerGovernor {
+
+    public static final int MODE_DORMANT = 0;
+    public static final int MODE_NORMAL = 1;
+    public static final int MODE_HIGH_ALERT = 2;
+    private static final String[] MODE_NAMES = {"dormant", "normal", "high_alert"};
+
+    public static final long DEFAULT_CPU_BUDGET_MS_PER_HOUR = 3000;
+
+    // Distance above the threshold, in percent, at which the modes change. Leaving
+    // a busier mode needs another HYSTERESIS_PCT so a hovering level doesn't flap.
+    static final int HIGH_ALERT_MARGIN_PCT = 5;
+    static final int DORMANT_MARGIN_PCT = 15;
+    static final int HYSTERESIS_PCT = 2;
+    static final long HIGH_ALERT_LEAD_MS = 10 * 60000;
+    static final long DORMANT_LEAD_MS = 2 * 3600000;
+
+    private static final long[] SAMPLE_INTERVAL_MS = {5 * 60000, 0, 0};
+    private static final long[] THROTTLED_SAMPLE_INTERVAL_MS = {15 * 60000, 5 * 60000, 30000};
+    private static final long[] NOTIFY_INTERVAL_MS = {10 * 60000, 60000, 15000};
+
+    // The bucket holds this much of the hourly budget, so short bursts are absorbed.
+    private static final long BURST_MS = 10 * 60000;
+    private static final long HOUR_MS = 3600000;
+    private static final int TRANSITION_LOG = 16;
+
+    private volatile long budgetNanosPerHour = DEFAULT_CPU_BUDGET_MS_PER_HOUR * 1000000;
+    private volatile int mode = MODE_NORMAL;
+    private volatile boolean throttled = false;
+    private long tokensNanos = bucketCapacity();
+    private long lastRefillMs = -1;
+    private long lastProcessedMs = Long.MIN_VALUE / 2;
+
+    private long modeSinceMs = -1;
+    private final long[] timeInModeMs = new long[MODE_NAMES.length];
+    private long transitions = 0;
+    private long throttleEpisodes = 0;
+    private long chargedNanos = 0;
+    private final long[] transitionLog = new long[TRANSITION_LOG];
+
+    private long windowStartMs = -1;
+    private long windowEvents = 0;
+    private long lastWindowEvents = -1;
+
+    public void setBudgetMsPerHour(long budgetMs) {
+        budgetNanosPerHour = Math.max(1, budgetMs) * 1000000;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public boolean isThrottled() {
+        return throttled;
+    }
+
+    /** Tier clips are decoded and kept in memory. */
+    public boolean keepAudioWarm() {
+        return mode == MODE_HIGH_ALERT;
+    }
+
+    /** A TTS engine may stay alive. */
+    public boolean keepTts() {
+        return mode != MODE_DORMANT;
+    }
+
+    public long notificationIntervalMs() {
+        return NOTIFY_INTERVAL_MS[mode];
+    }
+
+    /**
+     * Re-evaluates the mode for a processed sample and returns it.
+     * {@code threshold} is the highest level a discharging rule covers, -1 if
+     * none; {@code chargingRules} whether any rule applies while charging.
+     * {@code predictedCrossingMs} is the next predicted crossing of any alert
+     * level, or -1 when there is no estimate.
+     */
+    public int update(long nowMs, int levelPct, boolean charging, int threshold, boolean chargingRules,
+                      long predictedCrossingMs) {
+        int target;
+        if (charging) {
+            // Power isn't scarce on the charger, so charging rules get everything.
+            target = chargingRules ? MODE_HIGH_ALERT : MODE_DORMANT;
+        } else {
+            int margin = levelPct - threshold;
+            long eta = predictedCrossingMs < 0 ? Long.MAX_VALUE : predictedCrossingMs - nowMs;
+            if (margin <= HIGH_ALERT_MARGIN_PCT || eta <= HIGH_ALERT_LEAD_MS) {
+                target = MODE_HIGH_ALERT;
+            } else if (margin > DORMANT_MARGIN_PCT && eta > DORMANT_LEAD_MS) {
+                target = MODE_DORMANT;
+            } else {
+                target = MODE_NORMAL;
+            }
+            if (mode == MODE_HIGH_ALERT && margin <= HIGH_ALERT_MARGIN_PCT + HYSTERESIS_PCT) {
+                target = MODE_HIGH_ALERT;
+            } else if (mode == MODE_NORMAL && target == MODE_DORMANT
+                    && margin <= DORMANT_MARGIN_PCT + HYSTERESIS_PCT) {
+                target = MODE_NORMAL;
+            }
+        }
+        if (modeSinceMs < 0) {
+            modeSinceMs = nowMs;
+        }
+        if (target != mode) {
+            timeInModeMs[mode] += Math.max(0, nowMs - modeSinceMs);
+            transitionLog[(int) (transitions % TRANSITION_LOG)] = nowMs << 4 | mode << 2 | target;
+            transitions++;
+            modeSinceMs = nowMs;
+            mode = target;
+        }
+        return target;
+    }
+
+    /**
+     * How long a sample received at {@code nowMs} should wait before it is
+     * processed; 0 to process it right away.
+     */
+    public long deferMs(long nowMs, boolean statusChanged) {
+        if (statusChanged) {
+            return 0;
+        }
+        long interval = (throttled ? THROTTLED_SAMPLE_INTERVAL_MS : SAMPLE_INTERVAL_MS)[mode];
+        return Math.max(0, lastProcessedMs + interval - nowMs);
+    }
+
+    /** Records that a sample was processed at {@code nowMs}. */
+    public void onProcessed(long nowMs) {
+        lastProcessedMs = nowMs;
+    }
+
+    /** Lets the next sample through without waiting, e.g. after the threshold moved. */
+    public void expedite() {
+        lastProcessedMs = Long.MIN_VALUE / 2;
+    }
+
+    /** Charges {@code cpuNanos} of work done for one broadcast or sample. */
+    public void charge(long nowMs, long cpuNanos) {
+        refill(nowMs);
+        // Bounded below so a storm can't keep the governor throttled for hours afterwards.
+        tokensNanos = Math.max(-bucketCapacity(), tokensNanos - cpuNanos);
+        chargedNanos += cpuNanos;
+        if (!throttled && tokensNanos <= 0) {
+            throttled = true;
+            throttleEpisodes++;
+        } else if (throttled && tokensNanos >= bucketCapacity() / 2) {
+            throttled = false;
+        }
+
+        if (windowStartMs < 0 || nowMs - windowStartMs >= HOUR_MS || nowMs < windowStartMs) {
+            lastWindowEvents = windowStartMs < 0 ? -1 : windowEvents;
+            windowStartMs = nowMs;
+            windowEvents = 0;
+        }
+        windowEvents++;
+    }
+
+    private void refill(long nowMs) {
+        if (lastRefillMs >= 0 && nowMs > lastRefillMs) {
+            long add = (nowMs - lastRefillMs) * (budgetNanosPerHour / HOUR_MS);
+            tokensNanos = Math.min(bucketCapacity(), tokensNanos + add);
+        }
+        lastRefillMs = nowMs;
+    }
+
+    private long bucketCapacity() {
+        return budgetNanosPerHour / HOUR_MS * BURST_MS;
+    }
+
+    public void dump(PrintWriter pw, long nowMs) {
+        int current = mode;
+        pw.print("  governor_mode: ");
+        pw.print(MODE_NAMES[current]);
+        pw.println(throttled ? " (throttled)" : "");
+        pw.print("  governor_budget_ms_per_hour: ");
+        pw.println(budgetNanosPerHour / 1000000);
+        pw.print("  governor_tokens_ms: ");
+        pw.println(tokensNanos / 1000000);
+        pw.print("  governor_charged_cpu_ms: ");
+        pw.println(chargedNanos / 1000000);
+        pw.print("  governor_throttle_episodes: ");
+        pw.println(throttleEpisodes);
+        pw.print("  governor_events_last_hour: ");
+        pw.println(lastWindowEvents);
+        pw.print("  governor_time_in_mode_s:");
+        for (int i = 0; i < MODE_NAMES.length; i++) {
+            long t = timeInModeMs[i];
+            if (i == current && modeSinceMs >= 0) {
+                t += Math.max(0, nowMs - modeSinceMs);
+            }
+            pw.print(' ');
+            pw.print(MODE_NAMES[i]);
+            pw.print('=');
+            pw.print(t / 1000);
+        }
+        pw.println();
+        long n = transitions;
+        pw.print("  governor_transitions: ");
+        pw.println(n);
+        for (long i = Math.max(0, n - TRANSITION_LOG); i < n; i++) {
+            long e = transitionLog[(int) (i % TRANSITION_LOG)];
+            pw.print("    ");
+            pw.print(Math.max(0, nowMs - (e >>> 4)) / 1000);
+            pw.print("s ago: ");
+            pw.print(MODE_NAMES[(int) (e >> 2) & 3]);
+            pw.print(" -> ");
+            pw.println(MODE_NAMES[(int) e & 3]);
+        }
+    }
+}
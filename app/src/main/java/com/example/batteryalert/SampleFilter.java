@@ -0,0 +1,44 @@
+package com.example.batteryalert;
+
+/**
+ * Drops battery samples whose (level, scale, status, plugged) tuple matches the
+ * previous one. {@code ACTION_BATTERY_CHANGED} also fires on voltage and
+ * temperature changes, and those broadcasts don't change any alert decision.
+ * Not thread-safe; the counters may be read from any thread.
+ */
+public final class SampleFilter {
+
+    private long lastKey;
+    private boolean primed = false;
+    private volatile long dropped = 0;
+    private volatile long processed = 0;
+
+    /** Returns true if the sample differs from the previous one and should be processed. */
+    public boolean accept(int level, int scale, int status, int plugged) {
+        long key = (level & 0xFFFFL) << 48
+                | (scale & 0xFFFFL) << 32
+                | (status & 0xFFFFL) << 16
+                | (plugged & 0xFFFFL);
+        if (primed && key == lastKey) {
+            dropped++;
+            return false;
+        }
+        lastKey = key;
+        primed = true;
+        processed++;
+        return true;
+    }
+
+    /** Forgets the previous sample so the next one is always processed. */
+    public void reset() {
+        primed = false;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+}
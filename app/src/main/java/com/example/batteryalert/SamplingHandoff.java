@@ -0,0 +1,88 @@
+package com.example.batteryalert;
+
+/**
+ * The decisions behind moving monitoring between BatteryService and
+ * SamplingJobService, kept free of Android types so the transitions can be
+ * replayed with a fake clock. BatteryService owns one instance per run and asks
+ * it after each sample whether to hand off; SamplingJobService uses the static
+ * methods on each poll. {@link SamplingSchedule} decides the timing; this class
+ * adds the conditions around it and the running-flag bookkeeping.
+ */
+public final class SamplingHandoff {
+
+    /** Whether the platform lets a job start the foreground service again. */
+    public interface Gate {
+        boolean canSchedule();
+    }
+
+    /** {@link #onPoll} result asking the job to start BatteryService. */
+    public static final long PROMOTE = -1;
+
+    static final int SDK_S = 31;
+
+    private final SamplingSchedule schedule;
+    private volatile boolean handedOff = false;
+
+    public SamplingHandoff(SamplingSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * Called by the service after each processed sample. Returns the delay to
+     * the first poll if monitoring should be handed to scheduled polls now, or
+     * -1 to stay in the foreground. {@code ratePerHour} is NaN without an estimate.
+     */
+    public long onForegroundSample(int levelPct, boolean charging, AlertTable table, double ratePerHour,
+                                   boolean hiResEnabled, Gate gate) {
+        int threshold = table.maxDischargingPct();
+        // Polls only watch for the level approaching the highest discharging rule,
+        // and can't keep up high-resolution sampling.
+        if (handedOff || hiResEnabled || (charging && table.hasChargingRules())
+                || !schedule.shouldDemote(levelPct, threshold, ratePerHour)
+                || !gate.canSchedule()) {
+            return -1;
+        }
+        handedOff = true;
+        return schedule.demote(levelPct, charging, threshold, ratePerHour);
+    }
+
+    public boolean isHandedOff() {
+        return handedOff;
+    }
+
+    /**
+     * Whether the service stopping ends monitoring. After a handoff the job
+     * carries on, so the running flag stays set.
+     */
+    public boolean stopEndsMonitoring() {
+        return !handedOff;
+    }
+
+    /**
+     * Called by the job for a poll whose level could be read, after restoring
+     * {@code schedule}. Returns the delay to the next poll, or {@link #PROMOTE}.
+     */
+    public static long onPoll(SamplingSchedule schedule, int levelPct, boolean charging, AlertTable table) {
+        long delay = schedule.onPoll(levelPct, charging, table.maxDischargingPct());
+        // Charging rules are evaluated by the foreground service only.
+        return charging && table.hasChargingRules() ? PROMOTE : delay;
+    }
+
+    /**
+     * Delay until the job polls again after {@code pollResult}: the poll's own
+     * delay, or the shortest interval if promotion was refused or the level
+     * couldn't be read ({@link #PROMOTE}).
+     */
+    public static long retryDelayMs(long pollResult) {
+        return pollResult < 0 ? SamplingSchedule.MIN_POLL_MS : pollResult;
+    }
+
+    /**
+     * From Android 12 a job may only start a foreground service if the app is
+     * exempt from battery optimizations, so without that monitoring stays in
+     * the foreground.
+     */
+    public static boolean canSchedule(int sdkInt, boolean ignoringBatteryOptimizations) {
+        return sdkInt < SDK_S || ignoringBatteryOptimizations;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.batteryalert;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Scheduled monitoring while the level is far above the threshold: polls the
+ * sticky battery intent from an inexact one-shot job, so the system can batch
+ * it with other work and defer it through Doze, and starts BatteryService again
+ * once {@link SamplingSchedule} says the threshold is getting close.
+ */
+public class SamplingJobService extends JobService {
+
+    private static final String TAG = "SamplingJobService";
+    private static final int JOB_ID = 1001;
+
+    static final String KEY_SCHEDULED = "sampling_scheduled";
+    private static final String KEY_LAST_POLL = "sampling_last_poll_ms";
+    private static final String KEY_LAST_LEVEL = "sampling_last_level";
+    private static final String KEY_RATE = "sampling_rate_per_hour";
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        SharedPreferences prefs = getSharedPreferences(BatteryService.PREFS_NAME, MODE_PRIVATE);
+        if (!prefs.getBoolean(KEY_SCHEDULED, false)) {
+            return false;
+        }
+        Intent sticky = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int level = sticky != null ? sticky.getIntExtra(BatteryManager.EXTRA_LEVEL, -1) : -1;
+        int scale = sticky != null ? sticky.getIntExtra(BatteryManager.EXTRA_SCALE, -1) : -1;
+        int status = sticky != null ? sticky.getIntExtra(BatteryManager.EXTRA_STATUS, -1) : -1;
+        if (level < 0 || scale <= 0) {
+            schedule(this, SamplingSchedule.MIN_POLL_MS);
+            return false;
+        }
+        boolean charging = status == AlertEngine.STATUS_CHARGING || status == AlertEngine.STATUS_FULL;
+        publish(level * 100 / scale, charging);
+
+        SamplingSchedule schedule = new SamplingSchedule(System::currentTimeMillis);
+        schedule.restore(prefs.getLong(KEY_LAST_POLL, -1), prefs.getInt(KEY_LAST_LEVEL, -1),
+                prefs.getFloat(KEY_RATE, 0));
+        AlertTable table = BatteryService.engineConfig(ConfigStore.loadFast(this)).table;
+        long delay = SamplingHandoff.onPoll(schedule, level * 100 / scale, charging, table);
+        if (delay == SamplingHandoff.PROMOTE && promote()) {
+            prefs.edit().putBoolean(KEY_SCHEDULED, false).apply();
+            return false;
+        }
+        save(prefs, schedule);
+        schedule(this, SamplingHandoff.retryDelayMs(delay));
+        return false;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return true;
+    }
+
+    // Keeps the widget and tile current while the service is stopped, at no extra wakeup.
+    private void publish(int levelPct, boolean charging) {
+        StateSnapshot snapshot = StateSnapshot.get(this);
+        MonitorState last = snapshot.getState();
+        MonitorState state = new MonitorState(levelPct, charging, AlertEngine.TIER_NONE, -1, -1, -1,
+                last != null ? last.lastAlertTimeMs : 0, System.currentTimeMillis());
+        if (snapshot.update(state)) {
+            StatusSurfaces.onChanged(this, false);
+        }
+    }
+
+    private boolean promote() {
+        Intent intent = new Intent(this, BatteryService.class);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                startForegroundService(intent);
+            } else {
+                startService(intent);
+            }
+            return true;
+        } catch (IllegalStateException e) {
+            // Background start refused; keep polling at the shortest interval.
+            Log.w(TAG, "Could not promote to foreground monitoring", e);
+            return false;
+        }
+    }
+
+    /**
+     * Whether BatteryService may hand off to polling; see
+     * {@link SamplingHandoff#canSchedule(int, boolean)}.
+     */
+    static boolean canSchedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return true;
+        }
+        PowerManager pm = context.getSystemService(PowerManager.class);
+        return SamplingHandoff.canSchedule(Build.VERSION.SDK_INT,
+                pm != null && pm.isIgnoringBatteryOptimizations(context.getPackageName()));
+    }
+
+    /** Hands monitoring over from BatteryService; the first poll runs after {@code delayMs}. */
+    static void start(Context context, SamplingSchedule schedule, long delayMs) {
+        SharedPreferences prefs = context.getSharedPreferences(BatteryService.PREFS_NAME, MODE_PRIVATE);
+        save(prefs, schedule);
+        prefs.edit().putBoolean(KEY_SCHEDULED, true).apply();
+        schedule(context, delayMs);
+    }
+
+    static void cancel(Context context) {
+        context.getSharedPreferences(BatteryService.PREFS_NAME, MODE_PRIVATE)
+                .edit().putBoolean(KEY_SCHEDULED, false).apply();
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler != null) {
+            scheduler.cancel(JOB_ID);
+        }
+    }
+
+    static boolean isScheduled(Context context) {
+        return context.getSharedPreferences(BatteryService.PREFS_NAME, MODE_PRIVATE)
+                .getBoolean(KEY_SCHEDULED, false);
+    }
+
+    private static void save(SharedPreferences prefs, SamplingSchedule schedule) {
+        prefs.edit()
+                .putLong(KEY_LAST_POLL, schedule.getLastPollMs())
+                .putInt(KEY_LAST_LEVEL, schedule.getLastLevel())
+                .putFloat(KEY_RATE, (float) schedule.getRatePerHour())
+                .apply();
+    }
+
+    // One-shot with a window of half the delay, so the system can coalesce it.
+    private static void schedule(Context context, long delayMs) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, SamplingJobService.class))
+                .setMinimumLatency(delayMs)
+                .setOverrideDeadline(delayMs + delayMs / 2)
+                .setPersisted(true)
+                .build());
+    }
+}
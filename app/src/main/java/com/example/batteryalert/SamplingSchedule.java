@@ -0,0 +1,119 @@
+package com.example.batteryalert;
+
+/**
+ * Decides when monitoring can drop from the foreground service to scheduled
+ * polling of the sticky battery intent, how long to wait between polls, and
+ * when to promote back. Scheduled mode is only used while the level is well
+ * above the threshold; polls are spaced to reach the promotion line at half
+ * the time the discharge rate (never assumed below {@link #FLOOR_RATE_PER_HOUR})
+ * would take. Time comes from the injected {@link Clock}. Not thread-safe.
+ */
+public final class SamplingSchedule {
+
+    public interface Clock {
+        long nowMs();
+    }
+
+    // Promote when the level is within PROMOTE_MARGIN_PCT of the threshold or a
+    // crossing is predicted within PROMOTE_LEAD_MS; demote only above
+    // DEMOTE_MARGIN_PCT so the two don't flap.
+    static final int PROMOTE_MARGIN_PCT = 20;
+    static final int DEMOTE_MARGIN_PCT = 25;
+    static final long PROMOTE_LEAD_MS = 3 * 3600000L;
+    // Heavy use; a slower measured rate is not trusted to space polls further apart.
+    static final double FLOOR_RATE_PER_HOUR = 15;
+    static final double SAFETY = 0.5;
+    // JobScheduler won't run periodic work more often than this anyway.
+    public static final long MIN_POLL_MS = 15 * 60000L;
+    public static final long MAX_POLL_MS = 2 * 3600000L;
+    // The foreground service runs at least this long before handing off.
+    public static final long MIN_FOREGROUND_MS = 10 * 60000L;
+    private static final double ALPHA = 0.5;
+
+    private final Clock clock;
+    // The service makes a new schedule each time it starts, so this is when it (re)started.
+    private final long foregroundSinceMs;
+    private long lastPollMs = -1;
+    private int lastLevel = -1;
+    private double ratePerHour = 0;
+
+    public SamplingSchedule(Clock clock) {
+        this.clock = clock;
+        this.foregroundSinceMs = clock.nowMs();
+    }
+
+    /**
+     * Whether the foreground service can stop and leave monitoring to polls.
+     * {@code ratePerHour} is NaN without an estimate.
+     */
+    public boolean shouldDemote(int levelPct, int threshold, double ratePerHour) {
+        if (clock.nowMs() - foregroundSinceMs < MIN_FOREGROUND_MS) {
+            return false;
+        }
+        if (levelPct - threshold <= DEMOTE_MARGIN_PCT) {
+            return false;
+        }
+        return hoursTo(levelPct, threshold, ratePerHour) * 3600000L > PROMOTE_LEAD_MS;
+    }
+
+    /** Starts scheduled mode from the foreground service's last sample; returns the first poll delay. */
+    public long demote(int levelPct, boolean charging, int threshold, double ratePerHour) {
+        lastPollMs = clock.nowMs();
+        lastLevel = levelPct;
+        this.ratePerHour = charging || Double.isNaN(ratePerHour) ? 0 : Math.max(0, ratePerHour);
+        return pollDelayMs(levelPct, threshold);
+    }
+
+    /** Restores scheduled-mode state persisted between polls. */
+    public void restore(long lastPollMs, int lastLevel, double ratePerHour) {
+        this.lastPollMs = lastPollMs;
+        this.lastLevel = lastLevel;
+        this.ratePerHour = ratePerHour;
+    }
+
+    /**
+     * Handles one poll; returns the delay to the next poll, or -1 to promote
+     * back to the foreground service.
+     */
+    public long onPoll(int levelPct, boolean charging, int threshold) {
+        long now = clock.nowMs();
+        if (charging) {
+            ratePerHour = 0;
+        } else if (lastPollMs >= 0 && now > lastPollMs && lastLevel >= 0 && levelPct < lastLevel) {
+            double rate = (lastLevel - levelPct) * 3600000.0 / (now - lastPollMs);
+            ratePerHour = ratePerHour <= 0 ? rate : ratePerHour + ALPHA * (rate - ratePerHour);
+        }
+        lastPollMs = now;
+        lastLevel = levelPct;
+        if (levelPct - threshold <= PROMOTE_MARGIN_PCT
+                || (!charging && hoursTo(levelPct, threshold, ratePerHour) * 3600000L <= PROMOTE_LEAD_MS)) {
+            return -1;
+        }
+        return pollDelayMs(levelPct, threshold);
+    }
+
+    private long pollDelayMs(int levelPct, int threshold) {
+        double rate = Math.max(FLOOR_RATE_PER_HOUR, ratePerHour);
+        double hours = (levelPct - threshold - PROMOTE_MARGIN_PCT) / rate * SAFETY;
+        return Math.max(MIN_POLL_MS, Math.min(MAX_POLL_MS, (long) (hours * 3600000L)));
+    }
+
+    private static double hoursTo(int levelPct, int threshold, double ratePerHour) {
+        if (Double.isNaN(ratePerHour) || ratePerHour <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return (levelPct - threshold) / ratePerHour;
+    }
+
+    public long getLastPollMs() {
+        return lastPollMs;
+    }
+
+    public int getLastLevel() {
+        return lastLevel;
+    }
+
+    public double getRatePerHour() {
+        return ratePerHour;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.batteryalert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Ring of closed charge and discharge sessions in a memory-mapped file, one
+ * fixed-size record each, so the last N can be read by index without touching
+ * the rest.
+ *
+ * <p>Layout: a 256-byte header ({@code magic, version, recordSize, capacity,
+ * count}, the reference capacity, and the open session's
+ * {@link SessionTracker} state with a checksum) followed by {@code capacity}
+ * records of {@link #RECORD_SIZE} bytes: start time (long), duration in
+ * seconds (int), flags, start and end level, samples (int), step rate mean
+ * and variance (float), seconds in each tier (4 ints) and the capacity
+ * estimate in mAh (int). As in {@link HistoryRing}, a record is written
+ * before {@code count} is advanced.
+ *
+ * <p>The reference capacity is the mean estimate of the first
+ * {@link #REFERENCE_SESSIONS} sessions that produced one; later estimates are
+ * compared against it for capacity fade.
+ */
+public final class SessionStore implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int RECORD_SIZE = 48;
+    static final int REFERENCE_SESSIONS = 5;
+
+    static final int MAGIC = 0x42534553; // "BSES"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 256;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_RECORD_SIZE = 6;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_COUNT = 16;
+    private static final int OFF_REF_COUNT = 24;
+    private static final int OFF_REF_MAH = 28;
+    private static final int OFF_OPEN = 64;
+    private static final int OFF_OPEN_CHECKSUM = OFF_OPEN + SessionTracker.STATE_WORDS * 8;
+
+    private static final int FLAG_CHARGING = 1;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private volatile long count;
+
+    private SessionStore(MappedByteBuffer buffer, int capacity, long count) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.count = count;
+    }
+
+    /** Opens the store at {@code file}, creating or resetting it if the header doesn't match. */
+    public static SessionStore open(File file, int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() != size;
+            if (fresh) {
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (!fresh && isValid(buf) && buf.getInt(OFF_CAPACITY) == capacity) {
+                return new SessionStore(buf, capacity, buf.getLong(OFF_COUNT));
+            }
+            for (int i = 0; i < HEADER_SIZE; i += 8) {
+                buf.putLong(i, 0);
+            }
+            buf.putInt(OFF_CAPACITY, capacity);
+            buf.putShort(OFF_RECORD_SIZE, (short) RECORD_SIZE);
+            buf.putShort(OFF_VERSION, VERSION);
+            buf.putInt(OFF_MAGIC, MAGIC);
+            return new SessionStore(buf, capacity, 0);
+        }
+    }
+
+    /** Maps an existing store read-only. Returns null if the file is missing or not a store. */
+    public static SessionStore openReadOnly(File file) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            int capacity = buf.getInt(OFF_CAPACITY);
+            if (!isValid(buf) || capacity <= 0
+                    || raf.length() != HEADER_SIZE + (long) capacity * RECORD_SIZE) {
+                return null;
+            }
+            return new SessionStore(buf, capacity, buf.getLong(OFF_COUNT));
+        }
+    }
+
+    private static boolean isValid(MappedByteBuffer buf) {
+        return buf.getInt(OFF_MAGIC) == MAGIC
+                && buf.getShort(OFF_VERSION) == VERSION
+                && buf.getShort(OFF_RECORD_SIZE) == RECORD_SIZE
+                && buf.getLong(OFF_COUNT) >= 0;
+    }
+
+    public void append(SessionTracker.Session s) {
+        long seq = count;
+        int off = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+        buffer.putLong(off, s.startMs);
+        buffer.putInt(off + 8, (int) Math.min(Integer.MAX_VALUE, s.durationMs() / 1000));
+        buffer.put(off + 12, (byte) (s.charging ? FLAG_CHARGING : 0));
+        buffer.put(off + 13, (byte) s.startLevel);
+        buffer.put(off + 14, (byte) s.endLevel);
+        buffer.put(off + 15, (byte) 0);
+        buffer.putInt(off + 16, s.samples);
+        buffer.putFloat(off + 20, s.rateMean);
+        buffer.putFloat(off + 24, s.rateVariance);
+        for (int i = 0; i < s.tierSeconds.length; i++) {
+            buffer.putInt(off + 28 + i * 4, s.tierSeconds[i]);
+        }
+        buffer.putInt(off + 44, s.capacityMah);
+        int refCount = buffer.getInt(OFF_REF_COUNT);
+        if (s.capacityMah > 0 && refCount < REFERENCE_SESSIONS) {
+            long sum = (long) buffer.getInt(OFF_REF_MAH) * refCount + s.capacityMah;
+            buffer.putInt(OFF_REF_MAH, (int) (sum / (refCount + 1)));
+            buffer.putInt(OFF_REF_COUNT, refCount + 1);
+        }
+        buffer.putLong(OFF_COUNT, seq + 1);
+        count = seq + 1;
+    }
+
+    public long firstSeq() {
+        return Math.max(0, count - capacity);
+    }
+
+    public long endSeq() {
+        return count;
+    }
+
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /** Reads session {@code seq}, which must be in {@code [firstSeq(), endSeq())}, into {@code into}. */
+    public void get(long seq, SessionTracker.Session into) {
+        int off = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+        into.startMs = buffer.getLong(off);
+        into.endMs = into.startMs + (buffer.getInt(off + 8) & 0xFFFFFFFFL) * 1000;
+        into.charging = (buffer.get(off + 12) & FLAG_CHARGING) != 0;
+        into.startLevel = buffer.get(off + 13);
+        into.endLevel = buffer.get(off + 14);
+        into.samples = buffer.getInt(off + 16);
+        into.rateMean = buffer.getFloat(off + 20);
+        into.rateVariance = buffer.getFloat(off + 24);
+        for (int i = 0; i < into.tierSeconds.length; i++) {
+            into.tierSeconds[i] = buffer.getInt(off + 28 + i * 4);
+        }
+        into.capacityMah = buffer.getInt(off + 44);
+    }
+
+    /** Mean capacity of the first sessions that had an estimate, or -1 before the first. */
+    public int referenceCapacityMah() {
+        return buffer.getInt(OFF_REF_COUNT) > 0 ? buffer.getInt(OFF_REF_MAH) : -1;
+    }
+
+    /** Stores the open session's state. Plain stores into the mapping; a torn write fails the checksum. */
+    public void saveOpen(long[] state) {
+        for (int i = 0; i < SessionTracker.STATE_WORDS; i++) {
+            buffer.putLong(OFF_OPEN + i * 8, state[i]);
+        }
+        buffer.putLong(OFF_OPEN_CHECKSUM, checksum());
+    }
+
+    /** Loads the state written by {@link #saveOpen}; false if there is none or it was torn. */
+    public boolean loadOpen(long[] state) {
+        if (buffer.getLong(OFF_OPEN_CHECKSUM) != checksum()) {
+            return false;
+        }
+        for (int i = 0; i < SessionTracker.STATE_WORDS; i++) {
+            state[i] = buffer.getLong(OFF_OPEN + i * 8);
+        }
+        return true;
+    }
+
+    private long checksum() {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int off = OFF_OPEN; off < OFF_OPEN_CHECKSUM; off += 8) {
+            h = (h ^ buffer.getLong(off)) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        return h;
+    }
+
+    @Override
+    public void close() {
+        if (!buffer.isReadOnly()) {
+            buffer.force();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.batteryalert;
+
+/**
+ * Splits the sample stream into charge and discharge sessions at plug and
+ * unplug boundaries, and keeps running aggregates for the open one: a Welford
+ * mean and variance of the rate between level steps, time spent in each alert
+ * tier, and the charge counter at both ends for a capacity estimate. Each
+ * sample is O(1) and allocation-free; no samples are kept.
+ *
+ * <p>Free of Android types. The open session can be exported to a fixed array
+ * of longs so it survives a restart (see {@link SessionStore#saveOpen}).
+ */
+public final class SessionTracker {
+
+    /** Passed for a charge counter the device doesn't report or that wasn't read. */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    public static final int STATE_WORDS = 17;
+
+    // Shorter sessions, e.g. a cable wiggle, are dropped rather than stored.
+    static final long MIN_SESSION_MS = 2 * 60000L;
+    // A longer silence (service stopped, or polling far above the threshold) ends the session,
+    // as does the wall clock stepping backwards.
+    static final long MAX_GAP_MS = 12 * 3600000L;
+    // At 1% level resolution a shorter span gives a capacity estimate too coarse to compare.
+    static final int MIN_CAPACITY_SPAN_PCT = 20;
+
+    /** A closed session, as stored by {@link SessionStore}. */
+    public static final class Session {
+        public long startMs;
+        public long endMs;
+        public boolean charging;
+        public int startLevel;
+        public int endLevel;
+        public int samples;
+        // Level change per hour between consecutive level steps, always positive.
+        public float rateMean;
+        public float rateVariance;
+        // Indexed by tier; index 0 is time with no tier active.
+        public final int[] tierSeconds = new int[AlertEngine.TIER_CRITICAL + 1];
+        // Full-charge capacity implied by the charge counter, or -1.
+        public int capacityMah = -1;
+
+        public long durationMs() {
+            return endMs - startMs;
+        }
+
+        /** Sample standard deviation of the step rate, or 0 with fewer than two steps. */
+        public double rateStdDev() {
+            return Math.sqrt(rateVariance);
+        }
+    }
+
+    private final Session closed = new Session();
+
+    private boolean open;
+    private boolean charging;
+    private long startMs;
+    private int startLevel;
+    private int startCounter;
+    private long lastMs;
+    private int lastLevel;
+    private int lastTier;
+    // Time and level of the last level change; stepMs is -1 until the first one.
+    private long stepMs;
+    private int stepLevel;
+    private long samples;
+    private long rateCount;
+    private double rateMean;
+    private double rateM2;
+    private final long[] tierMs = new long[AlertEngine.TIER_CRITICAL + 1];
+
+    /** Whether a sample with these values would close the open session or start one. */
+    public boolean isBoundary(long timeMs, boolean charging) {
+        return !open || charging != this.charging || timeMs - lastMs > MAX_GAP_MS || timeMs < lastMs;
+    }
+
+    /**
+     * Feeds one sample. {@code chargeCounterUah} is only used at a boundary and
+     * may be {@link #UNKNOWN} otherwise. Returns true when a session long enough
+     * to keep was closed; it is then available from {@link #closed()} until the
+     * next call.
+     */
+    public boolean onSample(long timeMs, int levelPct, boolean charging, int tier, int chargeCounterUah) {
+        boolean stored = false;
+        if (open && (timeMs - lastMs > MAX_GAP_MS || timeMs < lastMs)) {
+            // Nothing is known about the gap, and times across a clock step don't
+            // compare; end at the last sample seen.
+            stored = close(lastMs, lastLevel, UNKNOWN);
+        } else if (open && charging != this.charging) {
+            stored = close(timeMs, levelPct, chargeCounterUah);
+        }
+        if (!open) {
+            start(timeMs, levelPct, charging, chargeCounterUah);
+        } else {
+            tierMs[lastTier] += timeMs - lastMs;
+            if (levelPct != stepLevel) {
+                if (stepMs >= 0 && timeMs > stepMs) {
+                    double rate = Math.abs(levelPct - stepLevel) * 3600000.0 / (timeMs - stepMs);
+                    rateCount++;
+                    double delta = rate - rateMean;
+                    rateMean += delta / rateCount;
+                    rateM2 += delta * (rate - rateMean);
+                }
+                stepMs = timeMs;
+                stepLevel = levelPct;
+            }
+        }
+        samples++;
+        lastMs = timeMs;
+        lastLevel = levelPct;
+        lastTier = tier;
+        return stored;
+    }
+
+    private void start(long timeMs, int levelPct, boolean charging, int chargeCounterUah) {
+        open = true;
+        this.charging = charging;
+        startMs = timeMs;
+        startLevel = levelPct;
+        startCounter = chargeCounterUah;
+        // The session starts part way into a percent, so the first step is not a full one.
+        stepMs = -1;
+        stepLevel = levelPct;
+        samples = 0;
+        rateCount = 0;
+        rateMean = 0;
+        rateM2 = 0;
+        for (int i = 0; i < tierMs.length; i++) {
+            tierMs[i] = 0;
+        }
+        lastTier = AlertEngine.TIER_NONE;
+    }
+
+    private boolean close(long endMs, int endLevel, int endCounter) {
+        open = false;
+        if (endMs - startMs < MIN_SESSION_MS) {
+            return false;
+        }
+        tierMs[lastTier] += endMs - lastMs;
+        Session s = closed;
+        s.startMs = startMs;
+        s.endMs = endMs;
+        s.charging = charging;
+        s.startLevel = startLevel;
+        s.endLevel = endLevel;
+        s.samples = (int) Math.min(Integer.MAX_VALUE, samples);
+        s.rateMean = (float) rateMean;
+        s.rateVariance = rateCount > 1 ? (float) (rateM2 / (rateCount - 1)) : 0f;
+        for (int i = 0; i < tierMs.length; i++) {
+            s.tierSeconds[i] = (int) Math.min(Integer.MAX_VALUE, tierMs[i] / 1000);
+        }
+        int span = Math.abs(endLevel - startLevel);
+        if (startCounter > 0 && endCounter > 0 && span >= MIN_CAPACITY_SPAN_PCT) {
+            s.capacityMah = (int) (Math.abs((long) endCounter - startCounter) * 100 / span / 1000);
+        } else {
+            s.capacityMah = -1;
+        }
+        return true;
+    }
+
+    /** The session closed by the last {@link #onSample} that returned true. */
+    public Session closed() {
+        return closed;
+    }
+
+    /** Copies the open session into {@code out}, which must hold {@link #STATE_WORDS} longs. */
+    public void saveState(long[] out) {
+        out[0] = (open ? 1 : 0) | (charging ? 2 : 0);
+        out[1] = startMs;
+        out[2] = startLevel;
+        out[3] = startCounter;
+        out[4] = lastMs;
+        out[5] = lastLevel;
+        out[6] = lastTier;
+        out[7] = stepMs;
+        out[8] = stepLevel;
+        out[9] = samples;
+        out[10] = rateCount;
+        out[11] = Double.doubleToRawLongBits(rateMean);
+        out[12] = Double.doubleToRawLongBits(rateM2);
+        System.arraycopy(tierMs, 0, out, 13, tierMs.length);
+    }
+
+    /** Resumes the session saved by {@link #saveState}. */
+    public void restoreState(long[] in) {
+        open = (in[0] & 1) != 0;
+        charging = (in[0] & 2) != 0;
+        startMs = in[1];
+        startLevel = (int) in[2];
+        startCounter = (int) in[3];
+        lastMs = in[4];
+        lastLevel = (int) in[5];
+        lastTier = (int) in[6];
+        stepMs = in[7];
+        stepLevel = (int) in[8];
+        samples = in[9];
+        rateCount = in[10];
+        rateMean = Double.longBitsToDouble(in[11]);
+        rateM2 = Double.longBitsToDouble(in[12]);
+        System.arraycopy(in, 13, tierMs, 0, tierMs.length);
+        if (lastTier < 0 || lastTier >= tierMs.length) {
+            open = false;
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+}
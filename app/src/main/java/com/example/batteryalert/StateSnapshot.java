@@ -0,0 +1,142 @@
+package com.example.batteryalert;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * The small state the widget, the Quick Settings tile, MainActivity and
+ * BatteryStateProvider render from: whether monitoring is on, plus the last
+ * level, tier and predicted crossings the monitor saw. It lives in a 64-byte
+ * memory-mapped file, so it survives the process and is read with a few loads
+ * and no IPC; writers publish with plain stores and learn whether anything
+ * shown actually changed. Holds what used to be the {@code isServiceRunning}
+ * preference.
+ */
+final class StateSnapshot {
+
+    static final String FILE = "state.bin";
+    // The preference this replaces; read once to migrate.
+    private static final String LEGACY_KEY_RUNNING = "isServiceRunning";
+
+    static final int MAGIC = 0x42535453; // "BSTS"
+    static final short VERSION = 2;
+    private static final int SIZE = 64;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_RUNNING = 8;
+    private static final int OFF_CHARGING = 9;
+    private static final int OFF_TIER = 10;
+    private static final int OFF_LEVEL = 12;
+    private static final int OFF_ETA = 16;
+    private static final int OFF_SAMPLE_TIME = 24;
+    private static final int OFF_LAST_ALERT = 32;
+    private static final int OFF_URGENT_ETA = 40;
+    private static final int OFF_CRITICAL_ETA = 48;
+
+    private static StateSnapshot instance;
+
+    private final ByteBuffer buffer;
+
+    private StateSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** The process-wide snapshot, opened on first use. */
+    static synchronized StateSnapshot get(Context context) {
+        if (instance == null) {
+            instance = open(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private static StateSnapshot open(Context context) {
+        ByteBuffer buf;
+        boolean fresh;
+        try (RandomAccessFile raf = new RandomAccessFile(new File(context.getFilesDir(), FILE), "rw")) {
+            fresh = raf.length() != SIZE;
+            if (fresh) {
+                raf.setLength(0);
+                raf.setLength(SIZE);
+            }
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        } catch (IOException e) {
+            // Still usable for this process, just not persisted.
+            e.printStackTrace();
+            buf = ByteBuffer.allocate(SIZE);
+            fresh = true;
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (fresh || buf.getInt(OFF_MAGIC) != MAGIC || buf.getShort(OFF_VERSION) != VERSION) {
+            SharedPreferences prefs = context.getSharedPreferences(BatteryService.PREFS_NAME, Context.MODE_PRIVATE);
+            // An older layout keeps its running flag; otherwise it comes from the preference.
+            boolean running = buf.getInt(OFF_MAGIC) == MAGIC
+                    ? buf.get(OFF_RUNNING) != 0 : prefs.getBoolean(LEGACY_KEY_RUNNING, false);
+            buf.put(OFF_RUNNING, (byte) (running ? 1 : 0));
+            buf.put(OFF_CHARGING, (byte) 0);
+            buf.put(OFF_TIER, (byte) AlertEngine.TIER_NONE);
+            buf.putShort(OFF_LEVEL, (short) -1);
+            buf.putLong(OFF_ETA, -1);
+            buf.putLong(OFF_URGENT_ETA, -1);
+            buf.putLong(OFF_CRITICAL_ETA, -1);
+            buf.putLong(OFF_SAMPLE_TIME, 0);
+            buf.putLong(OFF_LAST_ALERT, 0);
+            buf.putShort(OFF_VERSION, VERSION);
+            buf.putInt(OFF_MAGIC, MAGIC);
+            prefs.edit().remove(LEGACY_KEY_RUNNING).apply();
+        }
+        return new StateSnapshot(buf);
+    }
+
+    synchronized boolean isRunning() {
+        return buffer.get(OFF_RUNNING) != 0;
+    }
+
+    /** Returns true if the flag changed. */
+    synchronized boolean setRunning(boolean running) {
+        if (isRunning() == running) {
+            return false;
+        }
+        buffer.put(OFF_RUNNING, (byte) (running ? 1 : 0));
+        return true;
+    }
+
+    /**
+     * Records a processed sample. Returns true if something a widget or tile
+     * shows changed: level, charging, tier, or a crossing time by a minute or more.
+     */
+    synchronized boolean update(MonitorState state) {
+        boolean changed = buffer.getShort(OFF_LEVEL) != state.levelPct
+                || (buffer.get(OFF_CHARGING) != 0) != state.charging
+                || buffer.get(OFF_TIER) != state.tier
+                || buffer.getLong(OFF_ETA) / 60000 != state.predictedCrossingMs / 60000
+                || buffer.getLong(OFF_URGENT_ETA) / 60000 != state.predictedUrgentMs / 60000
+                || buffer.getLong(OFF_CRITICAL_ETA) / 60000 != state.predictedCriticalMs / 60000;
+        buffer.putShort(OFF_LEVEL, (short) state.levelPct);
+        buffer.put(OFF_CHARGING, (byte) (state.charging ? 1 : 0));
+        buffer.put(OFF_TIER, (byte) state.tier);
+        buffer.putLong(OFF_ETA, state.predictedCrossingMs);
+        buffer.putLong(OFF_URGENT_ETA, state.predictedUrgentMs);
+        buffer.putLong(OFF_CRITICAL_ETA, state.predictedCriticalMs);
+        buffer.putLong(OFF_SAMPLE_TIME, state.sampleTimeMs);
+        buffer.putLong(OFF_LAST_ALERT, state.lastAlertTimeMs);
+        return changed;
+    }
+
+    /** The last recorded sample, or null before the first. */
+    synchronized MonitorState getState() {
+        int level = buffer.getShort(OFF_LEVEL);
+        if (level < 0) {
+            return null;
+        }
+        return new MonitorState(level, buffer.get(OFF_CHARGING) != 0, buffer.get(OFF_TIER),
+                buffer.getLong(OFF_ETA), buffer.getLong(OFF_URGENT_ETA), buffer.getLong(OFF_CRITICAL_ETA),
+                buffer.getLong(OFF_LAST_ALERT), buffer.getLong(OFF_SAMPLE_TIME));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.batteryalert;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.widget.TextView;
+import androidx.appcompat.app.AppCompatActivity;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/** Shows the same counters as {@code dumpsys activity service BatteryService}, refreshed every second. */
+public class StatsActivity extends AppCompatActivity {
+
+    static final String EXTRA_CONFIG_COMMITS = "config_commits";
+
+    private static final long REFRESH_MS = 1000;
+
+    private TextView statsText;
+    private BatteryService boundService;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refresh = this::refresh;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            boundService = ((BatteryService.LocalBinder) service).getService();
+            refresh();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            boundService = null;
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_stats);
+        setTitle(R.string.stats_title);
+        statsText = findViewById(R.id.statsText);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, BatteryService.class), serviceConnection, 0);
+        refresh();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        handler.removeCallbacks(refresh);
+        unbindService(serviceConnection);
+        boundService = null;
+    }
+
+    private void refresh() {
+        handler.removeCallbacks(refresh);
+        StringWriter out = new StringWriter();
+        PrintWriter pw = new PrintWriter(out);
+        if (boundService != null) {
+            boundService.dumpStats(pw);
+        } else {
+            pw.println(getString(R.string.stats_not_running));
+        }
+        pw.print("MainActivity config_commits: ");
+        pw.println(getIntent().getLongExtra(EXTRA_CONFIG_COMMITS, 0));
+        pw.flush();
+        statsText.setText(out.toString());
+        handler.postDelayed(refresh, REFRESH_MS);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.batteryalert;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.service.quicksettings.TileService;
+
+/**
+ * Pushes {@link StateSnapshot} changes to the home-screen widget and the Quick
+ * Settings tile. Neither surface polls or listens for battery broadcasts: writers
+ * call {@link #onChanged} after the snapshot reports a visible change, and pushes
+ * are coalesced to at most one per {@link #MIN_INTERVAL_MS}. The delay runs on
+ * the uptime clock, so a pending push never wakes the device; start and stop go
+ * out at once.
+ */
+final class StatusSurfaces {
+
+    static final long MIN_INTERVAL_MS = 60000;
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final Runnable push = StatusSurfaces::push;
+    private static Context appContext;
+    private static boolean pending;
+    private static long lastPushMs = -MIN_INTERVAL_MS;
+
+    private StatusSurfaces() {
+    }
+
+    /** Schedules a push; {@code immediate} skips the rate cap, for start and stop. */
+    static synchronized void onChanged(Context context, boolean immediate) {
+        appContext = context.getApplicationContext();
+        if (pending) {
+            if (!immediate) {
+                return;
+            }
+            handler.removeCallbacks(push);
+        }
+        long wait = immediate ? 0 : lastPushMs + MIN_INTERVAL_MS - SystemClock.elapsedRealtime();
+        pending = true;
+        handler.postDelayed(push, Math.max(0, wait));
+    }
+
+    private static void push() {
+        Context context;
+        synchronized (StatusSurfaces.class) {
+            pending = false;
+            lastPushMs = SystemClock.elapsedRealtime();
+            context = appContext;
+        }
+        BatteryWidgetProvider.updateAll(context);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            TileService.requestListeningState(context, new ComponentName(context, MonitorTileService.class));
+        }
+    }
+
+    /**
+     * Level to show: the monitor's last sample while it runs, otherwise the
+     * fuel gauge's current reading, which needs no receiver. -1 if unknown.
+     */
+    static int level(Context context, StateSnapshot snapshot, MonitorState state) {
+        if (snapshot.isRunning() && state != null) {
+            return state.levelPct;
+        }
+        BatteryManager bm = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
+        int level = bm != null ? bm.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) : -1;
+        return level > 0 && level <= 100 ? level : -1;
+    }
+
+    static String levelText(Context context, int level) {
+        return level >= 0 ? context.getString(R.string.surface_level, level)
+                : context.getString(R.string.surface_level_unknown);
+    }
+
+    static String statusText(Context context, StateSnapshot snapshot, MonitorState state) {
+        if (!snapshot.isRunning()) {
+            return context.getString(R.string.surface_off);
+        }
+        if (state == null) {
+            return context.getString(R.string.service_active);
+        }
+        if (state.charging) {
+            return context.getString(R.string.surface_charging);
+        }
+        switch (state.tier) {
+            case AlertEngine.TIER_CRITICAL:
+                return context.getString(R.string.tier_critical);
+            case AlertEngine.TIER_URGENT:
+                return context.getString(R.string.tier_urgent);
+            case AlertEngine.TIER_NORMAL:
+                return context.getString(R.string.tier_normal);
+        }
+        long now = System.currentTimeMillis();
+        long next = state.nextCrossingMs(now);
+        if (next >= 0) {
+            return context.getString(R.string.surface_eta, BatteryService.formatDuration(next - now));
+        }
+        return context.getString(R.string.surface_monitoring);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.batteryalert;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bounded on-disk queue of telemetry events waiting to be uploaded.
+ *
+ * <p>Layout: a 64-byte header ({@code magic, version, recordSize, capacity,
+ * count, acked, dropped}) followed by {@code capacity} records of
+ * {@link #RECORD_SIZE} bytes: time in ms (long), duration in seconds (int),
+ * type, level, end level and tier (bytes). Events get consecutive sequence
+ * numbers; {@code [acked, count)} is pending. When the queue is full the oldest
+ * pending event is dropped. Like {@link HistoryRing}, writes are plain stores
+ * into the mapping with no per-write sync. Thread-safe.
+ */
+public final class TelemetryQueue implements Closeable {
+
+    public interface Visitor {
+        void onEvent(long seq, int type, long timeMs, int durationSec, int level, int endLevel, int tier);
+    }
+
+    public static final int TYPE_ALERT = 1;
+    public static final int TYPE_DISCHARGE = 2;
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int RECORD_SIZE = 24;
+
+    static final int MAGIC = 0x42544C51; // "BTLQ"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_RECORD_SIZE = 6;
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_COUNT = 16;
+    private static final int OFF_ACKED = 24;
+    private static final int OFF_DROPPED = 32;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private long count;
+    private long acked;
+    private long dropped;
+
+    private TelemetryQueue(MappedByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.count = buffer.getLong(OFF_COUNT);
+        this.acked = buffer.getLong(OFF_ACKED);
+        this.dropped = buffer.getLong(OFF_DROPPED);
+    }
+
+    /** Opens the queue at {@code file}, creating or resetting it if the header doesn't match. */
+    public static TelemetryQueue open(File file, int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            boolean fresh = raf.length() != size;
+            if (fresh) {
+                raf.setLength(0);
+                raf.setLength(size);
+            }
+            MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            if (fresh
+                    || buf.getInt(OFF_MAGIC) != MAGIC
+                    || buf.getShort(OFF_VERSION) != VERSION
+                    || buf.getShort(OFF_RECORD_SIZE) != RECORD_SIZE
+                    || buf.getInt(OFF_CAPACITY) != capacity
+                    || buf.getLong(OFF_ACKED) < 0
+                    || buf.getLong(OFF_COUNT) < buf.getLong(OFF_ACKED)) {
+                buf.putLong(OFF_COUNT, 0);
+                buf.putLong(OFF_ACKED, 0);
+                buf.putLong(OFF_DROPPED, 0);
+                buf.putInt(OFF_CAPACITY, capacity);
+                buf.putShort(OFF_RECORD_SIZE, (short) RECORD_SIZE);
+                buf.putShort(OFF_VERSION, VERSION);
+                buf.putInt(OFF_MAGIC, MAGIC);
+            }
+            return new TelemetryQueue(buf, capacity);
+        }
+    }
+
+    public synchronized void appendAlert(long timeMs, int levelPct, int tier) {
+        append(TYPE_ALERT, timeMs, 0, levelPct, levelPct, tier);
+    }
+
+    /** A discharge session from {@code startMs}/{@code startLevel} until charging began. */
+    public synchronized void appendDischarge(long startMs, long endMs, int startLevel, int endLevel) {
+        int seconds = (int) Math.max(0, Math.min(Integer.MAX_VALUE, (endMs - startMs) / 1000));
+        append(TYPE_DISCHARGE, startMs, seconds, startLevel, endLevel, AlertEngine.TIER_NONE);
+    }
+
+    private void append(int type, long timeMs, int durationSec, int level, int endLevel, int tier) {
+        if (count - acked == capacity) {
+            acked++;
+            dropped++;
+            buffer.putLong(OFF_ACKED, acked);
+            buffer.putLong(OFF_DROPPED, dropped);
+        }
+        int off = HEADER_SIZE + (int) (count % capacity) * RECORD_SIZE;
+        buffer.putLong(off, timeMs);
+        buffer.putInt(off + 8, durationSec);
+        buffer.put(off + 12, (byte) type);
+        buffer.put(off + 13, (byte) level);
+        buffer.put(off + 14, (byte) endLevel);
+        buffer.put(off + 15, (byte) tier);
+        count++;
+        buffer.putLong(OFF_COUNT, count);
+    }
+
+    public synchronized long pendingCount() {
+        return count - acked;
+    }
+
+    public synchronized long firstPendingSeq() {
+        return acked;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /** Time of the oldest pending event, or -1 if none is pending. */
+    public synchronized long oldestPendingTimeMs() {
+        if (count == acked) {
+            return -1;
+        }
+        return buffer.getLong(HEADER_SIZE + (int) (acked % capacity) * RECORD_SIZE);
+    }
+
+    /** Visits up to {@code max} pending events starting at {@code fromSeq}; returns how many. */
+    public synchronized int read(long fromSeq, int max, Visitor visitor) {
+        long seq = Math.max(fromSeq, acked);
+        long end = Math.min(count, seq + max);
+        int n = 0;
+        for (; seq < end; seq++, n++) {
+            int off = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+            visitor.onEvent(seq, buffer.get(off + 12), buffer.getLong(off), buffer.getInt(off + 8),
+                    buffer.get(off + 13), buffer.get(off + 14), buffer.get(off + 15));
+        }
+        return n;
+    }
+
+    /** Marks every event before {@code endSeq} as delivered. */
+    public synchronized void ack(long endSeq) {
+        long next = Math.min(count, endSeq);
+        if (next > acked) {
+            acked = next;
+            buffer.putLong(OFF_ACKED, acked);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        buffer.force();
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.batteryalert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Ships {@link TelemetryQueue} events to a collector in gzip batches instead of
+ * one request per event. A batch goes out when the device is charging on an
+ * unmetered network, or sooner once {@link #MIN_BATCH_EVENTS} are pending or
+ * the oldest is {@link #MAX_AGE_MS} old. Failures back off exponentially.
+ *
+ * <p>A failed batch is retried with exactly the same events and the same
+ * {@code Idempotency-Key} ({@code installId:firstSeq:count}), and every event
+ * carries its sequence number, so the collector can drop duplicates when a
+ * request succeeded but the response was lost.
+ *
+ * <p>Body (before gzip): magic {@code "BTL1"}, a varint-length UTF-8 install
+ * id, varints for the first sequence number, the event count and the time of
+ * the first event in ms, then per event: varint {@code type | tier << 2},
+ * zigzag varint delta of time in seconds and varint level; discharge events add
+ * varints for the duration in seconds and the end level.
+ */
+public final class TelemetryUploader implements TelemetryQueue.Visitor {
+
+    /** Sends one batch; returns the HTTP status code. */
+    public interface Transport {
+        int post(byte[] body, int length, String idempotencyKey) throws IOException;
+    }
+
+    /** POSTs gzip batches to a fixed URL. */
+    public static final class HttpTransport implements Transport {
+        private static final int TIMEOUT_MS = 15000;
+        private final URL url;
+
+        public HttpTransport(String url) throws IOException {
+            this.url = new URL(url);
+        }
+
+        @Override
+        public int post(byte[] body, int length, String idempotencyKey) throws IOException {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            try {
+                conn.setRequestMethod("POST");
+                conn.setConnectTimeout(TIMEOUT_MS);
+                conn.setReadTimeout(TIMEOUT_MS);
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(length);
+                conn.setRequestProperty("Content-Type", "application/vnd.batteryalert.telemetry");
+                conn.setRequestProperty("Content-Encoding", "gzip");
+                conn.setRequestProperty("Idempotency-Key", idempotencyKey);
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(body, 0, length);
+                }
+                return conn.getResponseCode();
+            } finally {
+                conn.disconnect();
+            }
+        }
+    }
+
+    public static final int MIN_BATCH_EVENTS = 50;
+    public static final long MAX_AGE_MS = 6 * 60 * 60 * 1000L;
+    static final int MAX_BATCH_EVENTS = 500;
+    static final long BASE_BACKOFF_MS = 60 * 1000L;
+    static final long MAX_BACKOFF_MS = 6 * 60 * 60 * 1000L;
+
+    static final byte[] MAGIC = {'B', 'T', 'L', '1'};
+    // Worst cases for one encoded event and for the header minus the install id.
+    private static final int MAX_EVENT_BYTES = 32;
+    private static final int HEADER_BYTES = 40;
+
+    private final TelemetryQueue queue;
+    private final byte[] installId;
+    private volatile Transport transport;
+
+    // Events are encoded from the start of raw, the header into its tail.
+    private final byte[] raw;
+    private final ByteArrayOutputStream gzipped = new ByteArrayOutputStream(4096);
+    private int pos;
+    private long prevTimeSec;
+    private long batchFirstSeq;
+    private long batchFirstTimeMs;
+    private int batchCount;
+
+    private boolean inFlight = false;
+    // Events of a failed batch, retried as-is so its idempotency key stays stable.
+    private long retryFirstSeq = -1;
+    private int retryCount = 0;
+    private int failures = 0;
+    private long nextAttemptMs = 0;
+    private long batchesSent = 0;
+    private long eventsSent = 0;
+    private long bytesSent = 0;
+    private long eventsRejected = 0;
+    private long lastSuccessMs = 0;
+    private int lastStatus = 0;
+
+    public TelemetryUploader(TelemetryQueue queue, String installId, Transport transport) {
+        this.queue = queue;
+        this.installId = installId.getBytes(StandardCharsets.UTF_8);
+        this.raw = new byte[MAX_BATCH_EVENTS * MAX_EVENT_BYTES + HEADER_BYTES + this.installId.length];
+        this.transport = transport;
+    }
+
+    /** Replaces the endpoint; null disables uploading (events keep queueing). */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /** Whether a batch should be sent now; if so, call {@link #uploadOnce} off the calling thread. */
+    public synchronized boolean shouldUpload(long nowMs, boolean charging, boolean unmetered) {
+        if (transport == null || inFlight || nowMs < nextAttemptMs) {
+            return false;
+        }
+        long pending = queue.pendingCount();
+        if (pending == 0) {
+            return false;
+        }
+        if (charging && unmetered) {
+            return true;
+        }
+        long oldest = queue.oldestPendingTimeMs();
+        return pending >= MIN_BATCH_EVENTS || (oldest >= 0 && nowMs - oldest >= MAX_AGE_MS);
+    }
+
+    /**
+     * Sends one batch and acknowledges it in the queue on a 2xx response.
+     * Blocks on the network; returns whether the batch was delivered.
+     */
+    public boolean uploadOnce(long nowMs) {
+        Transport t = transport;
+        long fromSeq;
+        int max;
+        synchronized (this) {
+            if (t == null || inFlight) {
+                return false;
+            }
+            inFlight = true;
+            fromSeq = queue.firstPendingSeq();
+            max = MAX_BATCH_EVENTS;
+            if (retryFirstSeq >= 0) {
+                // Events the queue dropped since the failure are skipped.
+                max = (int) Math.max(0, retryFirstSeq + retryCount - Math.max(retryFirstSeq, fromSeq));
+                fromSeq = Math.max(retryFirstSeq, fromSeq);
+            }
+        }
+        int status = 0;
+        boolean acked = false;
+        try {
+            if (encode(fromSeq, max) > 0) {
+                status = t.post(gzipped.toByteArray(), gzipped.size(),
+                        new String(installId, StandardCharsets.UTF_8) + ":" + batchFirstSeq + ":" + batchCount);
+                // Other 4xx responses will fail the same way on retry; drop the batch rather than wedge the queue.
+                acked = status / 100 == 2 || (status / 100 == 4 && status != 408 && status != 429);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                inFlight = false;
+                lastStatus = status;
+                if (batchCount == 0) {
+                    retryFirstSeq = -1;
+                } else if (acked) {
+                    queue.ack(batchFirstSeq + batchCount);
+                    retryFirstSeq = -1;
+                    failures = 0;
+                    nextAttemptMs = 0;
+                    if (status / 100 == 2) {
+                        batchesSent++;
+                        eventsSent += batchCount;
+                        bytesSent += gzipped.size();
+                        lastSuccessMs = nowMs;
+                    } else {
+                        eventsRejected += batchCount;
+                    }
+                } else {
+                    retryFirstSeq = batchFirstSeq;
+                    retryCount = batchCount;
+                    failures++;
+                    nextAttemptMs = nowMs + backoffMs(failures);
+                }
+            }
+        }
+        return acked && status / 100 == 2;
+    }
+
+    static long backoffMs(int failures) {
+        int shift = Math.min(failures - 1, 20);
+        return Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << shift);
+    }
+
+    /** Encodes up to {@code max} events from {@code fromSeq} into {@link #gzipped}; returns the count. */
+    private int encode(long fromSeq, int max) throws IOException {
+        batchFirstSeq = -1;
+        batchFirstTimeMs = 0;
+        pos = 0;
+        batchCount = max > 0 ? queue.read(fromSeq, max, this) : 0;
+        if (batchCount == 0) {
+            return 0;
+        }
+        int bodyLength = pos;
+        byte[] body = raw;
+        int headerStart = raw.length - HEADER_BYTES - installId.length;
+        pos = headerStart;
+        System.arraycopy(MAGIC, 0, raw, pos, MAGIC.length);
+        pos += MAGIC.length;
+        putVarint(installId.length);
+        System.arraycopy(installId, 0, raw, pos, installId.length);
+        pos += installId.length;
+        putVarint(batchFirstSeq);
+        putVarint(batchCount);
+        putVarint(batchFirstTimeMs);
+
+        gzipped.reset();
+        try (GZIPOutputStream gz = new GZIPOutputStream(gzipped)) {
+            gz.write(raw, headerStart, pos - headerStart);
+            gz.write(body, 0, bodyLength);
+        }
+        return batchCount;
+    }
+
+    @Override
+    public void onEvent(long seq, int type, long timeMs, int durationSec, int level, int endLevel, int tier) {
+        long timeSec = timeMs / 1000;
+        if (batchFirstSeq < 0) {
+            batchFirstSeq = seq;
+            batchFirstTimeMs = Math.max(0, timeMs);
+            prevTimeSec = timeSec;
+        }
+        putVarint((type & 0x3) | (tier & 0x3) << 2);
+        putVarint(HistoryExporter.zigzag(timeSec - prevTimeSec));
+        putVarint(level & 0xFF);
+        if (type == TelemetryQueue.TYPE_DISCHARGE) {
+            putVarint(durationSec);
+            putVarint(endLevel & 0xFF);
+        }
+        prevTimeSec = timeSec;
+    }
+
+    private void putVarint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            raw[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        raw[pos++] = (byte) v;
+    }
+
+    public synchronized void dump(PrintWriter pw, long nowMs) {
+        pw.print("  telemetry_pending: ");
+        pw.println(queue.pendingCount());
+        pw.print("  telemetry_dropped: ");
+        pw.println(queue.getDropped());
+        pw.print("  telemetry_batches_sent: ");
+        pw.println(batchesSent);
+        pw.print("  telemetry_events_sent: ");
+        pw.println(eventsSent);
+        pw.print("  telemetry_bytes_sent: ");
+        pw.println(bytesSent);
+        pw.print("  telemetry_events_rejected: ");
+        pw.println(eventsRejected);
+        pw.print("  telemetry_failures: ");
+        pw.println(failures);
+        pw.print("  telemetry_last_status: ");
+        pw.println(lastStatus);
+        pw.print("  telemetry_last_success_s_ago: ");
+        pw.println(lastSuccessMs == 0 ? -1 : (nowMs - lastSuccessMs) / 1000);
+        pw.print("  telemetry_next_attempt_s: ");
+        pw.println(nextAttemptMs <= nowMs ? 0 : (nextAttemptMs - nowMs) / 1000);
+    }
+}
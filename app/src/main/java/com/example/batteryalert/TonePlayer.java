@@ -0,0 +1,68 @@
+package com.example.batteryalert;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+
+/**
+ * Plays the {@link ToneSynth} tier tones from static-mode {@link AudioTrack}s
+ * filled once up front, so there is no decoder or TTS engine in the path.
+ * Used as the last-resort alert when no clip or TTS voice is available.
+ */
+final class TonePlayer {
+
+    private final AudioTrack[] tracks = new AudioTrack[AlertClipPool.TIER_COUNT];
+
+    TonePlayer() {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_ALARM)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+        AudioFormat format = new AudioFormat.Builder()
+                .setSampleRate(ToneSynth.SAMPLE_RATE)
+                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                .build();
+        for (int i = 0; i < tracks.length; i++) {
+            short[] pcm = ToneSynth.render(AlertEngine.TIER_NORMAL + i, ToneSynth.SAMPLE_RATE);
+            try {
+                AudioTrack track = new AudioTrack(attributes, format, pcm.length * 2,
+                        AudioTrack.MODE_STATIC, AudioManager.AUDIO_SESSION_ID_GENERATE);
+                track.write(pcm, 0, pcm.length);
+                tracks[i] = track;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    boolean play(int tier, float volume) {
+        AudioTrack track = tracks[tier - 1];
+        if (track == null || track.getState() != AudioTrack.STATE_INITIALIZED) {
+            return false;
+        }
+        track.stop();
+        track.reloadStaticData();
+        track.setVolume(volume);
+        track.play();
+        return true;
+    }
+
+    void stop() {
+        for (AudioTrack track : tracks) {
+            if (track != null && track.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
+                track.stop();
+            }
+        }
+    }
+
+    void release() {
+        for (int i = 0; i < tracks.length; i++) {
+            if (tracks[i] != null) {
+                tracks[i].release();
+                tracks[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.batteryalert;
+
+/**
+ * Renders the built-in per-tier alert tones as 16-bit mono PCM. Each tier has
+ * its own pitch and cadence: normal is two low beeps, urgent three faster
+ * higher beeps, critical a rapid two-tone warble. Pure Java, no Android types.
+ */
+public final class ToneSynth {
+
+    public static final int SAMPLE_RATE = 22050;
+
+    private static final double AMPLITUDE = 0.8 * Short.MAX_VALUE;
+    private static final int FADE_MS = 5;
+
+    // {frequency Hz, beep ms, gap ms, beep count, alternate frequency Hz or 0}
+    private static final int[][] PATTERNS = {
+            {880, 180, 120, 2, 0},
+            {1200, 110, 70, 3, 0},
+            {1500, 80, 30, 6, 1000},
+    };
+
+    private ToneSynth() {
+    }
+
+    public static short[] render(int tier, int sampleRate) {
+        if (tier < AlertEngine.TIER_NORMAL || tier > AlertEngine.TIER_CRITICAL) {
+            throw new IllegalArgumentException("tier " + tier);
+        }
+        int[] p = PATTERNS[tier - 1];
+        int beep = p[1] * sampleRate / 1000;
+        int gap = p[2] * sampleRate / 1000;
+        int count = p[3];
+        short[] out = new short[count * beep + (count - 1) * gap];
+        int fade = Math.min(FADE_MS * sampleRate / 1000, beep / 2);
+        for (int b = 0; b < count; b++) {
+            int freq = p[4] != 0 && (b & 1) == 1 ? p[4] : p[0];
+            double step = 2 * Math.PI * freq / sampleRate;
+            int start = b * (beep + gap);
+            for (int i = 0; i < beep; i++) {
+                double env = 1.0;
+                if (i < fade) {
+                    env = i / (double) fade;
+                } else if (i >= beep - fade) {
+                    env = (beep - 1 - i) / (double) fade;
+                }
+                out[start + i] = (short) Math.round(Math.sin(step * i) * AMPLITUDE * env);
+            }
+        }
+        return out;
+    }
+}
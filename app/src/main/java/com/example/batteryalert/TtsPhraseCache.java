@@ -0,0 +1,159 @@
+package com.example.batteryalert;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+/**
+ * Renders the per-tier alert phrases to WAV files ahead of time and keeps them
+ * loaded in an {@link AlertClipPool}, so an alert does not wait on live synthesis.
+ * Files are named by a hash of text, locale and engine; anything else in the
+ * cache directory is deleted on each {@link #update}. Runs on the audio thread.
+ */
+final class TtsPhraseCache extends UtteranceProgressListener {
+
+    /** Utterance id used for live (uncached) alert speech. */
+    static final String LIVE_UTTERANCE_ID = "battery_alert";
+
+    private final File dir;
+    private final Handler audioHandler;
+    private final AlertClipPool clipPool;
+    private final String[] keys = new String[AlertClipPool.TIER_COUNT];
+    private volatile Runnable liveSpeechListener;
+
+    TtsPhraseCache(File dir, Handler audioHandler, AlertClipPool clipPool) {
+        this.dir = dir;
+        this.audioHandler = audioHandler;
+        this.clipPool = clipPool;
+    }
+
+    /** Makes sure {@code phrases[tier - 1]} are rendered and loaded for the given engine. */
+    void update(TextToSpeech tts, Locale locale, String[] phrases) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        String engine = tts.getDefaultEngine();
+        for (int i = 0; i < keys.length; i++) {
+            String text = phrases[i];
+            String key = text == null || text.trim().isEmpty() ? null : keyFor(text, locale, engine);
+            if (key != null && key.equals(keys[i])) {
+                continue;
+            }
+            keys[i] = key;
+            clipPool.unload(AlertClipPool.PHRASE_BASE + i);
+            if (key == null) {
+                continue;
+            }
+            File wav = new File(dir, key + ".wav");
+            if (wav.isFile()) {
+                clipPool.load(AlertClipPool.PHRASE_BASE + i, wav.getPath());
+            } else {
+                tts.synthesizeToFile(text, new Bundle(), new File(dir, key + ".tmp"), key);
+            }
+        }
+        evictStale();
+    }
+
+    /** Reloads rendered phrases that were dropped from the pool by {@link AlertClipPool#unloadAll}. */
+    void reload() {
+        for (int i = 0; i < keys.length; i++) {
+            int slot = AlertClipPool.PHRASE_BASE + i;
+            if (keys[i] != null && !clipPool.isLoaded(slot)) {
+                File wav = new File(dir, keys[i] + ".wav");
+                if (wav.isFile()) {
+                    clipPool.load(slot, wav.getPath());
+                }
+            }
+        }
+    }
+
+    /** Runs {@code listener} on a binder thread whenever live alert speech starts playing. */
+    void setLiveSpeechListener(Runnable listener) {
+        liveSpeechListener = listener;
+    }
+
+    boolean play(int tier, float volume) {
+        return clipPool.play(AlertClipPool.PHRASE_BASE + tier - 1, volume);
+    }
+
+    private void evictStale() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot < 0 || !isCurrentKey(name.substring(0, dot))) {
+                f.delete();
+            }
+        }
+    }
+
+    private boolean isCurrentKey(String key) {
+        for (String k : keys) {
+            if (key.equals(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onRendered(String key) {
+        File tmp = new File(dir, key + ".tmp");
+        File wav = new File(dir, key + ".wav");
+        for (int i = 0; i < keys.length; i++) {
+            if (key.equals(keys[i])) {
+                if (tmp.renameTo(wav)) {
+                    clipPool.load(AlertClipPool.PHRASE_BASE + i, wav.getPath());
+                }
+                return;
+            }
+        }
+        tmp.delete();
+    }
+
+    static String keyFor(String text, Locale locale, String engine) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update((text + '\u0000' + locale + '\u0000' + engine).getBytes(StandardCharsets.UTF_8));
+            byte[] digest = md.digest();
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString((text + locale + engine).hashCode());
+        }
+    }
+
+    @Override
+    public void onStart(String utteranceId) {
+        Runnable listener = liveSpeechListener;
+        if (listener != null && LIVE_UTTERANCE_ID.equals(utteranceId)) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public void onDone(String utteranceId) {
+        if (LIVE_UTTERANCE_ID.equals(utteranceId)) {
+            return;
+        }
+        audioHandler.post(() -> onRendered(utteranceId));
+    }
+
+    @Override
+    public void onError(String utteranceId) {
+        if (LIVE_UTTERANCE_ID.equals(utteranceId)) {
+            return;
+        }
+        audioHandler.post(() -> new File(dir, utteranceId + ".tmp").delete());
+    }
+}
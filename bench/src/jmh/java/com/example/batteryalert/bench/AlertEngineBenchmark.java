@@ -0,0 +1,67 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import com.example.batteryalert.SampleFilter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Per-sample cost of the decision path, the broadcast pre-filter and a config swap. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlertEngineBenchmark {
+
+    private static final int MASK = 4095;
+
+    private final AlertEngine.Config configA = new AlertEngine.Config(20, 5, 10, AlertEngine.DEFAULT_COOLDOWN);
+    private final AlertEngine.Config configB = new AlertEngine.Config(30, 10, 20, AlertEngine.DEFAULT_COOLDOWN);
+    private AlertEngine engine;
+    private SampleFilter filter;
+    private Trace trace;
+    private int i;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        engine = new AlertEngine(configA);
+        filter = new SampleFilter();
+        trace = TraceGenerator.plugFlapping(20, MASK + 1, 120000, 7);
+    }
+
+    @Benchmark
+    public int decision() {
+        int k = i++ & MASK;
+        time += 1000;
+        return engine.onSample(trace.level[k], Trace.SCALE, trace.status[k], time);
+    }
+
+    @Benchmark
+    public boolean preFilter() {
+        int k = i++ & MASK;
+        return filter.accept(trace.level[k], Trace.SCALE, trace.status[k], trace.plugged[k]);
+    }
+
+    @Benchmark
+    public int filterThenDecision() {
+        int k = i++ & MASK;
+        time += 1000;
+        if (!filter.accept(trace.level[k], Trace.SCALE, trace.status[k], trace.plugged[k])) {
+            return -1;
+        }
+        return engine.onSample(trace.level[k], Trace.SCALE, trace.status[k], time);
+    }
+
+    @Benchmark
+    public int configSwapThenDecision() {
+        int k = i++ & MASK;
+        engine.setConfig((k & 1) == 0 ? configA : configB);
+        time += 1000;
+        return engine.onSample(trace.level[k], Trace.SCALE, trace.status[k], time);
+    }
+}
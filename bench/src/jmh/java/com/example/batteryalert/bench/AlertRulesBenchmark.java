@@ -0,0 +1,81 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import com.example.batteryalert.AlertRule;
+import com.example.batteryalert.AlertTable;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-sample decision cost as the number of extra rules grows: the compiled
+ * {@link AlertTable} used by {@link AlertEngine} against scanning the rules
+ * for the highest matching tier.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlertRulesBenchmark {
+
+    private static final int MASK = 4095;
+
+    @Param({"0", "8", "64", "512"})
+    public int extraRules;
+
+    private AlertEngine engine;
+    private AlertRule[] rules;
+    private Trace trace;
+    private int i;
+    private long time;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        AlertRule[] extra = new AlertRule[extraRules];
+        for (int k = 0; k < extra.length; k++) {
+            int from = random.nextInt(100);
+            int to = from + random.nextInt(101 - from);
+            boolean quiet = random.nextBoolean();
+            extra[k] = new AlertRule(1 + random.nextInt(3), from, to, random.nextBoolean(),
+                    1000 * (1 + random.nextInt(600)), quiet ? 22 * 60 : AlertRule.NO_QUIET,
+                    quiet ? 7 * 60 : AlertRule.NO_QUIET, random.nextBoolean());
+        }
+        AlertEngine.Config config = new AlertEngine.Config(20, 5, 10, AlertEngine.DEFAULT_COOLDOWN,
+                extra, TimeZone.getTimeZone("UTC"));
+        engine = new AlertEngine(config);
+        rules = AlertTable.thresholdRules(20, 5, 10, AlertEngine.DEFAULT_COOLDOWN, extra);
+        trace = TraceGenerator.plugFlapping(50, MASK + 1, 120000, 7);
+    }
+
+    @Benchmark
+    public int compiledTable() {
+        int k = i++ & MASK;
+        time += 1000;
+        return engine.onSample(trace.level[k], Trace.SCALE, trace.status[k], time);
+    }
+
+    /** What evaluating the rules directly would cost: highest matching tier, first rule wins ties. */
+    @Benchmark
+    public int linearScan() {
+        int k = i++ & MASK;
+        int pct = trace.level[k];
+        boolean charging = Trace.isCharging(trace.status[k]);
+        int best = -1;
+        for (int r = 0; r < rules.length; r++) {
+            AlertRule rule = rules[r];
+            if (rule.charging == charging && pct >= rule.fromPct && pct <= rule.toPct
+                    && (best < 0 || rule.tier > rules[best].tier)) {
+                best = r;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.HiResBlock;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Cost of filling and encoding one {@link HiResBlock}, and of decoding it whole or one column. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HiResCodecBenchmark {
+
+    private HiResTrace trace;
+    private final HiResBlock block = new HiResBlock();
+    private final byte[] encoded = new byte[HiResBlock.BLOCK_SIZE];
+    private final long[][] scratch = HiResBlock.newScratch();
+    private final long[] column = new long[scratch[0].length];
+    private int start;
+    private long sink;
+
+    @Setup
+    public void setUp() {
+        trace = HiResTrace.generate(3, 3);
+        fill();
+        block.encode(encoded, 0);
+    }
+
+    private int fill() {
+        int i = start;
+        while (block.add(trace.time[i], trace.level[i], trace.current[i], trace.voltage[i],
+                trace.temperature[i], trace.counter[i])) {
+            i = i + 1 < trace.size ? i + 1 : 0;
+        }
+        start = i;
+        return block.rows();
+    }
+
+    @Benchmark
+    public byte[] fillAndEncode() {
+        fill();
+        block.encode(encoded, 0);
+        return encoded;
+    }
+
+    @Benchmark
+    public long decodeAll() {
+        return HiResBlock.decode(encoded, 0, scratch, (t, lvl, cur, mv, temp, uah) -> sink += temp);
+    }
+
+    @Benchmark
+    public long[] decodeTemperature() {
+        HiResBlock.decodeColumn(encoded, 0, HiResBlock.COL_TEMPERATURE, column);
+        return column;
+    }
+}
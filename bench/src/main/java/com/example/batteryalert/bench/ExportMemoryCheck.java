@@ -0,0 +1,86 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.HistoryExporter;
+import com.example.batteryalert.HistoryRing;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exports full history rings of growing size and checks that the bytes the
+ * exporting thread allocates stay the same whatever the history length.
+ * Exits with status 1 if they grow by more than {@link #TOLERANCE_BYTES}.
+ */
+public final class ExportMemoryCheck {
+
+    private static final int[] CAPACITIES = {1024, 16384, 262144, 1048576};
+    private static final long TOLERANCE_BYTES = 16 * 1024;
+
+    /** Counts bytes and discards them. */
+    private static final class CountingSink extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    private ExportMemoryCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        boolean ok = true;
+        System.out.printf("%-12s %10s %12s %12s%n", "format", "records", "out_bytes", "alloc_bytes");
+        for (int format = HistoryExporter.FORMAT_CSV; format <= HistoryExporter.FORMAT_BINARY; format++) {
+            for (int gzip = 0; gzip < 2; gzip++) {
+                String name = (format == HistoryExporter.FORMAT_CSV ? "csv" : "binary") + (gzip == 1 ? "+gz" : "");
+                long min = Long.MAX_VALUE, max = 0;
+                for (int capacity : CAPACITIES) {
+                    File file = File.createTempFile("history", ".bin");
+                    file.deleteOnExit();
+                    try (HistoryRing ring = HistoryRing.open(file, capacity, 0)) {
+                        fill(ring, capacity);
+                        // Warm up so class loading and JIT don't count.
+                        HistoryExporter.export(ring, new CountingSink(), format, gzip == 1);
+                        CountingSink sink = new CountingSink();
+                        long before = threads.getThreadAllocatedBytes(tid);
+                        long n = HistoryExporter.export(ring, sink, format, gzip == 1);
+                        long alloc = threads.getThreadAllocatedBytes(tid) - before;
+                        min = Math.min(min, alloc);
+                        max = Math.max(max, alloc);
+                        System.out.printf("%-12s %10d %12d %12d%n", name, n, sink.bytes, alloc);
+                    }
+                    file.delete();
+                }
+                if (max - min > TOLERANCE_BYTES) {
+                    System.out.printf("%s: allocation grew by %d bytes with history length%n", name, max - min);
+                    ok = false;
+                }
+            }
+        }
+        System.out.println(ok ? "OK: export memory is independent of history length" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void fill(HistoryRing ring, int records) {
+        int level = 100;
+        for (int i = 0; i < records; i++) {
+            if (i % 30 == 0) {
+                level = level <= 5 ? 100 : level - 1;
+            }
+            ring.append(i * 60000L, level, 3, 0, i % 997 == 0 ? 1 : 0, 250 + i % 20, 3900 - level);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.PowerGovernor;
+
+/**
+ * Drives {@link PowerGovernor} with a fake clock and checks its two mechanisms:
+ * <ul>
+ * <li>modes: the level bands and crossing leads pick the documented mode, a
+ * level hovering on a band edge doesn't flap, and charging goes dormant;
+ * <li>rules: bands follow the highest discharging rule, not the threshold, and
+ * charging rules keep the governor on high alert with audio warm and nothing
+ * deferred;
+ * <li>CPU budget: steady load under the budget never throttles, load over it
+ * throttles after the burst allowance is spent and recovers once half has
+ * refilled, a single huge charge can't hold it throttled for long, and with
+ * throttled sampling a day of over-budget load costs no more than the budget.
+ * </ul>
+ * Exits with status 1 on any failure.
+ */
+public final class GovernorCheck {
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long MS = 1000000;
+    private static final int THRESHOLD = 20;
+    private static final long BUDGET_MS_PER_HOUR = 3000;
+    // The bucket holds ten minutes of budget and refills at the hourly rate.
+    private static final long BUCKET_MS = BUDGET_MS_PER_HOUR / 6;
+    private static final double REFILL_MS_PER_S = BUDGET_MS_PER_HOUR / 3600.0;
+
+    private static int failures;
+
+    private GovernorCheck() {
+    }
+
+    public static void main(String[] args) {
+        modes();
+        rules();
+        budget();
+        System.out.printf("failures %d%n", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void modes() {
+        PowerGovernor g = new PowerGovernor();
+        long t = 0;
+        expectMode(g, t += MINUTE, 50, false, -1, PowerGovernor.MODE_DORMANT, "far above");
+        expectMode(g, t += MINUTE, 35, false, -1, PowerGovernor.MODE_NORMAL, "15% above");
+        for (int i = 0; i < 20; i++) {
+            expectMode(g, t += MINUTE, 35 + (i & 1) * 2, false, -1, PowerGovernor.MODE_NORMAL,
+                    "hovering at the dormant edge");
+        }
+        expectMode(g, t += MINUTE, 38, false, -1, PowerGovernor.MODE_DORMANT, "past the dormant hysteresis");
+        expectMode(g, t += MINUTE, 38, false, t + 90 * MINUTE, PowerGovernor.MODE_NORMAL,
+                "crossing within two hours");
+        expectMode(g, t += MINUTE, 38, false, t + 5 * MINUTE, PowerGovernor.MODE_HIGH_ALERT,
+                "crossing within ten minutes");
+        expectMode(g, t += MINUTE, 25, false, -1, PowerGovernor.MODE_HIGH_ALERT, "5% above");
+        for (int i = 0; i < 20; i++) {
+            expectMode(g, t += MINUTE, 25 + (i & 1) * 2, false, -1, PowerGovernor.MODE_HIGH_ALERT,
+                    "hovering at the high-alert edge");
+        }
+        expectMode(g, t += MINUTE, 28, false, -1, PowerGovernor.MODE_NORMAL, "past the high-alert hysteresis");
+        expectMode(g, t += MINUTE, 15, false, -1, PowerGovernor.MODE_HIGH_ALERT, "below the threshold");
+        expectMode(g, t += MINUTE, 15, true, -1, PowerGovernor.MODE_DORMANT, "charging");
+        if (g.keepAudioWarm() || g.keepTts()) {
+            fail("dormant keeps audio");
+        }
+        System.out.println("modes checked");
+    }
+
+    private static void expectMode(PowerGovernor g, long t, int level, boolean charging, long crossingMs,
+                                   int expected, String what) {
+        expectMode(g, t, level, charging, THRESHOLD, false, crossingMs, expected, what);
+    }
+
+    private static void expectMode(PowerGovernor g, long t, int level, boolean charging, int threshold,
+                                   boolean chargingRules, long crossingMs, int expected, String what) {
+        int mode = g.update(t, level, charging, threshold, chargingRules, crossingMs);
+        if (mode != expected) {
+            fail(what + ": mode " + mode + ", expected " + expected);
+        }
+    }
+
+    private static void rules() {
+        // A discharging rule at 50% alongside the 20% threshold: the bands follow 50%.
+        PowerGovernor g = new PowerGovernor();
+        long t = 0;
+        expectMode(g, t += MINUTE, 54, false, 50, false, -1, PowerGovernor.MODE_HIGH_ALERT,
+                "4% above a rule over the threshold");
+        if (!g.keepAudioWarm()) {
+            fail("no warm audio near a rule over the threshold");
+        }
+        expectMode(g, t += MINUTE, 80, false, 50, false, t + 5 * MINUTE, PowerGovernor.MODE_HIGH_ALERT,
+                "rule crossing within ten minutes");
+
+        // A charging rule: nothing deferred, audio and TTS kept up.
+        g = new PowerGovernor();
+        expectMode(g, t += MINUTE, 78, true, THRESHOLD, true, -1, PowerGovernor.MODE_HIGH_ALERT,
+                "charging with charging rules");
+        if (!g.keepAudioWarm() || !g.keepTts()) {
+            fail("charging rules without warm audio");
+        }
+        g.onProcessed(t);
+        if (g.deferMs(t + SECOND, false) != 0) {
+            fail("charging rule sample deferred " + g.deferMs(t + SECOND, false) + " ms");
+        }
+        expectMode(g, t += MINUTE, 78, true, THRESHOLD, false, -1, PowerGovernor.MODE_DORMANT,
+                "charging without charging rules");
+        System.out.println("rules checked");
+    }
+
+    private static void budget() {
+        // 0.5 ms every second is 1800 ms/h, well under budget.
+        PowerGovernor g = governor();
+        for (long t = 0; t < 24 * HOUR; t += SECOND) {
+            g.charge(t, MS / 2);
+            if (g.isThrottled()) {
+                fail("throttled under budget at " + t / SECOND + " s");
+                break;
+            }
+        }
+
+        // 1 ms every second is 3600 ms/h: the bucket drains at the difference.
+        g = governor();
+        long expected = (long) (BUCKET_MS / (1 - REFILL_MS_PER_S));
+        long throttledAt = -1;
+        for (long t = 0; t < 2 * HOUR && throttledAt < 0; t += SECOND) {
+            g.charge(t, MS);
+            if (g.isThrottled()) {
+                throttledAt = t / SECOND;
+            }
+        }
+        System.out.printf("over budget: throttled after %d s, expected about %d s%n", throttledAt, expected);
+        if (Math.abs(throttledAt - expected) > expected / 20) {
+            fail("throttled after " + throttledAt + " s");
+        }
+        long recovery = recoverySeconds(g, throttledAt * SECOND);
+        long expectedRecovery = (long) (BUCKET_MS / 2 / REFILL_MS_PER_S);
+        System.out.printf("recovered %d s after the load stopped, expected about %d s%n", recovery, expectedRecovery);
+        if (Math.abs(recovery - expectedRecovery) > expectedRecovery / 10) {
+            fail("recovered after " + recovery + " s");
+        }
+
+        // A storm charged at once is floored, so recovery takes at most one and a half buckets.
+        g = governor();
+        g.charge(0, 1000 * BUDGET_MS_PER_HOUR * MS);
+        long stormRecovery = recoverySeconds(g, 0);
+        long bound = (long) (1.5 * BUCKET_MS / REFILL_MS_PER_S) + 60;
+        System.out.printf("after a storm: recovered in %d s, bound %d s%n", stormRecovery, bound);
+        if (stormRecovery > bound) {
+            fail("storm recovery took " + stormRecovery + " s");
+        }
+
+        // Over-budget samples in normal mode: processing is deferred while throttled.
+        g = governor();
+        g.update(0, 30, false, THRESHOLD, false, -1);
+        long chargedMs = 0;
+        long processed = 0;
+        long day = 24 * HOUR;
+        for (long t = 0; t < day; t += SECOND) {
+            if (g.deferMs(t, false) == 0) {
+                g.onProcessed(t);
+                g.charge(t, 2 * MS);
+                chargedMs += 2;
+                processed++;
+            }
+        }
+        long allowed = BUDGET_MS_PER_HOUR * 24 + BUCKET_MS;
+        System.out.printf("a day at 7200 ms/h offered: %d samples processed, %d ms charged, budget %d ms%n",
+                processed, chargedMs, allowed);
+        if (chargedMs > allowed) {
+            fail("charged " + chargedMs + " ms in a day, budget " + allowed);
+        }
+    }
+
+    private static PowerGovernor governor() {
+        PowerGovernor g = new PowerGovernor();
+        g.setBudgetMsPerHour(BUDGET_MS_PER_HOUR);
+        return g;
+    }
+
+    // The bucket only refills when charged, so idle time is probed with empty charges.
+    private static long recoverySeconds(PowerGovernor g, long fromMs) {
+        for (long t = fromMs + SECOND; t < fromMs + 4 * HOUR; t += SECOND) {
+            g.charge(t, 0);
+            if (!g.isThrottled()) {
+                return (t - fromMs) / SECOND;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAIL " + message);
+        failures++;
+    }
+}
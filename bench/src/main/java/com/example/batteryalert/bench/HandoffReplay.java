@@ -0,0 +1,284 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import com.example.batteryalert.AlertRule;
+import com.example.batteryalert.AlertTable;
+import com.example.batteryalert.SamplingHandoff;
+import com.example.batteryalert.SamplingSchedule;
+import java.util.TimeZone;
+
+/**
+ * Replays the moves between BatteryService and SamplingJobService through
+ * {@link SamplingHandoff}, with a fake clock standing in for the platform: a
+ * service that can be alive or stopped, the scheduled flag and pending job, the
+ * running flag, and whether the job may start the service again. The glue below
+ * mirrors {@code BatteryService.onCreate}/{@code maybeHandOff}/{@code onDestroy},
+ * {@code SamplingJobService.onStartJob} and the stop path in MainActivity.
+ * Checks, minute by minute, that:
+ * <ul>
+ * <li>the service and a scheduled job are never both active, and one of them
+ * always is until the user stops monitoring;
+ * <li>the running flag stays set across handoffs and promotions, and is cleared
+ * by a user stop, after which a stale job does nothing;
+ * <li>there is no handoff on Android 12+ without the battery optimization
+ * exemption, while high-resolution sampling is on, or while charging with
+ * charging rules, and a charging poll with charging rules promotes;
+ * <li>a refused promotion keeps polling at {@link SamplingSchedule#MIN_POLL_MS};
+ * <li>each service run, including after a promotion, lasts at least
+ * {@link SamplingSchedule#MIN_FOREGROUND_MS} before handing off.
+ * </ul>
+ * Exits with status 1 on any failure.
+ */
+public final class HandoffReplay {
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final int THRESHOLD = 20;
+    private static final int DAYS = 7;
+
+    private static int failures;
+
+    private HandoffReplay() {
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%-26s %9s %11s %9s %8s%n", "scenario", "handoffs", "promotions", "refused", "polls");
+        Device d = run("cycle", new Device(30, false), DAYS);
+        expect(d.handoffs >= DAYS && d.promotions >= DAYS, "cycle: no daily handoff and promotion");
+
+        d = run("android 12, not exempt", new Device(31, false), DAYS);
+        expect(d.handoffs == 0, "android 12 without exemption: handed off");
+
+        d = run("android 12, exempt", new Device(31, true), DAYS);
+        expect(d.handoffs >= DAYS, "android 12 with exemption: no daily handoff");
+
+        Device hiRes = new Device(30, false);
+        hiRes.hiRes = true;
+        d = run("high resolution", hiRes, DAYS);
+        expect(d.handoffs == 0, "high resolution: handed off");
+
+        Device chargingRules = new Device(30, false);
+        chargingRules.table = table(new AlertRule(AlertEngine.TIER_NORMAL, 80, 100, true, 0,
+                AlertRule.NO_QUIET, AlertRule.NO_QUIET, false));
+        d = run("charging rules", chargingRules, DAYS);
+        expect(d.handoffs >= DAYS, "charging rules: no daily handoff");
+
+        Device refused = new Device(30, false);
+        refused.promoteAllowed = false;
+        d = run("promotion refused", refused, 2);
+        expect(d.handoffs == 1 && d.refused > 0, "promotion refused: " + d.handoffs + " handoffs, "
+                + d.refused + " refusals");
+
+        userStop();
+        System.out.printf("failures %d%n", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static Device run(String name, Device d, int days) {
+        d.userStart();
+        while (d.now < days * DAY) {
+            d.tick();
+            d.checkInvariants(name);
+        }
+        System.out.printf("%-26s %9d %11d %9d %8d%n", name, d.handoffs, d.promotions, d.refused, d.polls);
+        return d;
+    }
+
+    // Stops monitoring while the job is scheduled; a job already dispatched still runs once.
+    private static void userStop() {
+        Device d = new Device(30, false);
+        d.userStart();
+        while (d.serviceAlive && d.now < DAY) {
+            d.tick();
+        }
+        expect(!d.serviceAlive && d.jobAtMs >= 0, "user stop: never handed off");
+        long staleJob = d.jobAtMs;
+        d.userStop();
+        expect(!d.running, "user stop: running flag still set");
+        expect(!d.scheduled, "user stop: job still scheduled");
+        d.jobAtMs = staleJob;
+        d.now = staleJob;
+        d.runJob();
+        expect(!d.serviceAlive && !d.running && d.jobAtMs < 0, "user stop: stale job resumed monitoring");
+        System.out.printf("%-26s stale job ignored%n", "user stop while scheduled");
+    }
+
+    private static AlertTable table(AlertRule... extra) {
+        return AlertTable.compile(AlertTable.thresholdRules(THRESHOLD, 5, 10, AlertEngine.DEFAULT_COOLDOWN, extra),
+                TimeZone.getTimeZone("UTC"));
+    }
+
+    private static void expect(boolean ok, String message) {
+        if (!ok) {
+            fail(message);
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAIL " + message);
+        failures++;
+    }
+
+    /** The platform around the two components, with a day of discharge and overnight charging. */
+    private static final class Device {
+        final int sdkInt;
+        final boolean exempt;
+        boolean hiRes;
+        boolean promoteAllowed = true;
+        AlertTable table = table();
+
+        long now;
+        double level = 100;
+        boolean userOn;
+
+        // BatteryService
+        boolean serviceAlive;
+        long serviceStartMs;
+        SamplingSchedule serviceSchedule;
+        SamplingHandoff handoff;
+        // SamplingJobService: the scheduled preference, the pending job and the saved schedule.
+        boolean scheduled;
+        long jobAtMs = -1;
+        long savedLastPollMs = -1;
+        int savedLastLevel = -1;
+        double savedRate;
+        long lastPollMs = -1;
+        boolean lastPollPromoted;
+        // StateSnapshot
+        boolean running;
+
+        int handoffs, promotions, refused, polls;
+
+        Device(int sdkInt, boolean exempt) {
+            this.sdkInt = sdkInt;
+            this.exempt = exempt;
+        }
+
+        boolean charging() {
+            long minuteOfDay = (now % DAY) / MINUTE;
+            // Off the charger at 07:00, back on at 23:00.
+            return minuteOfDay < 7 * 60 || minuteOfDay >= 23 * 60;
+        }
+
+        void tick() {
+            now += MINUTE;
+            boolean charging = charging();
+            level = charging ? Math.min(100, level + 40.0 / 60) : Math.max(0, level - 10.0 / 60);
+            if (serviceAlive) {
+                sample((int) level, charging);
+            }
+            if (jobAtMs >= 0 && now >= jobAtMs) {
+                runJob();
+            }
+        }
+
+        void userStart() {
+            userOn = true;
+            serviceCreate();
+        }
+
+        void userStop() {
+            userOn = false;
+            if (serviceAlive) {
+                serviceDestroy();
+            }
+            scheduled = false;
+            jobAtMs = -1;
+            running = false;
+        }
+
+        void serviceCreate() {
+            serviceAlive = true;
+            serviceStartMs = now;
+            serviceSchedule = new SamplingSchedule(() -> now);
+            handoff = new SamplingHandoff(serviceSchedule);
+            scheduled = false;
+            jobAtMs = -1;
+            running = true;
+        }
+
+        void sample(int pct, boolean charging) {
+            double rate = charging ? Double.NaN : 10;
+            long delay = handoff.onForegroundSample(pct, charging, table, rate, hiRes,
+                    () -> SamplingHandoff.canSchedule(sdkInt, exempt));
+            if (delay < 0) {
+                return;
+            }
+            if (charging && table.hasChargingRules()) {
+                fail("handed off while charging with charging rules");
+            }
+            handoffs++;
+            if (now - serviceStartMs < SamplingSchedule.MIN_FOREGROUND_MS) {
+                fail("handed off " + (now - serviceStartMs) / MINUTE + " min after the service started");
+            }
+            save(serviceSchedule);
+            scheduled = true;
+            jobAtMs = now + delay;
+            serviceDestroy();
+        }
+
+        void serviceDestroy() {
+            serviceAlive = false;
+            if (handoff.stopEndsMonitoring()) {
+                running = false;
+            }
+        }
+
+        void runJob() {
+            jobAtMs = -1;
+            if (!scheduled) {
+                return;
+            }
+            polls++;
+            boolean charging = charging();
+            SamplingSchedule schedule = new SamplingSchedule(() -> now);
+            schedule.restore(savedLastPollMs, savedLastLevel, savedRate);
+            long delay = SamplingHandoff.onPoll(schedule, (int) level, charging, table);
+            if (charging && table.hasChargingRules() && delay != SamplingHandoff.PROMOTE) {
+                fail("charging poll with charging rules kept polling");
+            }
+            if (lastPollPromoted && now - lastPollMs < SamplingSchedule.MIN_POLL_MS) {
+                fail("polled " + (now - lastPollMs) / MINUTE + " min after a refused promotion");
+            }
+            lastPollMs = now;
+            lastPollPromoted = delay == SamplingHandoff.PROMOTE;
+            if (delay == SamplingHandoff.PROMOTE) {
+                if (promoteAllowed) {
+                    promotions++;
+                    scheduled = false;
+                    serviceCreate();
+                    return;
+                }
+                refused++;
+            }
+            save(schedule);
+            long next = SamplingHandoff.retryDelayMs(delay);
+            if (delay == SamplingHandoff.PROMOTE && next != SamplingSchedule.MIN_POLL_MS) {
+                fail("refused promotion retries in " + next / MINUTE + " min");
+            }
+            jobAtMs = now + next;
+        }
+
+        void save(SamplingSchedule schedule) {
+            savedLastPollMs = schedule.getLastPollMs();
+            savedLastLevel = schedule.getLastLevel();
+            savedRate = schedule.getRatePerHour();
+        }
+
+        void checkInvariants(String name) {
+            boolean jobActive = scheduled && jobAtMs >= 0;
+            if (serviceAlive && jobActive) {
+                fail(name + ": service and job both active at minute " + now / MINUTE);
+            }
+            if (userOn && !serviceAlive && !jobActive) {
+                fail(name + ": nothing monitoring at minute " + now / MINUTE);
+            }
+            if (userOn && !running) {
+                fail(name + ": running flag cleared at minute " + now / MINUTE);
+            }
+        }
+    }
+}
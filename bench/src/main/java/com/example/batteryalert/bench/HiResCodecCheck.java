@@ -0,0 +1,153 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.HiResBlock;
+import com.example.batteryalert.HiResLog;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes two simulated weeks of {@link HiResTrace} through a {@link HiResLog},
+ * reads every block back and checks each row, and a single-column decode,
+ * against the input. Reports bytes per row per column, the ratio against
+ * fixed-width rows and against gzip of them, and how many block writes the
+ * log needed. Then abandons a log without closing it, as a killed process
+ * would, and checks that reopening it recovers every row but those appended
+ * within {@link HiResLog#MAX_PENDING_MS} of the end. Exits with status 1 on any
+ * mismatch.
+ */
+public final class HiResCodecCheck {
+
+    private static final int DAYS = 14;
+    // time (long) and five ints.
+    private static final int RAW_ROW_BYTES = 8 + 5 * 4;
+    private static final String[] COLUMN_NAMES = {"time", "level", "current", "voltage", "temperature",
+            "charge_counter"};
+
+    private HiResCodecCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        HiResTrace trace = HiResTrace.generate(DAYS, 3);
+        File file = File.createTempFile("hires", ".bin");
+        file.deleteOnExit();
+        try (HiResLog log = HiResLog.open(file, 1024)) {
+            for (int i = 0; i < trace.size; i++) {
+                log.append(trace.time[i], trace.level[i], trace.current[i], trace.voltage[i],
+                        trace.temperature[i], trace.counter[i]);
+            }
+        }
+
+        HiResLog log = HiResLog.openReadOnly(file);
+        byte[] block = new byte[HiResBlock.BLOCK_SIZE];
+        long[][] scratch = HiResBlock.newScratch();
+        long[] temperatures = new long[scratch[0].length];
+        long[] columnBytes = new long[HiResBlock.COLUMNS];
+        int[] row = {0};
+        int[] mismatches = {0};
+        for (long seq = log.firstSeq(); seq < log.endSeq(); seq++) {
+            log.readBlock(seq, block);
+            int first = row[0];
+            for (int c = 0; c < HiResBlock.COLUMNS; c++) {
+                columnBytes[c] += (block[2 + 2 * c] & 0xFF) | (block[3 + 2 * c] & 0xFF) << 8;
+            }
+            HiResBlock.decode(block, 0, scratch, (t, lvl, cur, mv, temp, uah) -> {
+                int i = row[0]++;
+                if (i >= trace.size || t != trace.time[i] / 1000 * 1000 || lvl != trace.level[i] || cur != trace.current[i]
+                        || mv != trace.voltage[i] || temp != trace.temperature[i] || uah != trace.counter[i]) {
+                    mismatches[0]++;
+                }
+            });
+            int n = HiResBlock.decodeColumn(block, 0, HiResBlock.COL_TEMPERATURE, temperatures);
+            for (int i = 0; i < n; i++) {
+                if (temperatures[i] != trace.temperature[first + i]) {
+                    mismatches[0]++;
+                }
+            }
+        }
+        if (row[0] != trace.size) {
+            mismatches[0]++;
+        }
+
+        long blocks = log.endSeq();
+        long encoded = 0;
+        for (long b : columnBytes) {
+            encoded += b;
+        }
+        long gzip = gzipRaw(trace);
+        System.out.printf("rows %d (%.0f/day), blocks %d, hot %.1f h%n", trace.size,
+                trace.size / (double) DAYS, blocks, trace.hotMs / 3600000.0);
+        for (int c = 0; c < HiResBlock.COLUMNS; c++) {
+            System.out.printf("  %-15s %6.2f B/row%n", COLUMN_NAMES[c], columnBytes[c] / (double) trace.size);
+        }
+        double stored = blocks * (double) HiResBlock.BLOCK_SIZE / trace.size;
+        System.out.printf("encoded %.2f B/row, stored %.2f B/row with padding, raw %d B/row, gzip(raw) %.2f B/row%n",
+                encoded / (double) trace.size, stored, RAW_ROW_BYTES, gzip / (double) trace.size);
+        System.out.printf("ratio vs raw %.2fx, vs gzip %.2fx; %.1f rows per block write, %.1f block writes/day%n",
+                RAW_ROW_BYTES / stored, gzip / (double) (blocks * HiResBlock.BLOCK_SIZE),
+                trace.size / (double) blocks, blocks / (double) DAYS);
+        System.out.printf("round trip mismatches %d%n", mismatches[0]);
+        int lost = crashLoss(trace);
+        if (mismatches[0] > 0 || lost > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Returns the number of crash points where rows older than the checkpoint age were lost. */
+    private static int crashLoss(HiResTrace trace) throws IOException {
+        int failures = 0;
+        long maxLostMs = 0;
+        byte[] block = new byte[HiResBlock.BLOCK_SIZE];
+        long[][] scratch = HiResBlock.newScratch();
+        for (int crashAt = trace.size / 7; crashAt < trace.size; crashAt += trace.size / 7) {
+            File file = File.createTempFile("hires", ".bin");
+            file.deleteOnExit();
+            HiResLog log = HiResLog.open(file, 1024);
+            for (int i = 0; i < crashAt; i++) {
+                log.append(trace.time[i], trace.level[i], trace.current[i], trace.voltage[i],
+                        trace.temperature[i], trace.counter[i]);
+            }
+            // No close(): the mapping's writes are all a killed process leaves behind.
+            HiResLog reopened = HiResLog.open(file, 1024);
+            int[] rows = {0};
+            boolean[] mismatch = {false};
+            int appended = crashAt;
+            for (long seq = reopened.firstSeq(); seq < reopened.endSeq(); seq++) {
+                reopened.readBlock(seq, block);
+                HiResBlock.decode(block, 0, scratch, (t, lvl, cur, mv, temp, uah) -> {
+                    int i = rows[0]++;
+                    if (i >= appended || t != trace.time[i] / 1000 * 1000 || lvl != trace.level[i]) {
+                        mismatch[0] = true;
+                    }
+                });
+            }
+            long lostMs = rows[0] == crashAt ? 0 : trace.time[crashAt - 1] - trace.time[rows[0]];
+            maxLostMs = Math.max(maxLostMs, lostMs);
+            if (mismatch[0] || lostMs >= HiResLog.MAX_PENDING_MS) {
+                System.out.printf("FAIL crash after %d rows: %d recovered, %d s lost%n", crashAt, rows[0],
+                        lostMs / 1000);
+                failures++;
+            }
+        }
+        System.out.printf("crash recovery: at most %d s of rows lost, limit %d s%n", maxLostMs / 1000,
+                HiResLog.MAX_PENDING_MS / 1000);
+        return failures;
+    }
+
+    private static long gzipRaw(HiResTrace trace) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            for (int i = 0; i < trace.size; i++) {
+                out.writeLong(trace.time[i]);
+                out.writeInt(trace.level[i]);
+                out.writeInt(trace.current[i]);
+                out.writeInt(trace.voltage[i]);
+                out.writeInt(trace.temperature[i]);
+                out.writeInt(trace.counter[i]);
+            }
+        }
+        return bytes.size();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.HiResSampler;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic high-resolution battery telemetry, polled at the pace
+ * {@link HiResSampler} picks: daily discharge with idle stretches, gaming
+ * bursts that heat the battery, and overnight charging. Current carries
+ * a few mA of sensor noise, as real fuel gauges report it.
+ */
+public final class HiResTrace {
+
+    private static final long MINUTE = 60000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final double CAPACITY_UAH = 4000000;
+
+    public long[] time;
+    public int[] level;
+    public int[] current;
+    public int[] voltage;
+    public int[] temperature;
+    public int[] counter;
+    public int size;
+    public long hotMs;
+
+    private HiResTrace(int capacity) {
+        time = new long[capacity];
+        level = new int[capacity];
+        current = new int[capacity];
+        voltage = new int[capacity];
+        temperature = new int[capacity];
+        counter = new int[capacity];
+    }
+
+    public static HiResTrace generate(int days, long seed) {
+        Random random = new Random(seed);
+        HiResSampler sampler = new HiResSampler();
+        HiResTrace trace = new HiResTrace(1024);
+        double charge = CAPACITY_UAH;
+        double temp = 300;
+        long t = 0;
+        long burstUntil = -1;
+        while (t < days * DAY) {
+            long minuteOfDay = (t % DAY) / MINUTE;
+            boolean charging = minuteOfDay < 7 * 60 || minuteOfDay >= 23 * 60;
+            if (!charging && burstUntil < t && random.nextInt(2000) == 0) {
+                burstUntil = t + (20 + random.nextInt(60)) * MINUTE;
+            }
+            boolean burst = t < burstUntil;
+            double mean = charging ? (charge < CAPACITY_UAH * 0.98 ? 2000000 : 50000) : burst ? -1400000 : -180000;
+            int current = (int) (mean + random.nextGaussian() * 4000);
+            double targetTemp = burst ? 470 : charging ? 340 : 305;
+            int pct = (int) Math.ceil(charge * 100 / CAPACITY_UAH);
+            int mv = (int) (3500 + 7 * pct + (charging ? 80 : 0) + random.nextGaussian() * 2);
+
+            trace.add(t, pct, current, mv, (int) Math.round(temp), (int) charge);
+            long delay = sampler.onSample(t, current, (int) Math.round(temp), charging);
+            charge = Math.max(0, Math.min(CAPACITY_UAH, charge + current * (delay / 3600000.0)));
+            temp += (targetTemp - temp) * Math.min(1, delay / (10.0 * MINUTE));
+            t += delay;
+        }
+        trace.hotMs = sampler.getHotMs();
+        return trace;
+    }
+
+    private void add(long t, int lvl, int cur, int mv, int temp, int uah) {
+        if (size == time.length) {
+            int n = size * 2;
+            time = Arrays.copyOf(time, n);
+            level = Arrays.copyOf(level, n);
+            current = Arrays.copyOf(current, n);
+            voltage = Arrays.copyOf(voltage, n);
+            temperature = Arrays.copyOf(temperature, n);
+            counter = Arrays.copyOf(counter, n);
+        }
+        time[size] = t;
+        level[size] = lvl;
+        current[size] = cur;
+        voltage[size] = mv;
+        temperature[size] = temp;
+        counter[size] = uah;
+        size++;
+    }
+}
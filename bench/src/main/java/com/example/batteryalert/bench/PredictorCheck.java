@@ -0,0 +1,226 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.DischargePredictor;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Runs {@link DischargePredictor} over synthetic discharges and checks the
+ * predicted threshold, urgent and critical crossings against when the
+ * simulated level actually gets there. The battery reports an integer level
+ * that changes when the true level crosses it, with extra broadcasts in
+ * between as voltage and temperature move.
+ * <ul>
+ * <li>constant rate: every prediction after the first slope is within
+ * {@link #CONSTANT_MAX_ERROR} of the remaining time;
+ * <li>variable rate, switching every 20 to 90 minutes between 4 and 25 %/h:
+ * {@link #SETTLE_STEPS} level steps after a change the rate estimate is within
+ * {@link #SETTLED_RATE_ERROR} of the new rate, and from then on predictions of
+ * crossings before the next change are within {@link #SETTLED_MAX_ERROR}.
+ * A change nobody could foresee makes longer predictions miss; their error
+ * under an hour out is reported, not checked.
+ * </ul>
+ * Also times one sample plus the three predictions, and fails if that costs more
+ * than {@link #MAX_NANOS_PER_SAMPLE} or allocates. Exits with status 1 on any failure.
+ */
+public final class PredictorCheck {
+
+    private static final long MINUTE = 60000L;
+    private static final long BROADCAST_MS = MINUTE;
+    private static final int[] TARGETS = {20, 15, 10};
+    private static final String[] TARGET_NAMES = {"threshold", "urgent", "critical"};
+
+    static final double CONSTANT_MAX_ERROR = 0.01;
+    // The estimate keeps 0.7^10, about 3%, of the previous rate after ten steps;
+    // across the widest jump here, 25 to 4 %/h, that is about 15% of the new one.
+    static final int SETTLE_STEPS = 10;
+    static final double SETTLED_RATE_ERROR = 0.2;
+    static final double SETTLED_MAX_ERROR = 0.2;
+    static final long MAX_NANOS_PER_SAMPLE = 500;
+
+    private static int failures;
+
+    private PredictorCheck() {
+    }
+
+    public static void main(String[] args) {
+        double[] constantRates = {3, 8, 15, 30};
+        for (double rate : constantRates) {
+            double[] errors = run(new double[]{rate}, new long[]{Long.MAX_VALUE}, Long.MAX_VALUE, false, null);
+            double max = max(errors);
+            System.out.printf("constant %4.1f %%/h: %d predictions, max error %.3f%%%n", rate, errors.length,
+                    max * 100);
+            if (max > CONSTANT_MAX_ERROR) {
+                fail("constant " + rate + " %/h: max error " + max);
+            }
+        }
+
+        for (long seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            int segments = 16;
+            double[] rates = new double[segments];
+            long[] ends = new long[segments];
+            long t = 0;
+            for (int i = 0; i < segments; i++) {
+                rates[i] = 4 + random.nextDouble() * 21;
+                t += (20 + random.nextInt(71)) * MINUTE;
+                ends[i] = t;
+            }
+            ends[segments - 1] = Long.MAX_VALUE;
+            int[] settle = {0, 0};
+            double[] settled = run(rates, ends, Long.MAX_VALUE, true, settle);
+            double[] hour = run(rates, ends, 60 * MINUTE, false, null);
+            Arrays.sort(hour);
+            System.out.printf("variable seed %d: %d/%d rate changes settled, %d settled predictions, max error"
+                    + " %.1f%%; under 1 h regardless: median %.1f%%, p90 %.1f%%%n", seed, settle[0], settle[1],
+                    settled.length, max(settled) * 100, percentile(hour, 50) * 100, percentile(hour, 90) * 100);
+            if (max(settled) > SETTLED_MAX_ERROR) {
+                fail("variable seed " + seed + ": settled max error " + max(settled));
+            }
+            if (settle[0] != settle[1]) {
+                fail("variable seed " + seed + ": " + (settle[1] - settle[0]) + " rate changes not settled");
+            }
+        }
+
+        cost();
+        System.out.printf("failures %d%n", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Discharges from 100% at {@code rates[i]} %/h until {@code ends[i]} and
+     * returns the relative error of every prediction made at least one slope
+     * in, for crossings at most {@code horizonMs} ahead. With {@code settledOnly},
+     * only predictions made {@link #SETTLE_STEPS} steps into a rate and landing
+     * before it changes count. If {@code settle} is given, counts rate changes
+     * whose estimate settled as {@code {settled, total}}.
+     */
+    private static double[] run(double[] rates, long[] ends, long horizonMs, boolean settledOnly, int[] settle) {
+        // True crossing times of every integer level, to score predictions against.
+        long[] crossAt = new long[101];
+        double level = 100;
+        long t = 0;
+        int segment = 0;
+        for (int target = 99; target >= 0; target--) {
+            while (true) {
+                double perMs = rates[segment] / 3600000.0;
+                long reach = t + (long) Math.ceil((level - target) / perMs);
+                if (reach <= ends[segment]) {
+                    crossAt[target] = reach;
+                    level = target;
+                    t = reach;
+                    break;
+                }
+                level -= (ends[segment] - t) * perMs;
+                t = ends[segment];
+                segment++;
+            }
+        }
+
+        DischargePredictor predictor = new DischargePredictor();
+        double[] errors = new double[4096];
+        int n = 0;
+        int reported = 100;
+        int stepsInSegment = 0;
+        segment = 0;
+        for (long now = 0; reported > TARGETS[TARGETS.length - 1]; now += BROADCAST_MS) {
+            long next = Math.min(now + BROADCAST_MS, crossAt[reported - 1]);
+            boolean stepped = next < now + BROADCAST_MS;
+            if (stepped) {
+                now = next;
+                reported--;
+            }
+            if (segment < ends.length - 1 && now > ends[segment]) {
+                segment++;
+                stepsInSegment = 0;
+            } else if (stepped) {
+                stepsInSegment++;
+            }
+            predictor.onSample(now, reported, false);
+            if (settle != null && stepped && segment > 0 && stepsInSegment == SETTLE_STEPS) {
+                double expected = rates[segment];
+                settle[1]++;
+                if (Math.abs(predictor.getRatePerHour() - expected) <= expected * SETTLED_RATE_ERROR) {
+                    settle[0]++;
+                }
+            }
+            if (!predictor.isValid()) {
+                continue;
+            }
+            for (int target : TARGETS) {
+                if (target >= reported) {
+                    continue;
+                }
+                long actual = crossAt[target] - now;
+                if (actual <= 0 || actual > horizonMs) {
+                    continue;
+                }
+                if (settledOnly && (stepsInSegment < SETTLE_STEPS || crossAt[target] > ends[segment])) {
+                    continue;
+                }
+                double error = Math.abs(predictor.predictCrossing(target) - crossAt[target]) / (double) actual;
+                if (n == errors.length) {
+                    errors = Arrays.copyOf(errors, n * 2);
+                }
+                errors[n++] = error;
+            }
+        }
+        return Arrays.copyOf(errors, n);
+    }
+
+    private static void cost() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        DischargePredictor predictor = new DischargePredictor();
+        int samples = 5000000;
+        long sink = 0;
+        for (int round = 0; round < 3; round++) {
+            long allocBefore = threads.getThreadAllocatedBytes(tid);
+            long start = System.nanoTime();
+            for (int i = 0; i < samples; i++) {
+                // A level step every 30 samples, restarting from 100% after each full discharge.
+                predictor.onSample(i * BROADCAST_MS, 100 - (i / 30) % 90, false);
+                for (int target : TARGETS) {
+                    sink += predictor.predictCrossing(target);
+                }
+            }
+            long nanos = (System.nanoTime() - start) / samples;
+            long alloc = threads.getThreadAllocatedBytes(tid) - allocBefore;
+            if (round == 2) {
+                System.out.printf("cost: %d ns per sample with %d predictions (%s), %d bytes allocated%n", nanos,
+                        TARGETS.length, String.join("/", TARGET_NAMES), alloc);
+                if (nanos > MAX_NANOS_PER_SAMPLE) {
+                    fail(nanos + " ns per sample");
+                }
+                // A little slack for the timer and printf machinery warming up.
+                if (alloc > 1024) {
+                    fail(alloc + " bytes allocated");
+                }
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static double percentile(double[] sorted, int pct) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, sorted.length * pct / 100)];
+    }
+
+    private static double max(double[] values) {
+        double m = 0;
+        for (double v : values) {
+            m = Math.max(m, v);
+        }
+        return m;
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAIL " + message);
+        failures++;
+    }
+}
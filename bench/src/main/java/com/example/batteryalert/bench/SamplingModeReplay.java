@@ -0,0 +1,104 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.DischargePredictor;
+import com.example.batteryalert.SamplingSchedule;
+import java.util.Random;
+
+/**
+ * Drives {@link SamplingSchedule} with a fake clock through simulated days of
+ * discharge and overnight charging, moving between the foreground service and
+ * scheduled polls the way BatteryService and SamplingJobService do. Polls run
+ * at a random point of their window, as JobScheduler may. Reports the share
+ * of time spent polling, polls per day and the lowest margin above the
+ * threshold seen while polling; exits with status 1 if any poll came within
+ * {@link #MIN_SAFE_MARGIN_PCT} of the threshold, i.e. promotion was too late.
+ */
+public final class SamplingModeReplay {
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final int THRESHOLD = 20;
+    // The governor switches to high-alert 5% above the threshold; polling must end before.
+    private static final int MIN_SAFE_MARGIN_PCT = 5;
+    private static final int DAYS = 30;
+
+    /** Discharge rate in %/h for a minute of the day; 0 while charging. */
+    private interface Usage {
+        double rateAt(long minuteOfDay, Random random);
+    }
+
+    private SamplingModeReplay() {
+    }
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        System.out.printf("%-22s %9s %10s %12s %10s%n", "scenario", "polled_%", "polls/day", "min_margin", "late");
+        ok &= run("idle 4%/h", (m, r) -> 4);
+        ok &= run("steady 10%/h", (m, r) -> 10);
+        ok &= run("mixed bursts", (m, r) -> (m / 30) % 4 == 0 ? 25 : 6);
+        ok &= run("idle then gaming", (m, r) -> m < 6 * 60 ? 3 : 28);
+        ok &= run("random 2-30%/h", (m, r) -> 2 + r.nextInt(29));
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(String name, Usage usage) {
+        long[] now = {0};
+        Random random = new Random(42);
+        SamplingSchedule schedule = new SamplingSchedule(() -> now[0]);
+        DischargePredictor predictor = new DischargePredictor();
+        double level = 100;
+        boolean polling = false;
+        long nextPoll = 0;
+        long polledMs = 0, polls = 0, late = 0;
+        int minMargin = Integer.MAX_VALUE;
+
+        for (; now[0] < DAYS * DAY; now[0] += MINUTE) {
+            long minuteOfDay = (now[0] % DAY) / MINUTE;
+            // Off the charger at 07:00, back on at 23:00.
+            boolean charging = minuteOfDay < 7 * 60 || minuteOfDay >= 23 * 60;
+            if (charging) {
+                level = Math.min(100, level + 40.0 / 60);
+            } else {
+                level = Math.max(0, level - usage.rateAt(minuteOfDay - 7 * 60, random) / 60);
+            }
+            int pct = (int) level;
+
+            if (polling) {
+                polledMs += MINUTE;
+                if (now[0] < nextPoll) {
+                    continue;
+                }
+                polls++;
+                minMargin = Math.min(minMargin, pct - THRESHOLD);
+                if (pct - THRESHOLD <= MIN_SAFE_MARGIN_PCT) {
+                    late++;
+                }
+                long delay = schedule.onPoll(pct, charging, THRESHOLD);
+                if (delay < 0) {
+                    // BatteryService starts with a fresh schedule and predictor.
+                    polling = false;
+                    schedule = new SamplingSchedule(() -> now[0]);
+                    predictor.reset();
+                } else {
+                    nextPoll = now[0] + delay + (long) (random.nextDouble() * delay / 2);
+                }
+                continue;
+            }
+
+            predictor.onSample(now[0], pct, charging);
+            double rate = !charging && predictor.isValid() ? predictor.getRatePerHour() : Double.NaN;
+            if (schedule.shouldDemote(pct, THRESHOLD, rate)) {
+                long delay = schedule.demote(pct, charging, THRESHOLD, rate);
+                polling = true;
+                nextPoll = now[0] + delay + (long) (random.nextDouble() * delay / 2);
+            }
+        }
+        System.out.printf("%-22s %8.1f%% %10.1f %12d %10d%n", name,
+                100.0 * polledMs / (DAYS * DAY), polls / (double) DAYS,
+                minMargin == Integer.MAX_VALUE ? -1 : minMargin, late);
+        return late == 0;
+    }
+}
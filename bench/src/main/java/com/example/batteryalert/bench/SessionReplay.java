@@ -0,0 +1,196 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import com.example.batteryalert.SessionStore;
+import com.example.batteryalert.SessionTracker;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Feeds {@link SessionTracker} simulated weeks of daily discharge and charging
+ * on a slowly fading battery, restarting the tracker from its saved state
+ * every few hours the way BatteryService does after a restart. Each closed
+ * session's running mean and variance are checked against a two-pass
+ * computation over the same step rates, and the sessions are round-tripped
+ * through a {@link SessionStore}. Reports the capacity estimates against the
+ * simulated capacity. Also steps the clock back mid-discharge and checks the
+ * session is closed there rather than picking up negative times. Exits with
+ * status 1 on any mismatch.
+ */
+public final class SessionReplay {
+
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final int DAYS = 60;
+    private static final int DESIGN_MAH = 4000;
+    // Capacity lost per full discharge cycle.
+    private static final double FADE_PER_CYCLE = 0.0008;
+
+    private SessionReplay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(5);
+        SessionTracker tracker = new SessionTracker();
+        long[] state = new long[SessionTracker.STATE_WORDS];
+        List<SessionTracker.Session> sessions = new ArrayList<>();
+        List<double[]> expectedRates = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+
+        double level = 100, capacity = DESIGN_MAH, cycles = 0;
+        int stepLevel = 100;
+        long stepMs = -1;
+        int failures = 0;
+        for (long t = 0; t < DAYS * 24 * HOUR; t += MINUTE) {
+            long minuteOfDay = (t % (24 * HOUR)) / MINUTE;
+            boolean charging = minuteOfDay < 7 * 60 || minuteOfDay >= 23 * 60;
+            if (charging) {
+                level = Math.min(100, level + 0.5 + random.nextDouble() * 0.5);
+            } else {
+                double drop = (2 + random.nextInt(15)) / 60.0;
+                level = Math.max(0, level - drop);
+                cycles += drop / 100;
+                capacity = DESIGN_MAH * (1 - FADE_PER_CYCLE * cycles);
+            }
+            int pct = (int) Math.ceil(level);
+            int counter = (int) (level / 100 * capacity * 1000);
+            int tier = pct <= 10 ? AlertEngine.TIER_CRITICAL : pct <= 20 ? AlertEngine.TIER_NORMAL
+                    : AlertEngine.TIER_NONE;
+
+            // The service only reads the counter at a boundary.
+            boolean boundary = tracker.isBoundary(t, charging);
+            double[] closing = stats(rates);
+            if (boundary) {
+                rates.clear();
+                stepMs = -1;
+                stepLevel = pct;
+            } else if (pct != stepLevel) {
+                if (stepMs >= 0) {
+                    rates.add(Math.abs(pct - stepLevel) * 3600000.0 / (t - stepMs));
+                }
+                stepMs = t;
+                stepLevel = pct;
+            }
+            if (tracker.onSample(t, pct, charging, tier, boundary ? counter : SessionTracker.UNKNOWN)) {
+                sessions.add(copy(tracker.closed()));
+                expectedRates.add(closing);
+            }
+            if (t % (5 * HOUR) == 0) {
+                tracker.saveState(state);
+                tracker = new SessionTracker();
+                tracker.restoreState(state);
+            }
+        }
+
+        File file = File.createTempFile("sessions", ".bin");
+        file.deleteOnExit();
+        try (SessionStore store = SessionStore.open(file, 64)) {
+            for (SessionTracker.Session s : sessions) {
+                store.append(s);
+            }
+        }
+        SessionStore store = SessionStore.openReadOnly(file);
+        SessionTracker.Session read = new SessionTracker.Session();
+        System.out.printf("%-6s %-10s %8s %9s %9s %9s %9s %9s%n", "#", "kind", "hours",
+                "mean", "exp_mean", "sd", "exp_sd", "cap_mAh");
+        for (int i = 0; i < sessions.size(); i++) {
+            SessionTracker.Session s = sessions.get(i);
+            double[] expected = expectedRates.get(i);
+            boolean ok = Math.abs(s.rateMean - expected[0]) <= 1e-3 * Math.max(1, expected[0])
+                    && Math.abs(s.rateStdDev() - expected[1]) <= 1e-3 * Math.max(1, expected[1]);
+            if (i >= store.firstSeq()) {
+                store.get(i, read);
+                ok &= read.startMs == s.startMs && read.endLevel == s.endLevel
+                        && read.rateMean == s.rateMean && read.capacityMah == s.capacityMah
+                        && read.tierSeconds[AlertEngine.TIER_CRITICAL] == s.tierSeconds[AlertEngine.TIER_CRITICAL];
+            }
+            if (!ok) {
+                failures++;
+            }
+            if (!ok || i % 10 == 0 || i == sessions.size() - 1) {
+                System.out.printf("%-6d %-10s %8.1f %9.3f %9.3f %9.3f %9.3f %9d%s%n", i,
+                        s.charging ? "charge" : "discharge", s.durationMs() / (double) HOUR,
+                        s.rateMean, expected[0], s.rateStdDev(), expected[1], s.capacityMah,
+                        ok ? "" : "  MISMATCH");
+            }
+        }
+        failures += clockStep();
+        System.out.printf("sessions %d, stored %d, reference %d mAh, simulated now %.0f mAh, failures %d%n",
+                sessions.size(), store.size(), store.referenceCapacityMah(), capacity, failures);
+        if (failures > 0 || sessions.size() != 2 * DAYS) {
+            System.exit(1);
+        }
+    }
+
+    /** Discharges for three hours, steps the clock back one, and discharges three more. */
+    private static int clockStep() {
+        SessionTracker tracker = new SessionTracker();
+        List<SessionTracker.Session> closed = new ArrayList<>();
+        long t = 10 * 24 * HOUR;
+        int pct = 100;
+        for (int i = 0; i < 360; i++) {
+            if (i == 180) {
+                t -= HOUR;
+                if (!tracker.isBoundary(t, false)) {
+                    System.out.println("FAIL clock step is not a boundary");
+                    return 1;
+                }
+            }
+            if (i % 6 == 0) {
+                pct--;
+            }
+            int tier = pct <= 80 ? AlertEngine.TIER_NORMAL : AlertEngine.TIER_NONE;
+            if (tracker.onSample(t, pct, false, tier, SessionTracker.UNKNOWN)) {
+                closed.add(copy(tracker.closed()));
+            }
+            t += MINUTE;
+        }
+        int failures = 0;
+        if (closed.size() != 1) {
+            failures++;
+        }
+        for (SessionTracker.Session s : closed) {
+            boolean ok = s.durationMs() > 0 && s.rateMean > 0;
+            for (int seconds : s.tierSeconds) {
+                ok &= seconds >= 0;
+            }
+            if (!ok) {
+                failures++;
+            }
+            System.out.printf("clock step: closed %.1f h session, %.1f %%/h%s%n", s.durationMs() / (double) HOUR,
+                    s.rateMean, ok ? "" : "  MISMATCH");
+        }
+        return failures;
+    }
+
+    private static double[] stats(List<Double> values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        double mean = values.isEmpty() ? 0 : sum / values.size();
+        double sq = 0;
+        for (double v : values) {
+            sq += (v - mean) * (v - mean);
+        }
+        return new double[]{mean, values.size() > 1 ? Math.sqrt(sq / (values.size() - 1)) : 0};
+    }
+
+    private static SessionTracker.Session copy(SessionTracker.Session s) {
+        SessionTracker.Session c = new SessionTracker.Session();
+        c.startMs = s.startMs;
+        c.endMs = s.endMs;
+        c.charging = s.charging;
+        c.startLevel = s.startLevel;
+        c.endLevel = s.endLevel;
+        c.samples = s.samples;
+        c.rateMean = s.rateMean;
+        c.rateVariance = s.rateVariance;
+        System.arraycopy(s.tierSeconds, 0, c.tierSeconds, 0, c.tierSeconds.length);
+        c.capacityMah = s.capacityMah;
+        return c;
+    }
+}
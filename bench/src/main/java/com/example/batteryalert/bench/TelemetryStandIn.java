@@ -0,0 +1,168 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import com.example.batteryalert.TelemetryQueue;
+import com.example.batteryalert.TelemetryUploader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs {@link TelemetryUploader} against a local HTTP collector over a simulated
+ * week of alerts and discharge sessions. The collector refuses some requests
+ * outright and processes others but loses the response, so the uploader has to
+ * back off and resend, and the collector has to drop the duplicates by sequence
+ * number. Exits with status 1 unless every event arrives exactly once.
+ */
+public final class TelemetryStandIn {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    /** Decodes batches and keeps every sequence number it has seen. */
+    private static final class Collector {
+        final Set<Long> seen = new HashSet<>();
+        int requests, refused, responsesLost, duplicates, events;
+        long bodyBytes;
+
+        synchronized void handle(HttpExchange exchange) throws IOException {
+            requests++;
+            byte[] body = readAll(exchange.getRequestBody());
+            bodyBytes += body.length;
+            // Every 7th request fails before it is processed, every 11th after.
+            if (requests % 7 == 0) {
+                refused++;
+                respond(exchange, 503);
+                return;
+            }
+            DataInputStream in = new DataInputStream(
+                    new GZIPInputStream(new ByteArrayInputStream(body)));
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            if (!"BTL1".equals(new String(magic, StandardCharsets.US_ASCII))) {
+                respond(exchange, 400);
+                return;
+            }
+            byte[] id = new byte[(int) varint(in)];
+            in.readFully(id);
+            long firstSeq = varint(in);
+            long count = varint(in);
+            varint(in); // first event time
+            for (long i = 0; i < count; i++) {
+                long typeTier = varint(in);
+                varint(in); // time delta
+                varint(in); // level
+                if ((typeTier & 0x3) == TelemetryQueue.TYPE_DISCHARGE) {
+                    varint(in);
+                    varint(in);
+                }
+                if (seen.add(firstSeq + i)) {
+                    events++;
+                } else {
+                    duplicates++;
+                }
+            }
+            if (requests % 11 == 0) {
+                responsesLost++;
+                respond(exchange, 500);
+                return;
+            }
+            respond(exchange, 204);
+        }
+    }
+
+    private TelemetryStandIn() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Collector collector = new Collector();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/telemetry", collector::handle);
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/telemetry";
+
+        File file = File.createTempFile("telemetry", ".bin");
+        file.deleteOnExit();
+        int queued = 0, attempts = 0;
+        try (TelemetryQueue queue = TelemetryQueue.open(file, TelemetryQueue.DEFAULT_CAPACITY)) {
+            TelemetryUploader uploader = new TelemetryUploader(queue, "stand-in",
+                    new TelemetryUploader.HttpTransport(url));
+            // Discharge from 100% at 1%/10 min each day, alerting every 5 min below 20%,
+            // then charge overnight on Wi-Fi.
+            long start = 1700000000000L;
+            for (long now = start; now < start + 7 * DAY; now += 5 * MINUTE) {
+                long inDay = (now - start) % DAY;
+                boolean charging = inDay >= 20 * HOUR;
+                int level = charging ? 100 : (int) Math.max(1, 100 - inDay / (10 * MINUTE));
+                if (inDay == 0) {
+                    queue.appendDischarge(now - 4 * HOUR, now, 60, 100);
+                    queued++;
+                }
+                if (!charging && level <= 20) {
+                    queue.appendAlert(now, level, level <= 10 ? AlertEngine.TIER_CRITICAL : AlertEngine.TIER_URGENT);
+                    queued++;
+                }
+                if (uploader.shouldUpload(now, charging, charging)) {
+                    attempts++;
+                    uploader.uploadOnce(now);
+                }
+            }
+            // Final flush, as the next charge would do.
+            for (long now = start + 8 * DAY; queue.pendingCount() > 0 && attempts < 1000; now += 7 * HOUR) {
+                if (uploader.shouldUpload(now, true, true)) {
+                    attempts++;
+                    uploader.uploadOnce(now);
+                }
+            }
+            System.out.printf("queued %d events, %d upload attempts%n", queued, attempts);
+            System.out.printf("collector: %d requests (%d refused, %d responses lost), %d events, %d duplicates dropped%n",
+                    collector.requests, collector.refused, collector.responsesLost,
+                    collector.events, collector.duplicates);
+            System.out.printf("%d gzip bytes, %.1f bytes/event on the wire%n",
+                    collector.bodyBytes, collector.bodyBytes / (double) Math.max(1, collector.events));
+            server.stop(0);
+            if (collector.events != queued || queue.pendingCount() != 0) {
+                System.out.println("FAIL: " + (queued - collector.events) + " events missing, "
+                        + queue.pendingCount() + " still pending");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static long varint(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int n; (n = in.read(buf)) > 0; ) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+}
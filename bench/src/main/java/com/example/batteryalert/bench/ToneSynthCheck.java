@@ -0,0 +1,136 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import com.example.batteryalert.ToneSynth;
+
+/**
+ * Renders each tier tone with {@link ToneSynth} and checks it against the
+ * documented pattern: buffer length, number of beeps, beep and gap lengths,
+ * pitch of each beep (from zero crossings) and peak level, at two sample
+ * rates. Exits with status 1 on any mismatch.
+ */
+public final class ToneSynthCheck {
+
+    // {frequency Hz, beep ms, gap ms, beep count, alternate frequency Hz or 0}, as specified per tier.
+    private static final int[][] EXPECTED = {
+            {880, 180, 120, 2, 0},
+            {1200, 110, 70, 3, 0},
+            {1500, 80, 30, 6, 1000},
+    };
+    private static final int[] SAMPLE_RATES = {ToneSynth.SAMPLE_RATE, 44100};
+    // Zero runs shorter than this are zero crossings inside a beep, not gaps.
+    private static final int MIN_GAP_MS = 10;
+    private static final double PITCH_TOLERANCE = 0.03;
+
+    private static int failures;
+
+    private ToneSynthCheck() {
+    }
+
+    public static void main(String[] args) {
+        for (int rate : SAMPLE_RATES) {
+            for (int tier = AlertEngine.TIER_NORMAL; tier <= AlertEngine.TIER_CRITICAL; tier++) {
+                check(tier, rate);
+            }
+        }
+        try {
+            ToneSynth.render(AlertEngine.TIER_NONE, ToneSynth.SAMPLE_RATE);
+            fail("TIER_NONE rendered without an exception");
+        } catch (IllegalArgumentException expected) {
+            // Only alerting tiers have tones.
+        }
+        System.out.printf("failures %d%n", failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(int tier, int rate) {
+        int[] p = EXPECTED[tier - 1];
+        int beep = p[1] * rate / 1000;
+        int gap = p[2] * rate / 1000;
+        int count = p[3];
+        short[] pcm = ToneSynth.render(tier, rate);
+        String name = "tier " + tier + " @" + rate;
+        if (pcm.length != count * beep + (count - 1) * gap) {
+            fail(name + ": length " + pcm.length + ", expected " + (count * beep + (count - 1) * gap));
+            return;
+        }
+
+        // Split into beeps at zero runs of at least MIN_GAP_MS.
+        int minGap = MIN_GAP_MS * rate / 1000;
+        int[] starts = new int[pcm.length];
+        int[] ends = new int[pcm.length];
+        int beeps = 0;
+        int peak = 0;
+        int i = 0;
+        while (i < pcm.length) {
+            while (i < pcm.length && pcm[i] == 0) {
+                i++;
+            }
+            if (i == pcm.length) {
+                break;
+            }
+            int start = i;
+            int last = i;
+            while (i < pcm.length && i - last < minGap) {
+                if (pcm[i] != 0) {
+                    last = i;
+                    peak = Math.max(peak, Math.abs(pcm[i]));
+                }
+                i++;
+            }
+            starts[beeps] = start;
+            ends[beeps] = last + 1;
+            beeps++;
+        }
+        if (beeps != count) {
+            fail(name + ": " + beeps + " beeps, expected " + count);
+            return;
+        }
+
+        int slack = rate / 1000;
+        StringBuilder pitches = new StringBuilder();
+        for (int b = 0; b < beeps; b++) {
+            int length = ends[b] - starts[b];
+            if (Math.abs(length - beep) > slack) {
+                fail(name + ": beep " + b + " is " + length + " samples, expected " + beep);
+            }
+            if (b > 0 && Math.abs(starts[b] - ends[b - 1] - gap) > slack) {
+                fail(name + ": gap before beep " + b + " is " + (starts[b] - ends[b - 1]) + " samples, expected " + gap);
+            }
+            int expected = p[4] != 0 && (b & 1) == 1 ? p[4] : p[0];
+            double measured = pitch(pcm, starts[b], ends[b], rate);
+            if (Math.abs(measured - expected) > expected * PITCH_TOLERANCE) {
+                fail(name + ": beep " + b + " at " + Math.round(measured) + " Hz, expected " + expected);
+            }
+            pitches.append(' ').append(Math.round(measured));
+        }
+        if (peak < 0.7 * Short.MAX_VALUE) {
+            fail(name + ": peak " + peak + " is too quiet");
+        }
+        System.out.printf("%-14s %5.0f ms, %d beeps, Hz%s, peak %d%n", name, pcm.length * 1000.0 / rate, beeps,
+                pitches, peak);
+    }
+
+    // Sign changes over the beep, two per cycle.
+    private static double pitch(short[] pcm, int from, int to, int rate) {
+        int crossings = 0;
+        int sign = 0;
+        for (int i = from; i < to; i++) {
+            int s = Integer.signum(pcm[i]);
+            if (s != 0) {
+                if (sign != 0 && s != sign) {
+                    crossings++;
+                }
+                sign = s;
+            }
+        }
+        return crossings / 2.0 * rate / (to - from);
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAIL " + message);
+        failures++;
+    }
+}
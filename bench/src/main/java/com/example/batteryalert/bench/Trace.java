@@ -0,0 +1,81 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import com.example.batteryalert.HistoryRing;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** A battery broadcast sequence held in primitive arrays. Level is in percent of {@link #SCALE}. */
+public final class Trace {
+
+    public static final int SCALE = 100;
+    public static final int PLUGGED_NONE = 0;
+    public static final int PLUGGED_AC = 1;
+    // Mirrors android.os.BatteryManager.BATTERY_STATUS_DISCHARGING.
+    public static final int STATUS_DISCHARGING = 3;
+
+    public final String name;
+    public long[] time;
+    public int[] level;
+    public int[] status;
+    public int[] plugged;
+    public int size;
+
+    public Trace(String name, int capacity) {
+        this.name = name;
+        time = new long[capacity];
+        level = new int[capacity];
+        status = new int[capacity];
+        plugged = new int[capacity];
+    }
+
+    public void add(long t, int lvl, int st, int plug) {
+        if (size == time.length) {
+            int n = Math.max(16, size * 2);
+            time = Arrays.copyOf(time, n);
+            level = Arrays.copyOf(level, n);
+            status = Arrays.copyOf(status, n);
+            plugged = Arrays.copyOf(plugged, n);
+        }
+        time[size] = t;
+        level[size] = lvl;
+        status[size] = st;
+        plugged[size] = plug;
+        size++;
+    }
+
+    public static boolean isCharging(int status) {
+        return status == AlertEngine.STATUS_CHARGING || status == AlertEngine.STATUS_FULL;
+    }
+
+    /** Reads {@code timeMs,level,status[,plugged]} lines; blank lines and lines starting with '#' are skipped. */
+    public static Trace readCsv(File file) throws IOException {
+        Trace trace = new Trace(file.getName(), 1024);
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || !Character.isDigit(line.charAt(0))) {
+                    continue;
+                }
+                String[] f = line.split(",");
+                trace.add(Long.parseLong(f[0].trim()), Integer.parseInt(f[1].trim()),
+                        Integer.parseInt(f[2].trim()), f.length > 3 ? Integer.parseInt(f[3].trim()) : PLUGGED_NONE);
+            }
+        }
+        return trace;
+    }
+
+    /** Reads a {@code history.bin} ring pulled from a device. */
+    public static Trace readHistory(File file) throws IOException {
+        try (HistoryRing ring = HistoryRing.open(file, HistoryRing.DEFAULT_CAPACITY, 0)) {
+            Trace trace = new Trace(file.getName(), ring.size());
+            ring.read(ring.firstSeq(), ring.endSeq(),
+                    (seq, timeMs, lvl, st, plug, alertTier, temperature, voltage) -> trace.add(timeMs, lvl, st, plug));
+            return trace;
+        }
+    }
+}
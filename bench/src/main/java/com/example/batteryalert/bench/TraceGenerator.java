@@ -0,0 +1,82 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import java.util.Random;
+
+/** Synthetic traces covering the cases that matter for alert timing and overhead. */
+public final class TraceGenerator {
+
+    private TraceGenerator() {
+    }
+
+    /**
+     * Discharges from {@code fromPct} to {@code toPct} at {@code pctPerHour},
+     * emitting {@code broadcastsPerLevel} broadcasts per level step (the extra ones
+     * model voltage/temperature-only updates, which repeat the same tuple).
+     */
+    public static Trace discharge(int fromPct, int toPct, double pctPerHour, int broadcastsPerLevel) {
+        Trace trace = new Trace("discharge", (fromPct - toPct + 1) * broadcastsPerLevel);
+        long stepMs = (long) (3600000 / pctPerHour);
+        long t = 0;
+        for (int lvl = fromPct; lvl >= toPct; lvl--) {
+            for (int i = 0; i < broadcastsPerLevel; i++) {
+                trace.add(t + i * stepMs / broadcastsPerLevel, lvl, Trace.STATUS_DISCHARGING, Trace.PLUGGED_NONE);
+            }
+            t += stepMs;
+        }
+        return trace;
+    }
+
+    /** A slow discharge where every level step is buried in a burst of {@code burst} identical broadcasts. */
+    public static Trace broadcastStorm(int fromPct, int toPct, int burst) {
+        Trace trace = new Trace("storm", (fromPct - toPct + 1) * burst);
+        long t = 0;
+        for (int lvl = fromPct; lvl >= toPct; lvl--) {
+            for (int i = 0; i < burst; i++) {
+                trace.add(t, lvl, Trace.STATUS_DISCHARGING, Trace.PLUGGED_NONE);
+                t += 50;
+            }
+            t += 300000;
+        }
+        return trace;
+    }
+
+    /**
+     * Hovers around {@code aroundPct} while the cable is plugged and unplugged at
+     * random intervals of up to {@code maxFlapMs}.
+     */
+    public static Trace plugFlapping(int aroundPct, int samples, long maxFlapMs, long seed) {
+        Random random = new Random(seed);
+        Trace trace = new Trace("flapping", samples);
+        long t = 0;
+        boolean plugged = false;
+        int lvl = aroundPct;
+        for (int i = 0; i < samples; i++) {
+            if (random.nextInt(4) == 0) {
+                plugged = !plugged;
+            }
+            if (random.nextInt(3) == 0) {
+                lvl = Math.max(0, Math.min(100, lvl + (plugged ? 1 : -1)));
+            }
+            trace.add(t, lvl, plugged ? AlertEngine.STATUS_CHARGING : Trace.STATUS_DISCHARGING,
+                    plugged ? Trace.PLUGGED_AC : Trace.PLUGGED_NONE);
+            t += 1 + (long) (random.nextDouble() * maxFlapMs);
+        }
+        return trace;
+    }
+
+    /** Concatenates {@code times} full discharge cycles with charging in between, for throughput runs. */
+    public static Trace cycles(int times) {
+        Trace trace = new Trace("cycles", times * 202);
+        long t = 0;
+        for (int c = 0; c < times; c++) {
+            for (int lvl = 100; lvl >= 0; lvl--, t += 360000) {
+                trace.add(t, lvl, Trace.STATUS_DISCHARGING, Trace.PLUGGED_NONE);
+            }
+            for (int lvl = 0; lvl <= 100; lvl++, t += 60000) {
+                trace.add(t, lvl, AlertEngine.STATUS_CHARGING, Trace.PLUGGED_AC);
+            }
+        }
+        return trace;
+    }
+}
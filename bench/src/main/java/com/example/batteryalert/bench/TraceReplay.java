@@ -0,0 +1,146 @@
+package com.example.batteryalert.bench;
+
+import com.example.batteryalert.AlertEngine;
+import com.example.batteryalert.SampleFilter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays battery traces through the same {@link SampleFilter} and
+ * {@link AlertEngine} code BatteryService runs, and reports alerts per tier,
+ * missed crossings and per-sample cost.
+ *
+ * <p>Usage: {@code TraceReplay [--threshold N] [--urgent N] [--critical N]
+ * [--cooldown MS] [--repeat N] [trace.csv | history.bin ...]}. Without trace
+ * files the built-in synthetic traces are used.
+ */
+public final class TraceReplay {
+
+    /** Outcome of one replay. */
+    public static final class Result {
+        public final long[] alertsPerTier = new long[4];
+        public long samples;
+        public long filtered;
+        public long crossings;
+        public long missedCrossings;
+        public long nanos;
+
+        public double nanosPerSample() {
+            return samples == 0 ? 0 : nanos / (double) samples;
+        }
+    }
+
+    private TraceReplay() {
+    }
+
+    /**
+     * Replays {@code trace}. A crossing is any sample where the tier implied by the
+     * level rises while discharging; it is missed if no alert of at least that tier
+     * fires before the tier changes again or the cooldown elapses.
+     */
+    public static Result replay(Trace trace, AlertEngine.Config config, int repeat) {
+        Result r = new Result();
+        long start = System.nanoTime();
+        long timeOffset = 0;
+        for (int rep = 0; rep < repeat; rep++) {
+            AlertEngine engine = new AlertEngine(config);
+            SampleFilter filter = new SampleFilter();
+            int expectedTier = AlertEngine.TIER_NONE;
+            int pendingTier = AlertEngine.TIER_NONE;
+            long pendingDeadline = 0;
+            for (int i = 0; i < trace.size; i++) {
+                long t = trace.time[i] + timeOffset;
+                int lvl = trace.level[i];
+                int st = trace.status[i];
+                r.samples++;
+                if (pendingTier != AlertEngine.TIER_NONE && t > pendingDeadline) {
+                    r.missedCrossings++;
+                    pendingTier = AlertEngine.TIER_NONE;
+                }
+                if (!filter.accept(lvl, Trace.SCALE, st, trace.plugged[i])) {
+                    r.filtered++;
+                    continue;
+                }
+                int tier = Trace.isCharging(st) ? AlertEngine.TIER_NONE : tierOf(config, lvl);
+                if (tier > expectedTier) {
+                    if (pendingTier != AlertEngine.TIER_NONE) {
+                        r.missedCrossings++;
+                    }
+                    r.crossings++;
+                    pendingTier = tier;
+                    pendingDeadline = t + config.cooldownMs;
+                } else if (tier < expectedTier) {
+                    pendingTier = AlertEngine.TIER_NONE;
+                }
+                expectedTier = tier;
+
+                int result = engine.onSample(lvl, Trace.SCALE, st, t);
+                if (AlertEngine.action(result) == AlertEngine.ACTION_ALERT) {
+                    int fired = AlertEngine.tier(result);
+                    r.alertsPerTier[fired]++;
+                    if (fired >= pendingTier) {
+                        pendingTier = AlertEngine.TIER_NONE;
+                    }
+                }
+            }
+            if (pendingTier != AlertEngine.TIER_NONE) {
+                r.missedCrossings++;
+            }
+            if (trace.size > 0) {
+                timeOffset += trace.time[trace.size - 1] + config.cooldownMs + 1;
+            }
+        }
+        r.nanos = System.nanoTime() - start;
+        return r;
+    }
+
+    private static int tierOf(AlertEngine.Config c, int pct) {
+        if (pct > c.threshold) return AlertEngine.TIER_NONE;
+        if (pct <= c.threshold - c.criticalOffset) return AlertEngine.TIER_CRITICAL;
+        if (pct <= c.threshold - c.urgentOffset) return AlertEngine.TIER_URGENT;
+        return AlertEngine.TIER_NORMAL;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threshold = 20, urgent = 5, critical = 10, repeat = 1;
+        long cooldown = AlertEngine.DEFAULT_COOLDOWN;
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threshold": threshold = Integer.parseInt(args[++i]); break;
+                case "--urgent": urgent = Integer.parseInt(args[++i]); break;
+                case "--critical": critical = Integer.parseInt(args[++i]); break;
+                case "--cooldown": cooldown = Long.parseLong(args[++i]); break;
+                case "--repeat": repeat = Integer.parseInt(args[++i]); break;
+                default:
+                    File f = new File(args[i]);
+                    traces.add(f.getName().endsWith(".bin") ? Trace.readHistory(f) : Trace.readCsv(f));
+            }
+        }
+        if (traces.isEmpty()) {
+            traces.add(TraceGenerator.discharge(100, 0, 12.0, 20));
+            traces.add(TraceGenerator.broadcastStorm(40, 0, 500));
+            traces.add(TraceGenerator.plugFlapping(threshold, 200000, 120000, 42));
+            traces.add(TraceGenerator.cycles(5000));
+            if (repeat == 1) {
+                repeat = 10;
+            }
+        }
+        AlertEngine.Config config = new AlertEngine.Config(threshold, urgent, critical, cooldown);
+        System.out.printf("threshold=%d urgent=-%d critical=-%d cooldown=%dms repeat=%d%n",
+                threshold, urgent, critical, cooldown, repeat);
+        System.out.printf("%-12s %10s %10s %8s %8s %8s %9s %7s %9s%n",
+                "trace", "samples", "filtered", "normal", "urgent", "critical", "crossings", "missed", "ns/sample");
+        for (Trace trace : traces) {
+            replay(trace, config, 1); // warm-up
+            Result r = replay(trace, config, repeat);
+            System.out.printf("%-12s %10d %10d %8d %8d %8d %9d %7d %9.1f%n",
+                    trace.name, r.samples, r.filtered,
+                    r.alertsPerTier[AlertEngine.TIER_NORMAL], r.alertsPerTier[AlertEngine.TIER_URGENT],
+                    r.alertsPerTier[AlertEngine.TIER_CRITICAL], r.crossings, r.missedCrossings,
+                    r.nanosPerSample());
+        }
+    }
+}